@@ -4,6 +4,9 @@ import android.app.Application;
 import android.content.ComponentCallbacks;
 import android.content.res.Configuration;
 
+import com.fernandobarillas.redditservice.tracing.TimberSink;
+import com.fernandobarillas.redditservice.tracing.Trace;
+
 import timber.log.Timber;
 
 /**
@@ -21,6 +24,8 @@ public class ExampleApplication extends Application {
                     return "(" + element.getFileName() + ":" + element.getLineNumber() + ")";
                 }
             });
+            // The library's tracing is off until a sink is added
+            Trace.addSink(new TimberSink());
         }
         Timber.v("onCreate() called");
     }
@@ -14,10 +14,13 @@ import android.support.v7.widget.Toolbar;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.fernandobarillas.redditservice.RedditService;
+import com.fernandobarillas.redditservice.ServiceState;
 import com.fernandobarillas.redditservice.requests.StartServiceRequest;
 import com.fernandobarillas.redditservice.requests.SubredditRequest;
+import com.fernandobarillas.redditservice.utils.StartupTimer;
 
 import net.dean.jraw.http.UserAgent;
 import net.dean.jraw.models.Submission;
@@ -36,6 +39,7 @@ import rx.Observable;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
 import rx.functions.Func1;
 import timber.log.Timber;
 
@@ -43,6 +47,9 @@ public class MainActivity extends AppCompatActivity {
     /** Seconds between UI updates from RedditService */
     private static final int UPDATE_INTERVAL = 1;
 
+    private static final String PHASE_BIND       = "bind";
+    private static final String PHASE_FIRST_PAGE = "first_page";
+
     private RedditService        mRedditService;
     private TextView             mElapsedTimeTextView;
     private Button               mGetMoreLinksButton;
@@ -52,6 +59,7 @@ public class MainActivity extends AppCompatActivity {
     private SubredditRequest     mSubredditRequest;
     private SubredditPaginator   mPaginator;
     private Set<Submission>      mSubmissionSet;
+    private StartupTimer         mStartupTimer;
 
     private Date mStartDate;
     private Date mReadyDate;
@@ -102,6 +110,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         Timber.v("onPause() called");
+        if (mWaitForServiceSubscription != null) mWaitForServiceSubscription.unsubscribe();
         unbindService(mRedditServiceConnection);
         super.onPause();
     }
@@ -111,9 +120,33 @@ public class MainActivity extends AppCompatActivity {
         Timber.v("onResume() called");
         super.onResume();
         Intent redditServiceIntent = RedditService.getRedditServiceIntent(this);
+        // Times the start from binding to the service to showing the first page
+        mStartupTimer = new StartupTimer();
         bindService(redditServiceIntent, mRedditServiceConnection, Context.BIND_AUTO_CREATE);
     }
 
+    private void onServiceReady() {
+        mReadyDate = new Date();
+        long waitTime = (mReadyDate.getTime() - mStartDate.getTime()) / 1000;
+        Timber.i("waitForService() Service is ready, waited for %d seconds", waitTime);
+
+        // Download the subreddit data you requested with mSubredditRequest
+        mPaginator = mRedditService.getSubredditPaginator(mSubredditRequest);
+        final long firstPageTime = mStartupTimer.begin();
+        mRedditService.getMoreSubmissions(mPaginator)
+                .toList()
+                .doOnNext(new Action1<List<Submission>>() {
+                    @Override
+                    public void call(List<Submission> submissions) {
+                        mStartupTimer.end(PHASE_FIRST_PAGE, firstPageTime);
+                        Timber.i("Startup times:%n%s", mStartupTimer.getReport());
+                    }
+                })
+                .subscribe(submissionsHandler());
+        // Download the logged-in user's subreddit subscriptions
+        mRedditService.getSubscriptions().subscribe(subscriptionsHandler());
+    }
+
     private Subscriber<List<Submission>> submissionsHandler() {
         Timber.v("submissionsHandler() called");
         return new Subscriber<List<Submission>>() {
@@ -201,44 +234,47 @@ public class MainActivity extends AppCompatActivity {
     private void waitForServiceAuthentication() {
         Timber.v("waitForServiceAuthentication() called");
         if (mRedditService == null) return;
-        mRedditService.isReadyCheck().takeUntil(new Func1<Boolean, Boolean>() {
-            @Override
-            public Boolean call(Boolean isServiceReady) {
-                // Stop emitting items once the service is ready so that the subscribers'
-                // onCompleted method can handle the service being ready
-                return isServiceReady;
-            }
-        }).subscribe(new Subscriber<Boolean>() {
-            @Override
-            public void onCompleted() {
-                Timber.v("waitForServiceAuthentication onCompleted() called");
-                mReadyDate = new Date();
-                long waitTime = (mReadyDate.getTime() - mStartDate.getTime()) / 1000;
-                Timber.i("waitForService() Service is ready, waited for %d seconds", waitTime);
-
-                // Download the subreddit data you requested with mSubredditRequest
-                mPaginator = mRedditService.getSubredditPaginator(mSubredditRequest);
-                mRedditService.getMoreSubmissions(mPaginator)
-                        .toList()
-                        .subscribe(submissionsHandler());
-                // Download the logged-in user's subreddit subscriptions
-                mRedditService.getSubscriptions().subscribe(subscriptionsHandler());
-            }
+        mWaitForServiceSubscription = mRedditService.getServiceState()
+                .first(new Func1<ServiceState, Boolean>() {
+                    @Override
+                    public Boolean call(ServiceState serviceState) {
+                        // Stop waiting once the service is ready or has given up authenticating
+                        return serviceState == ServiceState.READY
+                                || serviceState == ServiceState.FAILED;
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Subscriber<ServiceState>() {
+                    @Override
+                    public void onCompleted() {
+                        Timber.v("waitForServiceAuthentication onCompleted() called");
+                    }
 
-            @Override
-            public void onError(Throwable e) {
-                Timber.e(e,
-                        "waitForServiceAuthentication onError() called with: " + "e = [" + e + "]");
-            }
+                    @Override
+                    public void onError(Throwable e) {
+                        Timber.e(e,
+                                "waitForServiceAuthentication onError() called with: "
+                                        + "e = ["
+                                        + e
+                                        + "]");
+                    }
 
-            @Override
-            public void onNext(Boolean isServiceAuthenticated) {
-                Timber.v("waitForServiceAuthentication onNext() called with: "
-                        + "isServiceAuthenticated = ["
-                        + isServiceAuthenticated
-                        + "]");
-            }
-        });
+                    @Override
+                    public void onNext(ServiceState serviceState) {
+                        Timber.v("waitForServiceAuthentication onNext() called with: "
+                                + "serviceState = ["
+                                + serviceState
+                                + "]");
+                        if (serviceState == ServiceState.FAILED) {
+                            Timber.e("waitForService() Service failed to authenticate");
+                            Toast.makeText(MainActivity.this,
+                                    "Unable to authenticate with reddit",
+                                    Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        onServiceReady();
+                    }
+                });
     }
 
     private class MainConnection implements ServiceConnection {
@@ -250,6 +286,7 @@ public class MainActivity extends AppCompatActivity {
                     + "], iBinder = ["
                     + iBinder
                     + "]");
+            mStartupTimer.mark(PHASE_BIND);
             RedditService.RedditBinder redditBinder = (RedditService.RedditBinder) iBinder;
             mRedditService = redditBinder.getService();
             if (mRedditService == null) {
@@ -274,7 +311,10 @@ public class MainActivity extends AppCompatActivity {
             StartServiceRequest startRequest =
                     new StartServiceRequest(username, PrivateConstants.REDDIT_CLIENT_ID,
                             PrivateConstants.REDDIT_REDIRECT_URL, appUserAgent);
-            mRedditService.startService(startRequest);
+            // Connect to reddit while the service authenticates
+            startRequest.setPrewarmEnabled(true).setStartupTimer(mStartupTimer);
+            // Keep the main thread free while the service loads its preferences and client
+            mRedditService.startServiceAsync(startRequest);
             // Now you can begin waiting for the service to authenticate with the reddit API
             waitForServiceAuthentication();
         }
@@ -0,0 +1,50 @@
+package com.fernandobarillas.redditservice;
+
+import com.fernandobarillas.redditservice.benchmarks.ThrottledFixtureState;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time until the first Submission of a page is delivered over a slow link, for a
+ * page that is streamed and for one that is downloaded whole before anything is emitted. See
+ * {@link ThrottledFixtureState} for the link. Run with {@code ./gradlew :benchmarks:jmh
+ * -PjmhInclude=FirstSubmission}
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FirstSubmissionBenchmark {
+    /** The path taken by {@link RedditService#getMoreSubmissions(Paginator)} */
+    @Benchmark
+    public Submission page(ThrottledFixtureState state) {
+        return SubmissionChainBenchmark.getSubmissions(state)
+                .first()
+                .toBlocking()
+                .single();
+    }
+
+    /** The path taken by {@link RedditService#getMoreStreamedSubmissions(Paginator)} */
+    @Benchmark
+    public Submission streamedPage(ThrottledFixtureState state) {
+        return SubmissionChainBenchmark.getStreamedSubmissions(state)
+                .first()
+                .toBlocking()
+                .single();
+    }
+
+    /** The path taken by {@link RedditService#getMoreSharedSubmissions(Paginator)} */
+    @Benchmark
+    public Submission sharedPage(ThrottledFixtureState state) {
+        return SubmissionChainBenchmark.getSharedSubmissions(state)
+                .first()
+                .toBlocking()
+                .single();
+    }
+}
@@ -0,0 +1,85 @@
+package com.fernandobarillas.redditservice;
+
+import com.fernandobarillas.redditservice.benchmarks.FixtureState;
+import com.fernandobarillas.redditservice.data.RedditData;
+import com.fernandobarillas.redditservice.observables.SubredditPagination;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+
+/**
+ * Gets the first page of a feed through the {@link SubmissionChain} that {@link RedditService}
+ * delivers Submissions with: waiting on the authentication gate, downloading on an io thread and
+ * observing on a single thread standing in for the main thread. Pages are served by the fixture
+ * server. Lives in the library's package since the chain is package-private
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SubmissionChainBenchmark {
+    /** The path taken by {@link RedditService#getMoreSubmissions(Paginator)} */
+    @Benchmark
+    public List<Submission> page(FixtureState state) {
+        return getSubmissions(state).toList().toBlocking().single();
+    }
+
+    /** The path taken by {@link RedditService#getMoreStreamedSubmissions(Paginator)} */
+    @Benchmark
+    public List<Submission> streamedPage(FixtureState state) {
+        return getStreamedSubmissions(state).toList().toBlocking().single();
+    }
+
+    /** The path taken by {@link RedditService#getMoreSharedSubmissions(Paginator)} */
+    @Benchmark
+    public List<Submission> sharedPage(FixtureState state) {
+        return getSharedSubmissions(state).toList().toBlocking().single();
+    }
+
+    /**
+     * @return The Submissions of the first page of the fixture's feed, downloaded whole by its
+     * paginator without a cache, as when no ListingCache is set
+     */
+    static Observable<Submission> getSubmissions(FixtureState state) {
+        RedditData redditData = state.getRedditData();
+        Paginator<Submission> paginator =
+                redditData.getSubredditPaginator(state.getSubredditRequest());
+        return SubmissionChain.deliver(state.getAuthenticationGate(),
+                SubredditPagination.getMoreSubmissions(paginator)
+                        .concatMap(SubmissionChain.FLATTEN_SUBMISSIONS),
+                state.getMainThread());
+    }
+
+    /**
+     * @return The Submissions of the first page of the fixture's feed, downloaded whole
+     */
+    static Observable<Submission> getSharedSubmissions(FixtureState state) {
+        RedditData redditData = state.getRedditData();
+        Paginator<Submission> paginator =
+                redditData.getSubredditPaginator(state.getSubredditRequest());
+        return SubmissionChain.deliver(state.getAuthenticationGate(),
+                redditData.getSharedSubmissions(paginator)
+                        .concatMap(SubmissionChain.FLATTEN_SUBMISSIONS),
+                state.getMainThread());
+    }
+
+    /**
+     * @return The Submissions of the first page of the fixture's feed, streamed
+     */
+    static Observable<Submission> getStreamedSubmissions(FixtureState state) {
+        RedditData redditData = state.getRedditData();
+        Paginator<Submission> paginator =
+                redditData.getSubredditPaginator(state.getSubredditRequest());
+        return SubmissionChain.deliver(state.getAuthenticationGate(),
+                redditData.getStreamingSubmissions(paginator),
+                state.getMainThread());
+    }
+}
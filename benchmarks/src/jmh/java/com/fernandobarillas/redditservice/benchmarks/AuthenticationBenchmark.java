@@ -0,0 +1,25 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import com.fernandobarillas.redditservice.observables.Authentication;
+import com.fernandobarillas.redditservice.results.AuthResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticates from the token JSON stored by a previous run, the path every start takes while
+ * the stored token is still valid
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthenticationBenchmark {
+    @Benchmark
+    public AuthResult cachedTokenRefresh(FixtureState state) throws Exception {
+        return new Authentication(state.mRedditData.mRedditClient).authenticate(
+                state.newAuthRequest());
+    }
+}
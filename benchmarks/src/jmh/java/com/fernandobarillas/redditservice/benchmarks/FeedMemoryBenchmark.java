@@ -0,0 +1,111 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fernandobarillas.redditservice.models.CompactSubmission;
+
+import net.dean.jraw.models.Submission;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a feed of 10 pages of posts held as full Submissions and as CompactSubmissions. Besides
+ * the time taken, each benchmark reports the heap retained by the feed it builds as an extra
+ * counter, measured by walking the feed's object graph once per iteration, which doesn't depend
+ * on when the garbage collector runs. No network is involved
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedMemoryBenchmark {
+    /** Pages of posts held by the feed */
+    private static final int PAGE_COUNT = 10;
+
+    private ObjectMapper mObjectMapper;
+    private byte[]       mListing;
+
+    @Setup
+    public void setUp() throws Exception {
+        mObjectMapper = new ObjectMapper();
+        mListing = FixtureServer.read(FixtureServer.LISTING);
+    }
+
+    @Benchmark
+    public List<CompactSubmission> compactSubmissions(CompactRetained retained) throws Exception {
+        return buildCompactSubmissions();
+    }
+
+    @Benchmark
+    public List<Submission> submissions(SubmissionRetained retained) throws Exception {
+        return buildSubmissions();
+    }
+
+    List<CompactSubmission> buildCompactSubmissions() throws IOException {
+        List<CompactSubmission> compactSubmissions = new ArrayList<>();
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            for (JsonNode child : getChildren()) {
+                compactSubmissions.add(CompactSubmission.fromDataNode(child.get("data")));
+            }
+        }
+        return compactSubmissions;
+    }
+
+    List<Submission> buildSubmissions() throws IOException {
+        List<Submission> submissions = new ArrayList<>();
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            for (JsonNode child : getChildren()) {
+                submissions.add(new Submission(child.get("data")));
+            }
+        }
+        return submissions;
+    }
+
+    private JsonNode getChildren() throws IOException {
+        return mObjectMapper.readTree(mListing).path("data").path("children");
+    }
+
+    /**
+     * Reports the bytes retained by a feed of CompactSubmissions as the compactRetainedBytes
+     * counter
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CompactRetained {
+        public long compactRetainedBytes;
+
+        @Setup(Level.Iteration)
+        public void measure(FeedMemoryBenchmark benchmark) throws IOException {
+            compactRetainedBytes =
+                    GraphLayout.parseInstance(benchmark.buildCompactSubmissions()).totalSize();
+        }
+    }
+
+    /**
+     * Reports the bytes retained by a feed of Submissions as the submissionRetainedBytes counter
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SubmissionRetained {
+        public long submissionRetainedBytes;
+
+        @Setup(Level.Iteration)
+        public void measure(FeedMemoryBenchmark benchmark) throws IOException {
+            submissionRetainedBytes =
+                    GraphLayout.parseInstance(benchmark.buildSubmissions()).totalSize();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.Okio;
+
+/**
+ * Serves the reddit responses in src/jmh/resources/fixtures from a local server, and builds
+ * clients whose requests to reddit's hosts are sent to that server instead. Responses are encoded
+ * once, so the server adds as little as possible to the time being measured. Listing responses can
+ * be throttled to stand in for a slow mobile link.
+ */
+class FixtureServer {
+    static final String ACCESS_TOKEN       = "fixtures/access_token.json";
+    static final String LISTING            = "fixtures/listing_all_hot.json";
+    static final String SUBSCRIPTIONS_PAGE = "fixtures/subscriptions_page%d.json";
+
+    private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private final MockWebServer mServer;
+    private final long          mThrottleBytes;
+    private final long          mThrottlePeriod;
+    private final Buffer        mAccessToken;
+    private final Buffer        mListing;
+    private final Buffer        mFirstSubscriptionsPage;
+    private final Buffer        mLastSubscriptionsPage;
+
+    FixtureServer() throws IOException {
+        this(0, 0);
+    }
+
+    /**
+     * @param throttleBytes  The bytes of a listing response sent per period, 0 for no throttling
+     * @param throttlePeriod The time in milliseconds to send throttleBytes over
+     */
+    FixtureServer(long throttleBytes, long throttlePeriod) throws IOException {
+        mThrottleBytes = throttleBytes;
+        mThrottlePeriod = throttlePeriod;
+        mAccessToken = readBuffer(ACCESS_TOKEN);
+        mListing = readBuffer(LISTING);
+        mFirstSubscriptionsPage = readBuffer(String.format(SUBSCRIPTIONS_PAGE, 1));
+        mLastSubscriptionsPage = readBuffer(String.format(SUBSCRIPTIONS_PAGE, 2));
+
+        // The server logs every request it serves otherwise
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                HttpUrl url = request.getRequestUrl();
+                MockResponse response = new MockResponse().setHeader("Content-Type", CONTENT_TYPE)
+                        .setBody(getBody(url));
+                if (mThrottleBytes > 0 && isListing(url)) {
+                    response.throttleBody(mThrottleBytes, mThrottlePeriod, TimeUnit.MILLISECONDS);
+                }
+                return response;
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * @param resource The path of the fixture on the classpath
+     * @return The fixture's contents
+     */
+    static byte[] read(String resource) throws IOException {
+        return readBuffer(resource).readByteArray();
+    }
+
+    private static Buffer readBuffer(String resource) throws IOException {
+        InputStream inputStream =
+                FixtureServer.class.getClassLoader().getResourceAsStream(resource);
+        if (inputStream == null) throw new IOException("Missing fixture " + resource);
+        Buffer buffer = new Buffer();
+        try {
+            buffer.writeAll(Okio.source(inputStream));
+        } finally {
+            inputStream.close();
+        }
+        return buffer;
+    }
+
+    /**
+     * @return A client that sends every request to this server, over plain HTTP
+     */
+    OkHttpClient newClient() {
+        final HttpUrl serverUrl = mServer.url("/");
+        return new OkHttpClient.Builder().addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                HttpUrl url = request.url()
+                        .newBuilder()
+                        .scheme(serverUrl.scheme())
+                        .host(serverUrl.host())
+                        .port(serverUrl.port())
+                        .build();
+                return chain.proceed(request.newBuilder().url(url).build());
+            }
+        }).build();
+    }
+
+    String readAccessToken() {
+        return mAccessToken.clone().readUtf8();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    private static boolean isListing(HttpUrl url) {
+        String path = url.encodedPath();
+        return !path.startsWith("/api/v1/access_token") && !path.startsWith("/subreddits/mine");
+    }
+
+    private Buffer getBody(HttpUrl url) {
+        String path = url.encodedPath();
+        // Clones share the encoded segments rather than copying them
+        if (path.startsWith("/api/v1/access_token")) return mAccessToken.clone();
+        if (path.startsWith("/subreddits/mine")) {
+            return url.queryParameter("after") == null
+                    ? mFirstSubscriptionsPage.clone()
+                    : mLastSubscriptionsPage.clone();
+        }
+        return mListing.clone();
+    }
+}
@@ -0,0 +1,125 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import com.fernandobarillas.redditservice.data.RedditData;
+import com.fernandobarillas.redditservice.observables.Authentication;
+import com.fernandobarillas.redditservice.observables.AuthenticationGate;
+import com.fernandobarillas.redditservice.requests.AuthRequest;
+import com.fernandobarillas.redditservice.requests.SubredditRequest;
+import com.fernandobarillas.redditservice.results.AuthResult;
+
+import net.dean.jraw.http.UserAgent;
+import net.dean.jraw.paginators.Sorting;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+
+/**
+ * A {@link RedditData} authenticated user-less against the {@link FixtureServer}, set up the same
+ * way the service sets up an account's session
+ */
+@State(Scope.Benchmark)
+public class FixtureState {
+    static final String CLIENT_ID    = "fixtureClientId";
+    static final String REDIRECT_URI = "http://localhost/redirect";
+
+    FixtureServer      mServer;
+    RedditData         mRedditData;
+    AuthenticationGate mAuthenticationGate;
+    SubredditRequest   mSubredditRequest;
+    String             mAccessTokenJson;
+    /** Stands in for the main thread that the service observes its results on */
+    Scheduler          mMainThread;
+
+    private ExecutorService mMainThreadExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mServer = newServer();
+        UserAgent userAgent =
+                UserAgent.of("jvm", "com.fernandobarillas.jasw.benchmarks", "1", "jasw");
+        mRedditData = new RedditData(userAgent, mServer.newClient(), true);
+        mAccessTokenJson = mServer.readAccessToken();
+
+        AuthResult authResult = new Authentication(mRedditData.mRedditClient).authenticate(
+                newAuthRequest());
+        mAuthenticationGate = new AuthenticationGate(mRedditData.mRedditClient,
+                new Func0<AuthRequest>() {
+                    @Override
+                    public AuthRequest call() {
+                        return newAuthRequest();
+                    }
+                },
+                new AuthenticationGate.Listener() {
+                    @Override
+                    public void onAuthError(Throwable throwable) {
+                    }
+
+                    @Override
+                    public void onAuthResult(AuthResult authResult) {
+                    }
+                },
+                authResult.getExpirationTime());
+
+        mSubredditRequest = new SubredditRequest.Builder("all").setLinkLimit(100)
+                .setSorting(Sorting.HOT)
+                .build();
+        mMainThreadExecutor = Executors.newSingleThreadExecutor();
+        mMainThread = Schedulers.from(mMainThreadExecutor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mMainThreadExecutor.shutdown();
+        mServer.shutdown();
+    }
+
+    public AuthenticationGate getAuthenticationGate() {
+        return mAuthenticationGate;
+    }
+
+    /**
+     * @return The scheduler standing in for the main thread
+     */
+    public Scheduler getMainThread() {
+        return mMainThread;
+    }
+
+    public RedditData getRedditData() {
+        return mRedditData;
+    }
+
+    public SubredditRequest getSubredditRequest() {
+        return mSubredditRequest;
+    }
+
+    /**
+     * @return The server to answer the fixture's requests with
+     */
+    FixtureServer newServer() throws IOException {
+        return new FixtureServer();
+    }
+
+    /**
+     * @return A request that authenticates from the cached token, the way the service does while
+     * the stored token hasn't expired
+     */
+    AuthRequest newAuthRequest() {
+        return new AuthRequest(null,
+                CLIENT_ID,
+                REDIRECT_URI,
+                mAccessTokenJson,
+                System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+    }
+}
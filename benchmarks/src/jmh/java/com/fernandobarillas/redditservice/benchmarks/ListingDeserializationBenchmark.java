@@ -0,0 +1,63 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fernandobarillas.redditservice.models.CompactSubmission;
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import net.dean.jraw.models.Submission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a page of 100 posts into Submissions, the way the paginators do, and into the compact
+ * views used for large feeds. No network is involved
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ListingDeserializationBenchmark {
+    private ObjectMapper mObjectMapper;
+    private byte[]       mListing;
+
+    @Setup
+    public void setUp() throws Exception {
+        mObjectMapper = new ObjectMapper();
+        mListing = FixtureServer.read(FixtureServer.LISTING);
+    }
+
+    @Benchmark
+    public void compactSubmissions(Blackhole blackhole) throws Exception {
+        for (JsonNode child : getChildren()) {
+            blackhole.consume(CompactSubmission.fromDataNode(child.get("data")));
+        }
+    }
+
+    @Benchmark
+    public void submissions(Blackhole blackhole) throws Exception {
+        for (JsonNode child : getChildren()) {
+            blackhole.consume(new Submission(child.get("data")));
+        }
+    }
+
+    @Benchmark
+    public void submissionsInterned(Blackhole blackhole) throws Exception {
+        StringPool stringPool = StringPool.getListingPool();
+        for (JsonNode child : getChildren()) {
+            blackhole.consume(new Submission(stringPool.internListingFields(child.get("data"))));
+        }
+    }
+
+    private JsonNode getChildren() throws Exception {
+        return mObjectMapper.readTree(mListing).path("data").path("children");
+    }
+}
@@ -0,0 +1,22 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import net.dean.jraw.paginators.SubredditPaginator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the paginator every new feed starts with, including registering its page key
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaginatorBenchmark {
+    @Benchmark
+    public SubredditPaginator getSubredditPaginator(FixtureState state) {
+        return state.mRedditData.getSubredditPaginator(state.mSubredditRequest);
+    }
+}
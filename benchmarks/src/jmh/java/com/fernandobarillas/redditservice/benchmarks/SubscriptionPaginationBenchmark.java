@@ -0,0 +1,30 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import net.dean.jraw.models.Subreddit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.schedulers.Schedulers;
+
+/**
+ * Downloads every subscription of an account, 137 subreddits over two pages served by the {@link
+ * FixtureServer}
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SubscriptionPaginationBenchmark {
+    @Benchmark
+    public List<List<Subreddit>> getSubscriptions(FixtureState state) {
+        return state.mRedditData.getSubscriptions()
+                .subscribeOn(Schedulers.io())
+                .toList()
+                .toBlocking()
+                .single();
+    }
+}
@@ -0,0 +1,22 @@
+package com.fernandobarillas.redditservice.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * A {@link FixtureState} whose listing responses are throttled to 16 KiB every 100 ms, about a
+ * slow 3G link. The 194 KiB fixture page then takes over a second to arrive in full, while its
+ * first Submission arrives within the first chunk
+ */
+@State(Scope.Benchmark)
+public class ThrottledFixtureState extends FixtureState {
+    private static final long THROTTLE_BYTES  = 16 * 1024;
+    private static final long THROTTLE_PERIOD = 100;
+
+    @Override
+    FixtureServer newServer() throws IOException {
+        return new FixtureServer(THROTTLE_BYTES, THROTTLE_PERIOD);
+    }
+}
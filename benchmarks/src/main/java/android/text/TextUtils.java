@@ -0,0 +1,19 @@
+package android.text;
+
+/**
+ * JVM stand-in for the methods of the framework class that the library calls
+ */
+public class TextUtils {
+    private TextUtils() {
+    }
+
+    public static boolean equals(CharSequence a, CharSequence b) {
+        if (a == b) return true;
+        if (a == null || b == null || a.length() != b.length()) return false;
+        return a.toString().equals(b.toString());
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+}
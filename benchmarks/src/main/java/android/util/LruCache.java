@@ -0,0 +1,67 @@
+package android.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the framework class, with the same eviction behavior for the methods that the
+ * library calls
+ */
+public class LruCache<K, V> {
+    private final LinkedHashMap<K, V> mMap;
+    private final int                 mMaxSize;
+
+    private int mSize;
+
+    public LruCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        mMaxSize = maxSize;
+        mMap = new LinkedHashMap<>(0, 0.75f, true);
+    }
+
+    public final synchronized void evictAll() {
+        trimToSize(-1);
+    }
+
+    public final synchronized V get(K key) {
+        return mMap.get(key);
+    }
+
+    public final synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    public final synchronized V put(K key, V value) {
+        mSize += sizeOf(key, value);
+        V previous = mMap.put(key, value);
+        if (previous != null) mSize -= sizeOf(key, previous);
+        trimToSize(mMaxSize);
+        return previous;
+    }
+
+    public final synchronized V remove(K key) {
+        V previous = mMap.remove(key);
+        if (previous != null) mSize -= sizeOf(key, previous);
+        return previous;
+    }
+
+    public final synchronized int size() {
+        return mSize;
+    }
+
+    public void trimToSize(int maxSize) {
+        synchronized (this) {
+            Iterator<Map.Entry<K, V>> iterator = mMap.entrySet().iterator();
+            while (mSize > maxSize && iterator.hasNext()) {
+                Map.Entry<K, V> eldest = iterator.next();
+                iterator.remove();
+                mSize -= sizeOf(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+}
@@ -1,37 +1,51 @@
 package com.fernandobarillas.redditservice;
 
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.ServiceConnection;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Binder;
 import android.os.IBinder;
 import android.support.annotation.NonNull;
-import android.text.TextUtils;
+import android.support.annotation.Nullable;
 
+import com.fernandobarillas.redditservice.cache.ListingCache;
+import com.fernandobarillas.redditservice.cache.SeenFilter;
+import com.fernandobarillas.redditservice.cache.SubscriptionSnapshot;
+import com.fernandobarillas.redditservice.data.AccountSession;
+import com.fernandobarillas.redditservice.data.ClientPool;
 import com.fernandobarillas.redditservice.data.RedditData;
 import com.fernandobarillas.redditservice.exceptions.ServiceNotReadyException;
-import com.fernandobarillas.redditservice.observables.Authentication;
+import com.fernandobarillas.redditservice.http.RateLimitState;
+import com.fernandobarillas.redditservice.metrics.MetricsRegistry;
+import com.fernandobarillas.redditservice.models.CompactSubmission;
+import com.fernandobarillas.redditservice.observables.DistinctPagination;
 import com.fernandobarillas.redditservice.observables.DomainPagination;
+import com.fernandobarillas.redditservice.observables.ListingPagination;
 import com.fernandobarillas.redditservice.observables.OauthLogin;
 import com.fernandobarillas.redditservice.observables.SubredditPagination;
+import com.fernandobarillas.redditservice.paginators.PrefetchingPaginator;
 import com.fernandobarillas.redditservice.paginators.UserSubmissionPaginator;
 import com.fernandobarillas.redditservice.preferences.RedditAuthPreferences;
 import com.fernandobarillas.redditservice.preferences.ServicePreferences;
-import com.fernandobarillas.redditservice.requests.AuthRequest;
 import com.fernandobarillas.redditservice.requests.OauthLoginRequest;
 import com.fernandobarillas.redditservice.requests.StartServiceRequest;
+import com.fernandobarillas.redditservice.requests.SubmissionRequest;
 import com.fernandobarillas.redditservice.requests.SubredditRequest;
 import com.fernandobarillas.redditservice.requests.UserSubmissionsRequest;
 import com.fernandobarillas.redditservice.requests.VoteRequest;
-import com.fernandobarillas.redditservice.results.AuthResult;
 import com.fernandobarillas.redditservice.results.OauthLoginResult;
 import com.fernandobarillas.redditservice.results.SaveResult;
+import com.fernandobarillas.redditservice.results.SubscriptionDelta;
 import com.fernandobarillas.redditservice.results.VoteResult;
+import com.fernandobarillas.redditservice.tracing.Trace;
+import com.fernandobarillas.redditservice.utils.StartupTimer;
 
 import net.dean.jraw.RedditClient;
-import net.dean.jraw.http.UserAgent;
-import net.dean.jraw.http.oauth.OAuthException;
 import net.dean.jraw.models.PublicContribution;
 import net.dean.jraw.models.Submission;
 import net.dean.jraw.models.Subreddit;
@@ -40,17 +54,23 @@ import net.dean.jraw.paginators.DomainPaginator;
 import net.dean.jraw.paginators.Paginator;
 import net.dean.jraw.paginators.SubredditPaginator;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 import rx.Observable;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.functions.Func2;
 import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
 import timber.log.Timber;
 
 /**
@@ -60,11 +80,18 @@ import timber.log.Timber;
  * instances instantiated which makes each Activity that binds only have to deal with the
  * Observables that are returned when making any kind of request. Make sure that after binding to
  * this class, you call {@link #startService(StartServiceRequest)} before making any requests so
- * that the Service can be prepared to make requests. You can then call {@link #isReadyCheck()} to
- * wait for the Service to authenticate and be notified when it is ready to start taking requests.
+ * that the Service can be prepared to make requests. You can then subscribe to {@link
+ * #getServiceState()} to be notified when the Service has authenticated and is ready to start
+ * taking requests.
  * If you would like to use a custom OkHttpClient instance for all reddit API requests, you can set
  * one using {@link #setOkHttpClient(OkHttpClient)} BEFORE your call to {@link
- * #startService(StartServiceRequest)}.
+ * #startService(StartServiceRequest)}. Pages of subreddit and user submissions can also be cached
+ * by setting a {@link ListingCache} using {@link #setListingCache(ListingCache)}, and the
+ * Submissions already shown to an account can be remembered across restarts by setting a {@link
+ * SeenFilter} on its session using {@link AccountSession#setSeenFilter(SeenFilter)}.
+ * Several reddit accounts can be used at once: {@link #switchAccount(String)} changes the account
+ * requests are made as, and {@link #getAccount(String)} gives access to any other account. Every
+ * account shares the same connections to reddit, so switching accounts doesn't reconnect.
  */
 public class RedditService extends Service {
     /**
@@ -78,49 +105,98 @@ public class RedditService extends Service {
 
     public static final String REDDIT_WWW_URL = "https://www.reddit.com";
 
+    /** Matches the states the service settles in once it is done starting */
+    private static final Func1<ServiceState, Boolean> IS_SETTLED =
+            new Func1<ServiceState, Boolean>() {
+                @Override
+                public Boolean call(ServiceState serviceState) {
+                    return serviceState == ServiceState.READY
+                            || serviceState == ServiceState.FAILED;
+                }
+            };
+
+    /** Gets the fullname a Submission is recorded as seen with */
+    private static final Func1<Submission, String> SUBMISSION_FULL_NAME =
+            new Func1<Submission, String>() {
+                @Override
+                public String call(Submission submission) {
+                    return submission.getFullName();
+                }
+            };
+
+    private final IBinder mIBinder = new RedditBinder();
+
     /**
-     * Time to deduct from authentication token expiration time. Gives a good buffer before reddit
-     * deauthenticates the client
+     * Forgets the hosts resolved on the previous network and sends the vote and save requests that
+     * failed while offline once connectivity returns
      */
-    private static final long FIVE_MINUTES_IN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (mClientPool == null) return;
+            mClientPool.onNetworkChanged();
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            if (networkInfo != null && networkInfo.isConnected()) {
+                mClientPool.replayMutations();
+            }
+        }
+    };
 
-    private final IBinder mIBinder = new RedditBinder();
+    /** Reports the authentication state of the active account as the service state */
+    private final AccountSession.Listener mSessionListener = new AccountSession.Listener() {
+        @Override
+        public void onStateChanged(AccountSession session, ServiceState state) {
+            Timber.v("onStateChanged: [%s] is now [%s]", session.getUsername(), state);
+            if (session == mActiveSession) setServiceState(state);
+        }
+    };
 
-    private OkHttpClient          mOkHttpClient;
-    private RedditAuthPreferences mAuthPreferences;
-    private ServicePreferences    mServicePreferences;
-    private RedditData            mRedditData;
+    /** Tracks the Submissions each paginator has returned through getMoreDistinctSubmissions */
+    private final DistinctPagination mDistinctPagination = new DistinctPagination();
+
+    /** Replays the current state to new subscribers, then emits every state change */
+    private final BehaviorSubject<ServiceState> mServiceState =
+            BehaviorSubject.create(ServiceState.UNINITIALIZED);
+
+    private OkHttpClient       mOkHttpClient;
+    private ListingCache       mListingCache;
+    private ServicePreferences mServicePreferences;
+    private ClientPool         mClientPool;
+
+    /** The account requests are made as unless made through {@link #getAccount(String)} */
+    private volatile AccountSession mActiveSession;
 
     // Service lifecycle
     private boolean mIsServiceInitialized = false; // Service provided with reddit client data
-    private boolean mIsServiceReady       = false; // Ready to provide data
+    private boolean mIsReceiverRegistered = false;
 
     public RedditService() {
-        Timber.v("RedditService() called");
+        Trace.v("RedditService");
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Timber.v("onStartCommand() called with: "
-                + "intent = ["
-                + intent
-                + "], flags = ["
-                + flags
-                + "], startId = ["
-                + startId
-                + "]");
+        Trace.v("onStartCommand", "intent", intent, "flags", flags, "startId", startId);
         return Service.START_NOT_STICKY;
     }
 
     @Override
     public void onDestroy() {
-        Timber.v("onDestroy() called");
+        Trace.v("onDestroy");
+        if (mIsReceiverRegistered) {
+            unregisterReceiver(mConnectivityReceiver);
+            mIsReceiverRegistered = false;
+        }
+        // Gives queued votes and saves a last chance to be sent, they stay logged if they fail
+        if (mClientPool != null) mClientPool.close();
         super.onDestroy();
     }
 
     @Override
     public IBinder onBind(Intent intent) {
-        Timber.v("onBind() called with: " + "intent = [" + intent + "]");
+        Trace.v("onBind", "intent", intent);
         return mIBinder;
     }
 
@@ -138,7 +214,197 @@ public class RedditService extends Service {
     }
 
     /**
-     * Performs an API request to get more submissions from a subreddit
+     * Gets the session of an account, starting its authentication if the account hasn't been used
+     * since the service started. The session's client and {@link RedditData} can be used to make
+     * requests as the account without switching the active account, at the same time as requests
+     * made as other accounts. Paginators instantiated by the session's RedditData are also served
+     * as the account when passed to {@link #getMoreSubmissions(Paginator)}
+     *
+     * @param username The account's username, null for the user-less account
+     * @return The account's session
+     * @throws ServiceNotReadyException When {@link #startService(StartServiceRequest)} hasn't been
+     *                                  called yet
+     */
+    public AccountSession getAccount(@Nullable final String username)
+            throws ServiceNotReadyException {
+        Trace.v("getAccount", "username", username);
+        if (mClientPool == null) throw new ServiceNotReadyException();
+        return mClientPool.getSession(username);
+    }
+
+    /**
+     * Goes through every Submission of a listing with the active account, for consumers that
+     * process a whole subreddit or user's submissions. Pages are downloaded one at a time as
+     * Submissions are requested downstream, so memory stays bounded to about a page however long
+     * the listing is and however slow the consumer
+     *
+     * @param request  The listing to go through
+     * @param maxItems The number of Submissions after which to stop, or {@link
+     *                 ListingPagination#NO_LIMIT}
+     * @return An Observable that emits each Submission in order, then completes at the end of the
+     * listing or after the maximum number of items
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<Submission> getAllSubmissions(final SubmissionRequest request, int maxItems)
+            throws ServiceNotReadyException {
+        Trace.v("getAllSubmissions", "request", request);
+        validateService();
+        AccountSession session = mActiveSession;
+        return SubmissionChain.deliver(session.getAuthenticationGate(),
+                session.getRedditData().getAllSubmissions(request, maxItems),
+                AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Gets the full Submission for a compact view, downloading it again if the Submission the view
+     * was made from has been garbage collected
+     *
+     * @param compactSubmission The view to get the full Submission for
+     * @return An Observable that emits the full Submission
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<Submission> getFullSubmission(final CompactSubmission compactSubmission)
+            throws ServiceNotReadyException {
+        validateService();
+        Submission submission = compactSubmission.getSubmission();
+        if (submission != null) return Observable.just(submission);
+        AccountSession session = mActiveSession;
+        return session.authenticated(session.getRedditData()
+                .getSubmission(compactSubmission.getFullName()))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Gets the request latencies, transferred bytes, retries, 429 responses and requests in flight
+     * of each reddit endpoint, along with the hit ratio of each cache. Available before the service
+     * is ready, so that startup requests can be inspected too
+     *
+     * @return The registry every account's requests are recorded in. Take a {@link
+     * MetricsRegistry#snapshot()} to read it
+     */
+    public MetricsRegistry getMetrics() {
+        return MetricsRegistry.getDefault();
+    }
+
+    /**
+     * Same as {@link #getMoreSubmissions(Paginator)}, but emits a {@link CompactSubmission} for
+     * each Submission. Use this when holding on to large numbers of submissions, each view
+     * retaining a fraction of the memory of a full Submission
+     *
+     * @param paginator The paginator to use when making the request
+     * @return An Observable that emits a compact view of each Submission gotten from the reddit API
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<CompactSubmission> getMoreCompactSubmissions(
+            final Paginator<Submission> paginator) throws ServiceNotReadyException {
+        Trace.v("getMoreCompactSubmissions", "paginator", paginator);
+        validateService();
+        Observable<CompactSubmission> compactSubmissions = getSubmissions(paginator).map(
+                new Func1<Submission, CompactSubmission>() {
+                    @Override
+                    public CompactSubmission call(Submission submission) {
+                        return CompactSubmission.from(submission);
+                    }
+                });
+        AccountSession session = getSession(paginator);
+        Observable<CompactSubmission> delivered = SubmissionChain.deliver(
+                session.getAuthenticationGate(),
+                compactSubmissions,
+                AndroidSchedulers.mainThread());
+        return recordSeen(session, delivered, new Func1<CompactSubmission, String>() {
+            @Override
+            public String call(CompactSubmission compactSubmission) {
+                return compactSubmission.getFullName();
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #getMoreSubmissions(Paginator)}, but leaves out the Submissions the paginator
+     * has already returned through this method. Hot and rising listings reorder between requests,
+     * so their pages often repeat Submissions of the pages before them. The pages after a page
+     * that lost Submissions this way are downloaded to top it back up, so each page stays full
+     * while the listing has Submissions left. Use a new paginator to start the listing over
+     *
+     * @param paginator The paginator to use when making the request
+     * @return An Observable that emits the Submissions of the next page the paginator hasn't
+     * returned yet
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<Submission> getMoreDistinctSubmissions(final Paginator<Submission> paginator)
+            throws ServiceNotReadyException {
+        Trace.v("getMoreDistinctSubmissions", "paginator", paginator);
+        validateService();
+        Observable<Submission> submissions = mDistinctPagination.getSubmissions(paginator,
+                new Func1<Paginator<Submission>, Observable<List<Submission>>>() {
+                    @Override
+                    public Observable<List<Submission>> call(Paginator<Submission> pagePaginator) {
+                        return getPageRequest(pagePaginator);
+                    }
+                });
+        AccountSession session = getSession(paginator);
+        return recordSeen(session, SubmissionChain.deliver(session.getAuthenticationGate(),
+                submissions,
+                AndroidSchedulers.mainThread()), SUBMISSION_FULL_NAME);
+    }
+
+    /**
+     * Same as {@link #getMoreSubmissions(Paginator)}, but shares the download with any concurrent
+     * request for the same page made through another paginator instantiated by this service, such
+     * as two screens showing the same subreddit. The paginator is then used as a handle only:
+     * pages are requested with the subreddit, sorting, time period and limit the paginator was
+     * instantiated with, so later calls to its setters aren't picked up, and only its after cursor
+     * is moved forward as pages are returned. Other paginators are driven as usual
+     *
+     * @param paginator A paginator instantiated by this service
+     * @return An Observable that emits the Submissions gotten from the reddit API
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<Submission> getMoreSharedSubmissions(final Paginator<Submission> paginator)
+            throws ServiceNotReadyException {
+        Trace.v("getMoreSharedSubmissions", "paginator", paginator);
+        validateService();
+        AccountSession session = getSession(paginator);
+        Observable<List<Submission>> pageObservable =
+                session.getRedditData().getSharedSubmissions(paginator);
+        if (pageObservable == null) {
+            pageObservable = SubredditPagination.getMoreSubmissions(paginator);
+        }
+        return recordSeen(session, SubmissionChain.deliver(session.getAuthenticationGate(),
+                pageObservable.concatMap(SubmissionChain.FLATTEN_SUBMISSIONS),
+                AndroidSchedulers.mainThread()), SUBMISSION_FULL_NAME);
+    }
+
+    /**
+     * Same as {@link #getMoreSharedSubmissions(Paginator)}, but emits each Submission as soon as
+     * it has been read from the response instead of once the whole page has been downloaded,
+     * which gets the first Submissions on screen sooner over slow connections. The paginator is
+     * used as a handle the same way, and only moves past the page once the whole page has been
+     * read. A stream that fails before its first Submission is downloaded whole instead, with the
+     * same retries and error handling as {@link #getMoreSubmissions(Paginator)}
+     *
+     * @param paginator A paginator instantiated by this service
+     * @return An Observable that emits the Submissions gotten from the reddit API
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<Submission> getMoreStreamedSubmissions(final Paginator<Submission> paginator)
+            throws ServiceNotReadyException {
+        Trace.v("getMoreStreamedSubmissions", "paginator", paginator);
+        validateService();
+        AccountSession session = getSession(paginator);
+        Observable<Submission> submissions =
+                session.getRedditData().getStreamingSubmissions(paginator);
+        if (submissions == null) submissions = getSubmissions(paginator);
+        return recordSeen(session, SubmissionChain.deliver(session.getAuthenticationGate(),
+                submissions,
+                AndroidSchedulers.mainThread()), SUBMISSION_FULL_NAME);
+    }
+
+    /**
+     * Performs an API request to get more submissions from a subreddit. When a {@link
+     * ListingCache} has been set and the paginator was instantiated by this service, the page is
+     * served from the cache when possible
      *
      * @param paginator The paginator to use when making the request
      * @return An Observable that returns the List of Submissions gotten from the reddit API
@@ -146,21 +412,30 @@ public class RedditService extends Service {
      */
     public Observable<Submission> getMoreSubmissions(final Paginator<Submission> paginator)
             throws ServiceNotReadyException {
-        Timber.v("getMoreSubmissions() called with: " + "paginator = [" + paginator + "]");
+        return getMoreSubmissions(paginator, false);
+    }
+
+    /**
+     * Same as {@link #getMoreSubmissions(Paginator)}, optionally leaving out the Submissions the
+     * {@link SeenFilter} set on the paginator's account using {@link
+     * AccountSession#setSeenFilter(SeenFilter)} has recorded as seen. Pages that lose Submissions
+     * this way are returned short
+     *
+     * @param paginator    The paginator to use when making the request
+     * @param isHidingSeen True to leave out the Submissions already seen
+     * @return An Observable that emits the Submissions gotten from the reddit API
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<Submission> getMoreSubmissions(final Paginator<Submission> paginator,
+            final boolean isHidingSeen) throws ServiceNotReadyException {
+        Trace.v("getMoreSubmissions", "paginator", paginator, "isHidingSeen", isHidingSeen);
         validateService();
-        return SubredditPagination.getMoreSubmissions(paginator).doOnSubscribe(new Action0() {
-            @Override
-            public void call() {
-                Timber.v("getMoreSubmissions onSubscribe()");
-                authenticate();
-            }
-        }).concatMap(new Func1<List<Submission>, Observable<? extends Submission>>() {
-            @Override
-            public Observable<? extends Submission> call(List<Submission> submissions) {
-                // Map the List of Submissions instead a stream of Submission Objects
-                return Observable.from(submissions);
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        AccountSession session = getSession(paginator);
+        Observable<Submission> submissions = getSubmissions(paginator);
+        if (isHidingSeen) submissions = hideSeen(session, submissions);
+        return recordSeen(session, SubmissionChain.deliver(session.getAuthenticationGate(),
+                submissions,
+                AndroidSchedulers.mainThread()), SUBMISSION_FULL_NAME);
     }
 
     /**
@@ -172,33 +447,64 @@ public class RedditService extends Service {
      */
     public Observable<Submission> getMoreSubmissions(final DomainPaginator paginator)
             throws ServiceNotReadyException {
-        Timber.v("getMoreSubmissions() called with: " + "paginator = [" + paginator + "]");
+        Trace.v("getMoreSubmissions", "paginator", paginator);
         validateService();
-        return DomainPagination.getMoreSubmissions(paginator).doOnSubscribe(new Action0() {
-            @Override
-            public void call() {
-                Timber.v("getMoreSubmissions onSubscribe()");
-                authenticate();
-            }
-        }).concatMap(new Func1<List<Submission>, Observable<? extends Submission>>() {
-            @Override
-            public Observable<? extends Submission> call(List<Submission> submissions) {
-                // Map the List of Submissions instead a stream of Submission Objects
-                return Observable.from(submissions);
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return SubmissionChain.deliver(mActiveSession.getAuthenticationGate(),
+                DomainPagination.getMoreSubmissions(paginator)
+                        .concatMap(SubmissionChain.FLATTEN_SUBMISSIONS),
+                AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Wraps a paginator so that its next pages are downloaded in the background while the current
+     * page is being shown. See {@link PrefetchingPaginator} for how prefetching is triggered
+     *
+     * @param paginator The paginator to wrap. Don't use it directly after wrapping it
+     * @return A new PrefetchingPaginator for the passed-in paginator. Call {@link
+     * PrefetchingPaginator#release()} once you are done with it
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public PrefetchingPaginator getPrefetchingPaginator(final Paginator<Submission> paginator)
+            throws ServiceNotReadyException {
+        Trace.v("getPrefetchingPaginator", "paginator", paginator);
+        validateService();
+        AccountSession session = getSession(paginator);
+        PrefetchingPaginator prefetchingPaginator = new PrefetchingPaginator(paginator,
+                new Func1<Paginator<Submission>, Observable<List<Submission>>>() {
+                    @Override
+                    public Observable<List<Submission>> call(Paginator<Submission> pagePaginator) {
+                        return getSubmissionPage(pagePaginator);
+                    }
+                });
+        prefetchingPaginator.setRateLimiter(session.getRedditData().getRateLimiter());
+        return prefetchingPaginator;
     }
 
     /**
-     * Gets the RedditClient instance the library is using to make its requests
+     * Gets the request budget reddit reports for the active account's token. Requests are paced
+     * once the budget runs low and held until the budget resets once it runs out, or fail with a
+     * {@link com.fernandobarillas.redditservice.http.RateLimitException} when the reset is too far
+     * off, so optional requests should be put off while {@link RateLimitState#isThrottled()} is
+     * true
      *
-     * @return The RedditClient instance the library is using to make its requests
+     * @return An Observable that emits the current budget, then every change to it
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<RateLimitState> getRateLimitState() throws ServiceNotReadyException {
+        validateService();
+        return mActiveSession.getRedditData().getRateLimiter().getStateUpdates();
+    }
+
+    /**
+     * Gets the RedditClient instance the library is using to make requests as the active account
+     *
+     * @return The RedditClient instance the library is using to make requests as the active account
      * @throws ServiceNotReadyException When the service isn't ready to make requests yet
      */
     public RedditClient getRedditClient() throws ServiceNotReadyException {
-        Timber.v("getRedditClient() called");
+        Trace.v("getRedditClient");
         validateService();
-        return mRedditData.mRedditClient;
+        return mActiveSession.getRedditClient();
     }
 
     /**
@@ -210,12 +516,9 @@ public class RedditService extends Service {
      */
     public SubredditPaginator getSubredditPaginator(final SubredditRequest subredditRequest)
             throws ServiceNotReadyException {
-        Timber.v("getSubredditPaginator() called with: "
-                + "subredditRequest = ["
-                + subredditRequest
-                + "]");
+        Trace.v("getSubredditPaginator", "subredditRequest", subredditRequest);
         validateService();
-        return mRedditData.getSubredditPaginator(subredditRequest);
+        return mActiveSession.getRedditData().getSubredditPaginator(subredditRequest);
     }
 
     /**
@@ -225,9 +528,53 @@ public class RedditService extends Service {
      * @throws ServiceNotReadyException When the service isn't ready to make requests yet
      */
     public Observable<List<Subreddit>> getSubscriptions() throws ServiceNotReadyException {
-        Timber.v("getSubscriptions() called");
+        Trace.v("getSubscriptions");
+        validateService();
+        AccountSession session = mActiveSession;
+        return session.authenticated(session.getRedditData().getSubscriptions())
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Gets the logged-in user's subscribed subreddits as changes to a stored snapshot. The stored
+     * snapshot is emitted first, with every subreddit reported as added, then the subscriptions
+     * are downloaded in the background and the subreddits added and removed since the snapshot
+     * are emitted. The new subscriptions replace the stored snapshot
+     *
+     * @return An Observable that emits the stored snapshot, then the changes to it
+     * @throws ServiceNotReadyException When the service isn't ready to make requests yet
+     */
+    public Observable<SubscriptionDelta> getSubscriptionUpdates() throws ServiceNotReadyException {
+        Trace.v("getSubscriptionUpdates");
         validateService();
-        return mRedditData.getSubscriptions()
+        final AccountSession session = mActiveSession;
+        final SubscriptionSnapshot snapshot = session.getSubscriptionSnapshot();
+        Observable<SubscriptionDelta> cachedDelta =
+                Observable.create(new Observable.OnSubscribe<SubscriptionDelta>() {
+                    @Override
+                    public void call(Subscriber<? super SubscriptionDelta> subscriber) {
+                        if (subscriber.isUnsubscribed()) return;
+                        subscriber.onNext(snapshot.getCachedDelta());
+                        subscriber.onCompleted();
+                    }
+                });
+        Observable<SubscriptionDelta> latestDelta = session.authenticated(session.getRedditData()
+                .getSubscriptions())
+                .concatMap(new Func1<List<Subreddit>, Observable<Subreddit>>() {
+                    @Override
+                    public Observable<Subreddit> call(List<Subreddit> subreddits) {
+                        return Observable.from(subreddits);
+                    }
+                })
+                .toList()
+                .map(new Func1<List<Subreddit>, SubscriptionDelta>() {
+                    @Override
+                    public SubscriptionDelta call(List<Subreddit> subreddits) {
+                        return snapshot.update(subreddits);
+                    }
+                });
+        return cachedDelta.concatWith(latestDelta)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
@@ -242,28 +589,40 @@ public class RedditService extends Service {
      */
     public UserSubmissionPaginator getUserSubmissionsPaginator(final UserSubmissionsRequest userRequest)
             throws ServiceNotReadyException {
-        Timber.v("getUserSubmissionsPaginator() called with: "
-                + "userRequest = ["
-                + userRequest
-                + "]");
+        Trace.v("getUserSubmissionsPaginator", "userRequest", userRequest);
         validateService();
-        return mRedditData.getUserSubmissionsPaginator(userRequest);
+        return mActiveSession.getRedditData().getUserSubmissionsPaginator(userRequest);
     }
 
     /**
-     * Checks once per second whether the service is ready, authenticated and able to start making
-     * requests
+     * Gets the lifecycle state of the service. The current state is emitted as soon as you
+     * subscribe, after that a value is only emitted when the state changes. No threads or timers
+     * are involved: state changes are emitted on the thread that caused them, so use {@code
+     * observeOn()} if you need them on the main thread
      *
-     * @return An Observable that emits a value every second. True if the service is ready to make
-     * requests, false if not ready yet
+     * @return An Observable that emits the current {@link ServiceState} and every change to it.
+     * The Observable never completes, unsubscribe once you no longer need updates
      */
+    public Observable<ServiceState> getServiceState() {
+        return mServiceState.distinctUntilChanged();
+    }
+
+    /**
+     * Checks whether the service is ready, authenticated and able to start making requests
+     *
+     * @return An Observable that emits the current readiness, then again each time it changes,
+     * always on the main thread. True if the service is ready to make requests, false if not ready
+     * yet
+     * @deprecated Use {@link #getServiceState()}, which also reports authentication failures
+     */
+    @Deprecated
     public Observable<Boolean> isReadyCheck() {
-        return Observable.interval(250, TimeUnit.MILLISECONDS).map(new Func1<Long, Boolean>() {
+        return getServiceState().map(new Func1<ServiceState, Boolean>() {
             @Override
-            public Boolean call(Long aLong) {
-                return mIsServiceReady;
+            public Boolean call(ServiceState serviceState) {
+                return serviceState == ServiceState.READY;
             }
-        }).subscribeOn(Schedulers.newThread()).observeOn(AndroidSchedulers.mainThread());
+        }).distinctUntilChanged().observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
@@ -284,17 +643,34 @@ public class RedditService extends Service {
      * ready yet
      */
     public boolean isServiceReady() {
-        return mIsServiceReady;
+        return mServiceState.getValue() == ServiceState.READY;
     }
 
     public Observable<OauthLoginResult> performLogin(final OauthLoginRequest loginRequest) {
-        Timber.v("performLogin() called with: " + "loginRequest = [" + loginRequest + "]");
+        Trace.v("performLogin", "loginRequest", loginRequest);
         OauthLogin oauthLogin = new OauthLogin(getRedditClient());
         return oauthLogin.performLogin(loginRequest)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
+    /**
+     * Stops an account's session and forgets it until it is used again. Its stored authentication
+     * data and logged votes and saves are kept. The active account can't be removed, switch to
+     * another account first
+     *
+     * @param username The account's username, null for the user-less account
+     * @return True if the account was removed, false if it is the active account
+     */
+    public boolean removeAccount(@Nullable final String username) {
+        Trace.v("removeAccount", "username", username);
+        if (mClientPool == null) return false;
+        AccountSession session = mClientPool.peekSession(username);
+        if (session != null && session == mActiveSession) return false;
+        mClientPool.remove(username);
+        return true;
+    }
+
     /**
      * Makes a request to save/unsave the passed-in contribution
      *
@@ -306,32 +682,39 @@ public class RedditService extends Service {
     public Observable<SaveResult> saveContribution(
             final PublicContribution contribution, final boolean isSave)
             throws ServiceNotReadyException {
-        Timber.v("saveContribution() called with: "
-                + "contribution = ["
-                + contribution
-                + "], isSave = ["
-                + isSave
-                + "]");
+        Trace.v("saveContribution", "contribution", contribution, "isSave", isSave);
         validateService();
-        if (mRedditData == null) throw new ServiceNotReadyException();
+        AccountSession session = mActiveSession;
         final SaveResult saveResult = new SaveResult(contribution);
-        return mRedditData.saveContribution(contribution, isSave).doOnSubscribe(new Action0() {
-            @Override
-            public void call() {
-                Timber.e("saveContribution onSubscribe()");
-                authenticate();
-            }
-        }).map(new Func1<Boolean, SaveResult>() {
-            @Override
-            public SaveResult call(Boolean aBoolean) {
-                saveResult.setSuccessful(true);
-                return saveResult;
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return session.authenticated(session.getRedditData()
+                .saveContribution(contribution, isSave))
+                .map(new Func1<Boolean, SaveResult>() {
+                    @Override
+                    public SaveResult call(Boolean aBoolean) {
+                        saveResult.setSuccessful(true);
+                        return saveResult;
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Sets the cache to use for pages of subreddit and user submissions. Paginators passed to
+     * {@link #getMoreSubmissions(Paginator)} are then used as handles into the cache: their after
+     * cursor is moved forward as pages are returned, whether the page came from the cache or the
+     * network
+     *
+     * @param listingCache The cache to use, or null to always make network requests
+     */
+    public void setListingCache(@Nullable final ListingCache listingCache) {
+        mListingCache = listingCache;
     }
 
     /**
-     * Sets the OkHttpClient instance to use with all reddit API requests
+     * Sets the OkHttpClient instance to use with all reddit API requests. The client is fixed by
+     * the first call to {@link #startService(StartServiceRequest)}, since every account shares its
+     * connection pool
      *
      * @param okHttpClient The client to use for all requests. A custom client is useful if you want
      *                     to use things such as a proxy or caching for all requests
@@ -345,46 +728,123 @@ public class RedditService extends Service {
      * you want to call after getting an instance of {@link RedditService} available. The only time
      * you may want to call this method second is if you want to set a custom OkHttpClient instance
      * for the service to use with its requests via {@link #setOkHttpClient(OkHttpClient)}
+     * <p>
+     * Set {@link StartServiceRequest#setPrewarmEnabled(boolean)} to open the connections to reddit
+     * while the service authenticates. Connection settings are only read on the first call. Use
+     * {@link #startServiceAsync(StartServiceRequest)} to start the service without blocking the
+     * main thread
      *
      * @param startRequest The request containing all the data needed to authenticate with the
      *                     reddit API
      */
     public void startService(@NonNull StartServiceRequest startRequest) {
-        Timber.v("startService() called with: " + "startRequest = [" + startRequest + "]");
-        Context serviceContext = this;
-
-        String username = startRequest.getUsername();
-        UserAgent userAgent = startRequest.getAppUserAgent();
-        String redditClientId = startRequest.getClientId();
-        String redditRedirectUrl = startRequest.getRedirectUri();
-
-        if (redditClientId == null || redditRedirectUrl == null) {
+        Trace.v("startService", "startRequest", startRequest);
+        if (startRequest.getClientId() == null || startRequest.getRedirectUri() == null) {
             // TODO: Handle null parameters, throw exception
             return;
         }
+        prepare(startRequest);
+        activate(startRequest);
+    }
 
-        mAuthPreferences = new RedditAuthPreferences(serviceContext, username);
-        Timber.i(
-                "initializeService: Loaded preferences for user [%s]",
-                mAuthPreferences.getUsername());
-        mServicePreferences = new ServicePreferences(serviceContext);
-
-        mServicePreferences.setRedditClientId(redditClientId);
-        mServicePreferences.setRedditRedirectUri(redditRedirectUrl);
-
-        mRedditData = new RedditData(userAgent, mOkHttpClient);
-
-        if (!mRedditData.mRedditClient.isAuthenticated()) {
-            Authentication authentication = new Authentication(mRedditData.mRedditClient);
-            AuthRequest authRequest = getNewAuthRequest();
-            Timber.d("initializeService: authRequest [%s]", authRequest);
-            authentication.asyncAuthenticate(authRequest)
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(authResultSubscriber());
+    /**
+     * Same as {@link #startService(StartServiceRequest)}, but does all of the work on background
+     * threads so that the caller's thread is never blocked on loading preferences from disk or on
+     * building the reddit client. The account's stored authentication data is loaded at the same
+     * time as the client is built. The service is started right away, whether or not the returned
+     * Observable is subscribed to
+     *
+     * @param startRequest The request containing all the data needed to authenticate with the
+     *                     reddit API
+     * @return An Observable that emits {@link ServiceState#READY} on the main thread once the
+     * service is ready to make requests, or {@link ServiceState#FAILED} if it couldn't
+     * authenticate, then completes
+     */
+    public Observable<ServiceState> startServiceAsync(
+            @NonNull final StartServiceRequest startRequest) {
+        Trace.v("startServiceAsync", "startRequest", startRequest);
+        if (startRequest.getClientId() == null || startRequest.getRedirectUri() == null) {
+            return Observable.error(
+                    new IllegalArgumentException("A client ID and redirect URI are required"));
         }
 
-        mIsServiceInitialized = true;
+        final Context serviceContext = this;
+        final StartupTimer timer = startRequest.getStartupTimer();
+        // Loads the stored authentication data into the shared preferences cache, where the
+        // account's session finds it once the client is built
+        Observable<Boolean> authPreferences = Observable.fromCallable(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                long beginTime = timer != null ? timer.begin() : 0;
+                RedditAuthPreferences authPreferences =
+                        new RedditAuthPreferences(serviceContext, startRequest.getUsername());
+                boolean hasAuthentication = authPreferences.getAuthenticationJson() != null;
+                if (timer != null) timer.end(StartupTimer.PHASE_AUTH_PREFERENCES, beginTime);
+                return hasAuthentication;
+            }
+        }).subscribeOn(Schedulers.io());
+        Observable<Boolean> clientPool = Observable.fromCallable(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                prepare(startRequest);
+                return true;
+            }
+        }).subscribeOn(Schedulers.io());
+
+        Observable<ServiceState> start = Observable.zip(authPreferences,
+                clientPool,
+                new Func2<Boolean, Boolean, Boolean>() {
+                    @Override
+                    public Boolean call(Boolean hasAuthentication, Boolean isPrepared) {
+                        Timber.v("startServiceAsync: Stored authentication found: [%s]",
+                                hasAuthentication);
+                        activate(startRequest);
+                        return hasAuthentication;
+                    }
+                })
+                .concatMap(new Func1<Boolean, Observable<ServiceState>>() {
+                    @Override
+                    public Observable<ServiceState> call(Boolean hasAuthentication) {
+                        return getServiceState();
+                    }
+                })
+                .first(IS_SETTLED)
+                .cache();
+        start.subscribe(new Action1<ServiceState>() {
+            @Override
+            public void call(ServiceState serviceState) {
+                Timber.i("startServiceAsync: Service started, state [%s]", serviceState);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Timber.e(throwable, "startServiceAsync: Unable to start the service");
+                setServiceState(ServiceState.FAILED);
+            }
+        });
+        return start.observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Makes the passed-in account the one requests are made as. The account's session is kept
+     * once it has been used, so switching back and forth doesn't authenticate again, and every
+     * account shares the same connections to reddit. The service state becomes the state of the
+     * account switched to
+     *
+     * @param username The account's username, null for the user-less account
+     * @return The account's session
+     * @throws IllegalStateException When {@link #startService(StartServiceRequest)} hasn't been
+     *                               called yet
+     */
+    public AccountSession switchAccount(@Nullable final String username) {
+        Trace.v("switchAccount", "username", username);
+        if (mClientPool == null) {
+            throw new IllegalStateException("startService() must be called before switching");
+        }
+        AccountSession session = mClientPool.getSession(username);
+        mActiveSession = session;
+        setServiceState(session.getState());
+        return session;
     }
 
     /**
@@ -399,12 +859,7 @@ public class RedditService extends Service {
     public Observable<VoteResult> voteContribution(
             final PublicContribution contribution, @VoteRequest.VoteDirection int direction)
             throws ServiceNotReadyException {
-        Timber.v("voteContribution() called with: "
-                + "contribution = ["
-                + contribution
-                + "], direction = ["
-                + direction
-                + "]");
+        Trace.v("voteContribution", "contribution", contribution, "direction", direction);
         validateService();
         final VoteResult voteResult = new VoteResult(contribution);
         VoteDirection voteDirection = VoteDirection.NO_VOTE;
@@ -420,14 +875,9 @@ public class RedditService extends Service {
                 break;
         }
 
-        return mRedditData.voteContribution(contribution, voteDirection)
-                .doOnSubscribe(new Action0() {
-                    @Override
-                    public void call() {
-                        Timber.e("voteContribution onSubscribe()");
-                        authenticate();
-                    }
-                })
+        AccountSession session = mActiveSession;
+        return session.authenticated(session.getRedditData()
+                .voteContribution(contribution, voteDirection))
                 .map(new Func1<Boolean, VoteResult>() {
                     @Override
                     public VoteResult call(Boolean aBoolean) {
@@ -439,106 +889,206 @@ public class RedditService extends Service {
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
-    private Subscriber<AuthResult> authResultSubscriber() {
-        Timber.v("authResultSubscriber() called");
-        return new Subscriber<AuthResult>() {
-            @Override
-            public void onCompleted() {
-                Timber.v("authResultSubscriber onCompleted() called");
-            }
+    /**
+     * Builds the request for the next page of a paginator, served from the {@link ListingCache}
+     * when one is set and the paginator was instantiated by this service. Otherwise the paginator
+     * itself makes the request
+     *
+     * @param paginator The paginator to get the next page for
+     * @return An Observable that emits the next page. Must be subscribed to once the client is
+     * authenticated
+     */
+    private Observable<List<Submission>> getPageRequest(final Paginator<Submission> paginator) {
+        AccountSession session = getSession(paginator);
+        Observable<List<Submission>> pageObservable = null;
+        if (mListingCache != null) {
+            pageObservable = session.getRedditData().getCachedSubmissions(paginator, mListingCache);
+        }
+        if (pageObservable == null) {
+            pageObservable = SubredditPagination.getMoreSubmissions(paginator);
+        }
+        return pageObservable;
+    }
+
+    /**
+     * Same as {@link #getPageRequest(Paginator)}, waiting for the client to be authenticated
+     *
+     * @param paginator The paginator to get the next page for
+     * @return An Observable that emits the next page once the client is authenticated
+     */
+    private Observable<List<Submission>> getSubmissionPage(final Paginator<Submission> paginator) {
+        return getSession(paginator).authenticated(getPageRequest(paginator));
+    }
 
+    /**
+     * Same as {@link #getPageRequest(Paginator)}, emitting each Submission of the page
+     *
+     * @param paginator The paginator to get the next page for
+     * @return An Observable that emits each Submission of the next page. Must be subscribed to
+     * once the client is authenticated
+     */
+    private Observable<Submission> getSubmissions(final Paginator<Submission> paginator) {
+        return getPageRequest(paginator).concatMap(SubmissionChain.FLATTEN_SUBMISSIONS);
+    }
+
+    /**
+     * Leaves out the Submissions the account's {@link SeenFilter} has recorded as seen, when one
+     * is set
+     *
+     * @param session     The account the Submissions are requested as
+     * @param submissions The Submissions to filter
+     * @return An Observable that emits the passed-in Submissions, without the ones already seen
+     */
+    private Observable<Submission> hideSeen(final AccountSession session,
+            final Observable<Submission> submissions) {
+        final SeenFilter seenFilter = session.getSeenFilter();
+        if (seenFilter == null) return submissions;
+        return submissions.filter(new Func1<Submission, Boolean>() {
             @Override
-            public void onError(Throwable e) {
-                Timber.e(e, "authResultSubscriber onError");
+            public Boolean call(Submission submission) {
+                return !seenFilter.mightContain(submission.getFullName());
             }
+        });
+    }
 
+    /**
+     * Records items in the account's {@link SeenFilter} once they have been delivered to the
+     * subscriber, when one is set, so that pages downloaded but never shown aren't recorded. The
+     * fullnames delivered are collected as they go by and recorded together on an io thread once
+     * the page ends or the subscriber unsubscribes, so the main thread never touches the filter's
+     * file
+     *
+     * @param session   The account the items are delivered to
+     * @param delivered The items, as emitted to the subscriber
+     * @param fullNames Gets the fullname of the Submission an item is for
+     * @return An Observable that emits the passed-in items
+     */
+    private <T> Observable<T> recordSeen(final AccountSession session,
+            final Observable<T> delivered,
+            final Func1<? super T, String> fullNames) {
+        if (session.getSeenFilter() == null) return delivered;
+        return Observable.defer(new Func0<Observable<T>>() {
             @Override
-            public void onNext(AuthResult authResult) {
-                Timber.v("authResultSubscriber onNext() called with: "
-                        + "authResult = ["
-                        + authResult
-                        + "]");
-                handleAuthResult(authResult);
+            public Observable<T> call() {
+                final List<String> seen = new ArrayList<>();
+                Action0 record = new Action0() {
+                    @Override
+                    public void call() {
+                        synchronized (seen) {
+                            session.recordSeen(seen);
+                            seen.clear();
+                        }
+                    }
+                };
+                return delivered.doOnNext(new Action1<T>() {
+                    @Override
+                    public void call(T item) {
+                        synchronized (seen) {
+                            seen.add(fullNames.call(item));
+                        }
+                    }
+                }).doAfterTerminate(record).doOnUnsubscribe(record);
             }
-        };
+        });
     }
 
-    private void authenticate() {
-        Timber.v("authenticate() called");
-        if (mRedditData.mRedditClient.isAuthenticated() && !Authentication.isExpired(
-                mAuthPreferences.getExpirationTime())) {
-            return;
+    /**
+     * Makes the passed-in request's account the active one and starts authenticating it. Expects
+     * {@link #prepare(StartServiceRequest)} to have been called first
+     *
+     * @param startRequest The request the service is being started with
+     */
+    private synchronized void activate(StartServiceRequest startRequest) {
+        StartupTimer timer = startRequest.getStartupTimer();
+        long beginTime = timer != null ? timer.begin() : 0;
+        switchAccount(startRequest.getUsername());
+        if (timer != null) {
+            timer.end(StartupTimer.PHASE_SESSION, beginTime);
+            timeAuthentication(timer, beginTime);
         }
 
-        AuthRequest request = getNewAuthRequest();
-        Timber.v("authenticate: Auth request " + request);
-        Authentication authentication = new Authentication(mRedditData.mRedditClient);
-        try {
-            handleAuthResult(authentication.authenticate(request));
-        } catch (OAuthException e) {
-            Timber.e(e, "authenticate() failed");
+        // Send the votes and saves left over from the last run, then again whenever the device
+        // reconnects. The sticky connectivity broadcast triggers the first replay
+        if (!mIsReceiverRegistered) {
+            registerReceiver(mConnectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            mIsReceiverRegistered = true;
+        } else {
+            mClientPool.replayMutations();
         }
+
+        mIsServiceInitialized = true;
     }
 
-    private AuthRequest getNewAuthRequest() {
-        Timber.v("getNewAuthRequest() called");
-        if (mAuthPreferences.getUsername() != null && mAuthPreferences.getRefreshToken() == null) {
-            // TODO: Handle non-userless with no refresh token
-            Timber.e(
-                    "getNewAuthRequest: No refresh token found for user [%s]",
-                    mAuthPreferences.getUsername());
-            return null;
+    /**
+     * Stores the app's reddit client data and builds the client pool on the first start
+     *
+     * @param startRequest The request the service is being started with
+     */
+    private synchronized void prepare(StartServiceRequest startRequest) {
+        StartupTimer timer = startRequest.getStartupTimer();
+        long beginTime = timer != null ? timer.begin() : 0;
+        mServicePreferences = new ServicePreferences(this);
+        mServicePreferences.setRedditClientId(startRequest.getClientId());
+        mServicePreferences.setRedditRedirectUri(startRequest.getRedirectUri());
+        if (timer != null) timer.end(StartupTimer.PHASE_SERVICE_PREFERENCES, beginTime);
+
+        // The pool outlives account changes so that every account keeps sharing its connections
+        if (mClientPool != null) return;
+        beginTime = timer != null ? timer.begin() : 0;
+        ConnectionPool connectionPool = null;
+        if (startRequest.getKeepAliveDuration() > 0) {
+            connectionPool = new ConnectionPool(startRequest.getMaxIdleConnections(),
+                    startRequest.getKeepAliveDuration(),
+                    TimeUnit.MILLISECONDS);
         }
-        Timber.v(
-                "getNewAuthRequest: Building new auth request for username [%s]",
-                mAuthPreferences.getUsername());
-        return new AuthRequest(
-                mAuthPreferences.getRefreshToken(),
-                mServicePreferences.getRedditClientId(),
-                mServicePreferences.getRedditRedirectUrl(),
-                mAuthPreferences.getAuthenticationJson(),
-                mAuthPreferences.getExpirationTime());
-    }
-
-    private void handleAuthResult(AuthResult authResult) {
-        Timber.v("handleAuthResult() called with: " + "authResult = [" + authResult + "]");
-        if (!authResult.isCachedData()) {
-            Timber.v("authenticationCallback: Caching new authentication data");
-            String authenticationJson = authResult.getAuthenticationJson();
-            long currentTime = new Date().getTime();
-            long expirationTime = authResult.getExpirationTime() - FIVE_MINUTES_IN_MILLIS;
-            Timber.d("handleAuthResult: Crrnt time: [%s]", new Date(currentTime));
-            Timber.d("handleAuthResult: Exprn time: [%s]", new Date(expirationTime));
-            Timber.d("handleAuthResult: Auth json: [%s]", authenticationJson);
-            if (expirationTime > currentTime && !TextUtils.isEmpty(authenticationJson)) {
-                mAuthPreferences.setExpirationTime(expirationTime);
-                mAuthPreferences.setAuthenticationJson(authenticationJson);
-                mAuthPreferences.commit();
-                Timber.i(
-                        "handleAuthResult: New auth data cached for user [%s]",
-                        mAuthPreferences.getUsername());
-            } else {
-                Timber.i(
-                        "handleAuthResult: New auth data was NOT cached for user [%s]",
-                        mAuthPreferences.getUsername());
+        mClientPool = new ClientPool(this,
+                startRequest.getAppUserAgent(),
+                mOkHttpClient,
+                connectionPool,
+                mServicePreferences,
+                mSessionListener);
+        if (timer != null) timer.end(StartupTimer.PHASE_CLIENT_POOL, beginTime);
+        // Connect while the token request is in flight, the first page then skips the setup
+        if (startRequest.isPrewarmEnabled()) mClientPool.prewarm();
+    }
+
+    /**
+     * Records how long the active account takes to become ready, from when its session was created
+     */
+    private void timeAuthentication(final StartupTimer timer, final long beginTime) {
+        getServiceState().first(IS_SETTLED).subscribe(new Action1<ServiceState>() {
+            @Override
+            public void call(ServiceState serviceState) {
+                timer.end(StartupTimer.PHASE_AUTHENTICATION, beginTime);
             }
-        } else {
-            Timber.d(
-                    "handleAuthResult: Auth result already cached. Expiration: [%s]",
-                    new Date(mAuthPreferences.getExpirationTime()));
-        }
-        mIsServiceReady = true;
+        });
+    }
+
+    /**
+     * @param paginator The paginator a request is made with
+     * @return The session of the account that instantiated the paginator, the active session if
+     * the paginator wasn't instantiated by the service
+     */
+    private AccountSession getSession(final Paginator<Submission> paginator) {
+        AccountSession session = mClientPool.getSession(paginator);
+        return session != null ? session : mActiveSession;
+    }
+
+    private synchronized void setServiceState(ServiceState serviceState) {
+        Trace.v("setServiceState", "serviceState", serviceState);
+        mServiceState.onNext(serviceState);
     }
 
     private void validateService() throws ServiceNotReadyException {
-        if (mRedditData == null || mRedditData.mRedditClient == null) {
+        if (mActiveSession == null) {
             throw new ServiceNotReadyException();
         }
     }
 
     public class RedditBinder extends Binder {
         public RedditService getService() {
-            Timber.v("getService() called");
+            Trace.v("getService");
             return RedditService.this;
         }
     }
@@ -0,0 +1,16 @@
+package com.fernandobarillas.redditservice;
+
+/**
+ * The lifecycle states of a {@link RedditService}, published through {@link
+ * RedditService#getServiceState()}
+ */
+public enum ServiceState {
+    /** {@link RedditService#startService} hasn't been called yet */
+    UNINITIALIZED,
+    /** The service is waiting on the reddit API to authenticate the client */
+    AUTHENTICATING,
+    /** The service is authenticated and able to make requests */
+    READY,
+    /** The last authentication attempt failed */
+    FAILED
+}
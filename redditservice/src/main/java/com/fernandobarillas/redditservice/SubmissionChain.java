@@ -0,0 +1,55 @@
+package com.fernandobarillas.redditservice;
+
+import android.support.annotation.NonNull;
+
+import com.fernandobarillas.redditservice.observables.AuthenticationGate;
+
+import net.dean.jraw.models.Submission;
+
+import java.util.List;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * The Rx chain that every request for Submissions made through {@link RedditService} is delivered
+ * with: waiting on the account's {@link AuthenticationGate}, making the request on an io thread and
+ * observing the result on the caller's thread. Kept out of the service so that the benchmarks run
+ * this exact chain.
+ */
+final class SubmissionChain {
+    /** Maps a List of Submissions into a stream of Submission Objects */
+    static final Func1<List<Submission>, Observable<Submission>> FLATTEN_SUBMISSIONS =
+            new Func1<List<Submission>, Observable<Submission>>() {
+                @Override
+                public Observable<Submission> call(List<Submission> submissions) {
+                    return Observable.from(submissions);
+                }
+            };
+
+    private SubmissionChain() {
+    }
+
+    /**
+     * @param authenticationGate The gate of the account the request is made as
+     * @param request            The request to make once the account is authenticated
+     * @param observeOnScheduler The scheduler to deliver the results on, the main thread for the
+     *                           service
+     * @return An Observable that makes the request on an io thread once authenticated
+     */
+    static <T> Observable<T> deliver(@NonNull AuthenticationGate authenticationGate,
+            @NonNull final Observable<T> request,
+            @NonNull Scheduler observeOnScheduler) {
+        return authenticationGate.awaitAuthentication()
+                .concatMap(new Func1<Boolean, Observable<T>>() {
+                    @Override
+                    public Observable<T> call(Boolean isAuthenticated) {
+                        return request;
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .observeOn(observeOnScheduler);
+    }
+}
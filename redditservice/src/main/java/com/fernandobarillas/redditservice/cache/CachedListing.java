@@ -0,0 +1,57 @@
+package com.fernandobarillas.redditservice.cache;
+
+import net.dean.jraw.models.Submission;
+
+import java.util.List;
+
+/**
+ * A single page of Submissions held by the {@link ListingCache}
+ */
+public class CachedListing {
+    private final List<Submission> mChildren;
+    private final String           mAfter;
+    private final long             mFetchTime;
+    private final int              mByteSize;
+
+    CachedListing(List<Submission> children, String after, long fetchTime, int byteSize) {
+        mChildren = children;
+        mAfter = after;
+        mFetchTime = fetchTime;
+        mByteSize = byteSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedListing{" +
+                "children=" + mChildren.size() +
+                ", mAfter='" + mAfter + '\'' +
+                ", mFetchTime=" + mFetchTime +
+                ", mByteSize=" + mByteSize +
+                '}';
+    }
+
+    /**
+     * @return The after cursor reddit returned with this page, null if this was the last page
+     */
+    public String getAfter() {
+        return mAfter;
+    }
+
+    /**
+     * @return The approximate size of this page when serialized, in bytes
+     */
+    public int getByteSize() {
+        return mByteSize;
+    }
+
+    public List<Submission> getChildren() {
+        return mChildren;
+    }
+
+    /**
+     * @return The time in milliseconds when this page was downloaded from the reddit API
+     */
+    public long getFetchTime() {
+        return mFetchTime;
+    }
+}
@@ -0,0 +1,391 @@
+package com.fernandobarillas.redditservice.cache;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fernandobarillas.redditservice.metrics.MetricsRegistry;
+import com.fernandobarillas.redditservice.tracing.Trace;
+import com.fernandobarillas.redditservice.utils.AtomicFiles;
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Sorting;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Two-tier cache for pages of Submissions. Pages are kept in an in-memory LRU and written through
+ * to a directory on disk, each tier bounded by its own byte budget. Lookups follow a
+ * stale-while-revalidate policy: a page younger than the TTL for its {@link Sorting} is returned
+ * as-is, a page older than the TTL but younger than the max stale age is returned right away and
+ * refreshed in the background, anything older is downloaded before being returned.
+ */
+public class ListingCache {
+    /** Default byte budget for the in-memory tier */
+    public static final int  DEFAULT_MEMORY_BYTES = 4 * 1024 * 1024;
+    /** Default byte budget for the disk tier */
+    public static final long DEFAULT_DISK_BYTES   = 20 * 1024 * 1024;
+    /** Pages older than this are never returned, even while revalidating */
+    public static final long DEFAULT_MAX_STALE    = TimeUnit.DAYS.toMillis(1);
+
+    private static final String CACHE_DIRECTORY = "jasw_listings";
+    private static final String FILE_EXTENSION  = ".json";
+    private static final String KEY_AFTER       = "after";
+    private static final String KEY_CHILDREN    = "children";
+    private static final String KEY_FETCH_TIME  = "fetch_time";
+    private static final String KEY_LISTING_KEY = "key";
+    private static final long   DEFAULT_TTL     = TimeUnit.MINUTES.toMillis(5);
+    /** Pages written between two trims of the disk tier, which may go over budget meanwhile */
+    private static final int    TRIM_INTERVAL   = 16;
+    /** Temporary files older than this are left over from writes that never completed */
+    private static final long   ABANDONED_AGE   = TimeUnit.HOURS.toMillis(1);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File                                mDirectory;
+    private final long                                mDiskBytes;
+    private final LruCache<ListingKey, CachedListing> mMemoryCache;
+    private final Set<ListingKey>                     mRevalidating;
+    private final MetricsRegistry.Cache               mMetrics;
+    private final AtomicLong    mMemoryHits = new AtomicLong();
+    private final AtomicLong    mDiskHits   = new AtomicLong();
+    private final AtomicLong    mMisses     = new AtomicLong();
+    private final AtomicInteger mWriteCount = new AtomicInteger();
+
+    /** Read on io threads while looking pages up, replaced whole by {@link #setTtl} */
+    private volatile Map<Sorting, Long> mTtls;
+    private volatile long               mMaxStale = DEFAULT_MAX_STALE;
+
+    /**
+     * Creates a cache using the default byte budgets, storing its disk tier in the app's cache
+     * directory
+     *
+     * @param context The context to use when looking up the cache directory
+     */
+    public ListingCache(Context context) {
+        this(new File(context.getCacheDir(), CACHE_DIRECTORY),
+                DEFAULT_MEMORY_BYTES,
+                DEFAULT_DISK_BYTES);
+    }
+
+    /**
+     * @param directory   The directory to store the disk tier in. Created if it doesn't exist
+     * @param memoryBytes The byte budget for the in-memory tier
+     * @param diskBytes   The byte budget for the disk tier
+     */
+    public ListingCache(File directory, int memoryBytes, long diskBytes) {
+        mDirectory = directory;
+        mDiskBytes = diskBytes;
+        mMemoryCache = new LruCache<ListingKey, CachedListing>(memoryBytes) {
+            @Override
+            protected int sizeOf(ListingKey key, CachedListing value) {
+                return value.getByteSize();
+            }
+        };
+        mRevalidating = Collections.newSetFromMap(new ConcurrentHashMap<ListingKey, Boolean>());
+        mMetrics = MetricsRegistry.getDefault().getCache(MetricsRegistry.CACHE_LISTING);
+
+        // New and rising listings churn quickly, top listings barely move
+        Map<Sorting, Long> ttls = new EnumMap<>(Sorting.class);
+        ttls.put(Sorting.NEW, TimeUnit.MINUTES.toMillis(1));
+        ttls.put(Sorting.RISING, TimeUnit.MINUTES.toMillis(2));
+        ttls.put(Sorting.HOT, TimeUnit.MINUTES.toMillis(5));
+        ttls.put(Sorting.CONTROVERSIAL, TimeUnit.MINUTES.toMillis(15));
+        ttls.put(Sorting.TOP, TimeUnit.MINUTES.toMillis(30));
+        mTtls = ttls;
+    }
+
+    /**
+     * Removes every page from both tiers
+     */
+    public void clear() {
+        Trace.v("clear");
+        mMemoryCache.evictAll();
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.delete()) Timber.w("clear: Unable to delete %s", file);
+        }
+    }
+
+    public long getDiskHits() {
+        return mDiskHits.get();
+    }
+
+    /**
+     * Gets a page of Submissions, from the cache when possible
+     *
+     * @param key     The page to get
+     * @param fetcher Downloads the page from the reddit API. Called synchronously on the
+     *                subscribing thread when the page isn't cached, and on an io thread when a
+     *                stale page is being revalidated
+     * @return An Observable that emits the requested page
+     */
+    public Observable<CachedListing> getListing(
+            @NonNull final ListingKey key,
+            @NonNull final Func1<ListingKey, Listing<Submission>> fetcher) {
+        return Observable.create(new Observable.OnSubscribe<CachedListing>() {
+            @Override
+            public void call(Subscriber<? super CachedListing> subscriber) {
+                try {
+                    if (subscriber.isUnsubscribed()) return;
+                    CachedListing cachedListing = getCached(key);
+                    long age = cachedListing != null
+                            ? System.currentTimeMillis() - cachedListing.getFetchTime()
+                            : Long.MAX_VALUE;
+                    if (age > mMaxStale) {
+                        mMisses.incrementAndGet();
+                        mMetrics.onMiss();
+                        cachedListing = put(key, fetcher.call(key));
+                    } else {
+                        mMetrics.onHit();
+                        if (age > getTtl(key.getSorting())) revalidate(key, fetcher);
+                    }
+
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onNext(cachedListing);
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onError(e);
+                }
+            }
+        });
+    }
+
+    public long getMemoryHits() {
+        return mMemoryHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @param sorting The sorting to get the time to live for
+     * @return The time in milliseconds a page with the passed-in sorting is considered fresh
+     */
+    public long getTtl(Sorting sorting) {
+        Long ttl = mTtls.get(sorting);
+        return ttl != null ? ttl : DEFAULT_TTL;
+    }
+
+    /**
+     * Removes a single page from both tiers
+     *
+     * @param key The page to remove
+     */
+    public void invalidate(@NonNull ListingKey key) {
+        mMemoryCache.remove(key);
+        File file = getFile(key);
+        if (file.exists() && !file.delete()) Timber.w("invalidate: Unable to delete %s", file);
+    }
+
+    /**
+     * @param maxStale Pages older than this time in milliseconds are downloaded again before
+     *                 being returned
+     */
+    public void setMaxStale(long maxStale) {
+        mMaxStale = maxStale;
+    }
+
+    /**
+     * @param sorting The sorting to set the time to live for
+     * @param ttl     The time in milliseconds a page is returned without being revalidated
+     */
+    public synchronized void setTtl(Sorting sorting, long ttl) {
+        // Copied on write so that lookups never see the map while it is being changed
+        Map<Sorting, Long> ttls = new EnumMap<>(mTtls);
+        ttls.put(sorting, ttl);
+        mTtls = ttls;
+    }
+
+    @Nullable
+    private CachedListing getCached(ListingKey key) {
+        CachedListing cachedListing = mMemoryCache.get(key);
+        if (cachedListing != null) {
+            mMemoryHits.incrementAndGet();
+            return cachedListing;
+        }
+
+        cachedListing = readFromDisk(key);
+        if (cachedListing != null) {
+            mDiskHits.incrementAndGet();
+            mMemoryCache.put(key, cachedListing);
+        }
+        return cachedListing;
+    }
+
+    private File getFile(ListingKey key) {
+        return new File(mDirectory, sha1Hex(key.getKeyString()) + FILE_EXTENSION);
+    }
+
+    private CachedListing put(ListingKey key, Listing<Submission> listing) throws IOException {
+        List<Submission> children = listing.getChildren();
+        if (children == null) children = Collections.emptyList();
+        long fetchTime = System.currentTimeMillis();
+
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put(KEY_LISTING_KEY, key.getKeyString());
+        root.put(KEY_AFTER, listing.getAfter());
+        root.put(KEY_FETCH_TIME, fetchTime);
+        ArrayNode childrenNode = root.putArray(KEY_CHILDREN);
+        for (Submission submission : children) {
+            childrenNode.add(submission.getDataNode());
+        }
+        byte[] bytes = MAPPER.writeValueAsBytes(root);
+
+        CachedListing cachedListing =
+                new CachedListing(children, listing.getAfter(), fetchTime, bytes.length);
+        mMemoryCache.put(key, cachedListing);
+        writeToDisk(key, bytes);
+        return cachedListing;
+    }
+
+    @Nullable
+    private CachedListing readFromDisk(ListingKey key) {
+        File file = getFile(key);
+        if (!file.exists()) return null;
+        try {
+            JsonNode root = MAPPER.readTree(file);
+            if (!key.getKeyString().equals(root.path(KEY_LISTING_KEY).textValue())) return null;
+            JsonNode childrenNode = root.path(KEY_CHILDREN);
+            List<Submission> children = new ArrayList<>(childrenNode.size());
+            StringPool stringPool = StringPool.getListingPool();
+            for (JsonNode child : childrenNode) {
+                children.add(new Submission(stringPool.internListingFields(child)));
+            }
+            // Touch the file so that trimming evicts the least recently used pages first
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new CachedListing(children,
+                    root.path(KEY_AFTER).textValue(),
+                    root.path(KEY_FETCH_TIME).asLong(),
+                    (int) file.length());
+        } catch (IOException e) {
+            Timber.w(e, "readFromDisk: Unable to read cached page %s", key);
+            return null;
+        }
+    }
+
+    private void revalidate(final ListingKey key,
+            final Func1<ListingKey, Listing<Submission>> fetcher) {
+        // Only allow a single background refresh per page at a time
+        if (!mRevalidating.add(key)) return;
+        Timber.d("revalidate: Refreshing stale page %s", key);
+        Observable.create(new Observable.OnSubscribe<CachedListing>() {
+            @Override
+            public void call(Subscriber<? super CachedListing> subscriber) {
+                try {
+                    subscriber.onNext(put(key, fetcher.call(key)));
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                } finally {
+                    mRevalidating.remove(key);
+                }
+            }
+        }).subscribeOn(Schedulers.io()).subscribe(new Action1<CachedListing>() {
+            @Override
+            public void call(CachedListing cachedListing) {
+                Timber.v("revalidate: Refreshed %s", key);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Timber.w(throwable, "revalidate: Unable to refresh %s", key);
+            }
+        });
+    }
+
+    private static String sha1Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every Android device provides SHA-1 and UTF-8
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    /**
+     * Deletes the least recently written pages until the disk tier fits its byte budget, along
+     * with temporary files left behind by writes that were interrupted
+     */
+    private synchronized void trimDisk() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        long abandonedTime = System.currentTimeMillis() - ABANDONED_AGE;
+        List<File> pages = new ArrayList<>(files.length);
+        long totalBytes = 0;
+        for (File file : files) {
+            // Temporary files belong to writes in flight, unless they are old enough to be stuck
+            if (AtomicFiles.isTemporary(file)) {
+                if (file.lastModified() < abandonedTime && !file.delete()) {
+                    Timber.w("trimDisk: Unable to delete %s", file);
+                }
+                continue;
+            }
+            pages.add(file);
+            totalBytes += file.length();
+        }
+        if (totalBytes <= mDiskBytes) return;
+
+        Collections.sort(pages, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : pages) {
+            if (totalBytes <= mDiskBytes) break;
+            long length = file.length();
+            if (file.delete()) totalBytes -= length;
+        }
+    }
+
+    private void writeToDisk(ListingKey key, byte[] bytes) {
+        try {
+            AtomicFiles.write(getFile(key), bytes);
+        } catch (IOException e) {
+            Timber.w(e, "writeToDisk: Unable to write page %s", key);
+        }
+        // Listing the whole directory is too costly to do after every write
+        if (mWriteCount.getAndIncrement() % TRIM_INTERVAL == 0) trimDisk();
+    }
+}
@@ -0,0 +1,194 @@
+package com.fernandobarillas.redditservice.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.requests.SubmissionRequest;
+import com.fernandobarillas.redditservice.requests.SubredditRequest;
+import com.fernandobarillas.redditservice.requests.UserSubmissionsRequest;
+
+import net.dean.jraw.paginators.Sorting;
+import net.dean.jraw.paginators.TimePeriod;
+
+import java.util.Locale;
+
+/**
+ * Canonical, immutable identifier for a single page of a submission listing. Two requests that
+ * would make the exact same API call produce equal keys, regardless of the letter case used for
+ * the subreddit or username and regardless of any TimePeriod passed in with a Sorting that
+ * ignores it.
+ */
+public final class ListingKey {
+    /** Key type for pages loaded using a {@link SubredditRequest} */
+    public static final String TYPE_SUBREDDIT = "r";
+    /** Key type for pages loaded using a {@link UserSubmissionsRequest} */
+    public static final String TYPE_USER      = "u";
+
+    private final String     mType;
+    private final String     mName;
+    private final Sorting    mSorting;
+    private final TimePeriod mTimePeriod;
+    private final String     mAfter;
+    private final int        mLinkLimit;
+    private final boolean    mIsEnd;
+    private final String     mKeyString;
+
+    private ListingKey(String type,
+            String name,
+            Sorting sorting,
+            TimePeriod timePeriod,
+            String after,
+            int linkLimit,
+            boolean isEnd) {
+        mType = type;
+        mName = name == null ? "" : name.toLowerCase(Locale.US);
+        mSorting = sorting;
+        mTimePeriod = isTimePeriodSupported(sorting) ? timePeriod : null;
+        mAfter = after;
+        mLinkLimit = linkLimit;
+        mIsEnd = isEnd;
+        mKeyString = mType
+                + "/"
+                + mName
+                + ":"
+                + mSorting
+                + ":"
+                + mTimePeriod
+                + ":"
+                + mAfter
+                + ":"
+                + mLinkLimit;
+    }
+
+    /**
+     * Builds the key for the first page described by the passed-in request
+     *
+     * @param request The request to build a key for
+     * @return The canonical key for the request, or null if the request type can't be cached
+     */
+    @Nullable
+    public static ListingKey of(@NonNull SubmissionRequest request) {
+        String type;
+        if (request instanceof SubredditRequest) {
+            type = TYPE_SUBREDDIT;
+        } else if (request instanceof UserSubmissionsRequest) {
+            type = TYPE_USER;
+        } else {
+            return null;
+        }
+
+        return new ListingKey(type,
+                request.getRequestName(),
+                request.getSorting(),
+                request.getTimePeriod(),
+                request.getAfter(),
+                request.getLinkLimit(),
+                false);
+    }
+
+    private static boolean isTimePeriodSupported(Sorting sorting) {
+        // Mirrors the rules in SubredditRequest and UserSubmissionsRequest
+        return sorting == Sorting.CONTROVERSIAL || sorting == Sorting.TOP;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ListingKey that = (ListingKey) o;
+        return mIsEnd == that.mIsEnd && mKeyString.equals(that.mKeyString);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mKeyString.hashCode() + (mIsEnd ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "ListingKey{" + mKeyString + (mIsEnd ? ", end" : "") + '}';
+    }
+
+    /**
+     * @return The cursor this page starts after, null for the first page
+     */
+    public String getAfter() {
+        return mAfter;
+    }
+
+    /**
+     * @return A string representation of this key, stable across process restarts
+     */
+    public String getKeyString() {
+        return mKeyString;
+    }
+
+    public int getLinkLimit() {
+        return mLinkLimit;
+    }
+
+    /**
+     * @return The subreddit or username, lower case. Empty for the frontpage
+     */
+    public String getName() {
+        return mName;
+    }
+
+    public Sorting getSorting() {
+        return mSorting;
+    }
+
+    public TimePeriod getTimePeriod() {
+        return mTimePeriod;
+    }
+
+    /**
+     * @return Either {@link #TYPE_SUBREDDIT} or {@link #TYPE_USER}
+     */
+    public String getType() {
+        return mType;
+    }
+
+    /**
+     * @return True when the previous page reported no further pages for this listing
+     */
+    public boolean isEnd() {
+        return mIsEnd;
+    }
+
+    /**
+     * Builds the key for the page that follows the page this key describes
+     *
+     * @param after The after cursor returned with this page, null when this was the last page
+     * @return The key for the next page
+     */
+    public ListingKey next(@Nullable String after) {
+        return new ListingKey(mType,
+                mName,
+                mSorting,
+                mTimePeriod,
+                after,
+                mLinkLimit,
+                after == null);
+    }
+
+    /**
+     * Builds a request that loads the page this key describes
+     *
+     * @return A new SubredditRequest or UserSubmissionsRequest matching this key
+     */
+    public SubmissionRequest toRequest() {
+        if (TYPE_USER.equals(mType)) {
+            return new UserSubmissionsRequest.Builder(mName).setAfter(mAfter)
+                    .setSorting(mSorting)
+                    .setTimePeriod(mTimePeriod)
+                    .setLinkLimit(mLinkLimit)
+                    .build();
+        }
+        return new SubredditRequest.Builder(mName).setAfter(mAfter)
+                .setSorting(mSorting)
+                .setTimePeriod(mTimePeriod)
+                .setLinkLimit(mLinkLimit)
+                .build();
+    }
+}
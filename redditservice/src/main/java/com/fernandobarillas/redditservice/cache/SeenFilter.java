@@ -0,0 +1,266 @@
+package com.fernandobarillas.redditservice.cache;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.fernandobarillas.redditservice.tracing.Trace;
+import com.fernandobarillas.redditservice.utils.FullnameSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the fullnames of the Submissions a user has already been shown, across restarts, so
+ * that they can be hidden from later pages. Each user has a filter of their own. Fullnames are
+ * recorded in a rolling Bloom filter kept in a memory-mapped file: the filter is split into
+ * generations, new fullnames always go into the current one, and once a generation has covered
+ * its length of time or its capacity the oldest generation is cleared and becomes the current
+ * one. Old fullnames age out this way, and the file keeps the same size however many Submissions
+ * have been recorded.
+ * <p>
+ * Recording and lookups hash the fullname's decoded ID and touch a fixed number of bits in each
+ * generation, with no allocation and no disk access beyond what the OS pages in. A Bloom filter
+ * can report a fullname that was never recorded as seen, with the defaults about once in 500
+ * lookups, but never misses one that was recorded within its generations.
+ */
+public class SeenFilter {
+    /** Submissions recorded per generation by default */
+    public static final int  DEFAULT_CAPACITY          = 20000;
+    /** Generations kept by default, so fullnames are remembered for 3 to 4 generation lengths */
+    public static final int  DEFAULT_GENERATIONS       = 4;
+    /** Time a generation records fullnames for by default */
+    public static final long DEFAULT_GENERATION_LENGTH = TimeUnit.DAYS.toMillis(7);
+
+    private static final String FILE_PREFIX         = "jasw_seen_";
+    private static final String FILE_USERLESS       = "userless";
+    private static final String FILE_EXTENSION      = ".bloom";
+    private static final int    MAGIC               = 0x4a415346;
+    private static final int    VERSION             = 1;
+    /** Bits and hashes per fullname for a false positive rate of about 0.05% per generation */
+    private static final int    BITS_PER_SUBMISSION = 16;
+    private static final int    HASHES              = 11;
+
+    // Header layout, followed by the bits of every generation
+    private static final int OFFSET_MAGIC             = 0;
+    private static final int OFFSET_VERSION           = 4;
+    private static final int OFFSET_GENERATIONS       = 8;
+    private static final int OFFSET_WORDS             = 12;
+    private static final int OFFSET_GENERATION_LENGTH = 16;
+    private static final int OFFSET_CURRENT           = 24;
+    private static final int OFFSET_CURRENT_COUNT     = 28;
+    private static final int OFFSET_CURRENT_START     = 32;
+    private static final int HEADER_SIZE              = 64;
+
+    private final MappedByteBuffer mBuffer;
+    private final int              mCapacity;
+    private final int              mGenerations;
+    private final long             mGenerationLength;
+    /** 64-bit words per generation */
+    private final int              mWords;
+    private final long             mBits;
+
+    /**
+     * Opens the user's filter stored in the app's files directory using the default sizes,
+     * creating it if it doesn't exist
+     *
+     * @param context  The context to use when looking up the files directory
+     * @param username The user the seen Submissions belong to, null for a user-less session
+     * @throws IOException When the file can't be created or mapped
+     */
+    public SeenFilter(Context context, @Nullable String username) throws IOException {
+        this(new File(context.getFilesDir(),
+                FILE_PREFIX + (TextUtils.isEmpty(username) ? FILE_USERLESS : username)
+                        + FILE_EXTENSION),
+                DEFAULT_CAPACITY,
+                DEFAULT_GENERATIONS,
+                DEFAULT_GENERATION_LENGTH);
+    }
+
+    /**
+     * @param file             The file to store the filter in. A file made with different sizes,
+     *                         or that isn't a filter, is started over
+     * @param capacity         The number of Submissions a generation records before the next
+     *                         generation starts early
+     * @param generations      The number of generations kept
+     * @param generationLength The time in milliseconds a generation records Submissions for
+     * @throws IOException When the file can't be created or mapped
+     */
+    public SeenFilter(@NonNull File file, int capacity, int generations, long generationLength)
+            throws IOException {
+        mCapacity = Math.max(1, capacity);
+        mGenerations = Math.max(1, generations);
+        mGenerationLength = Math.max(1, generationLength);
+        mWords = (int) (((long) mCapacity * BITS_PER_SUBMISSION + 63) / 64);
+        mBits = (long) mWords * 64;
+        long size = HEADER_SIZE + (long) mGenerations * mWords * 8;
+        if (size > Integer.MAX_VALUE) throw new IOException("Filter too large: " + size);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            boolean isNew = randomAccessFile.length() != size;
+            if (isNew) randomAccessFile.setLength(size);
+            // The mapping stays valid once the file is closed
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (isNew || !isHeaderValid()) {
+                Trace.d("SeenFilter", "file", file);
+                reset(System.currentTimeMillis());
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Records a fullname as seen in the current generation, so that it is remembered for the
+     * filter's whole span again even if it had been recorded before
+     *
+     * @param fullname The fullname of the Submission that has been shown
+     * @return False if the fullname may have been seen already
+     */
+    public synchronized boolean add(@NonNull String fullname) {
+        rotate(System.currentTimeMillis());
+        long id = FullnameSet.toLong(fullname);
+        boolean isSeen = contains(id);
+        int current = mBuffer.getInt(OFFSET_CURRENT);
+        long first = FullnameSet.hash(id);
+        long second = FullnameSet.hash(first) | 1;
+        boolean isAdded = false;
+        for (int i = 0; i < HASHES; i++) {
+            isAdded |= setBit(current, index(first, second, i));
+        }
+        if (isAdded) {
+            mBuffer.putInt(OFFSET_CURRENT_COUNT, mBuffer.getInt(OFFSET_CURRENT_COUNT) + 1);
+        }
+        return !isSeen;
+    }
+
+    /**
+     * Forgets every recorded fullname
+     */
+    public synchronized void clear() {
+        reset(System.currentTimeMillis());
+    }
+
+    /**
+     * Writes recorded fullnames out to the file. Recorded fullnames already survive the app being
+     * killed, since the OS writes the mapped file back on its own, so this is only needed to
+     * survive the device shutting down abruptly
+     */
+    public synchronized void flush() {
+        mBuffer.force();
+    }
+
+    /**
+     * @param fullname The fullname to look up
+     * @return True if the fullname may have been recorded within the filter's generations, false
+     * if it definitely wasn't
+     */
+    public synchronized boolean mightContain(@NonNull String fullname) {
+        rotate(System.currentTimeMillis());
+        return contains(FullnameSet.toLong(fullname));
+    }
+
+    private void clearGeneration(int generation) {
+        int offset = HEADER_SIZE + generation * mWords * 8;
+        for (int word = 0; word < mWords; word++) {
+            mBuffer.putLong(offset + word * 8, 0);
+        }
+    }
+
+    private boolean contains(long id) {
+        long first = FullnameSet.hash(id);
+        long second = FullnameSet.hash(first) | 1;
+        for (int generation = 0; generation < mGenerations; generation++) {
+            boolean isFound = true;
+            for (int i = 0; i < HASHES && isFound; i++) {
+                isFound = isBitSet(generation, index(first, second, i));
+            }
+            if (isFound) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The i-th bit of a fullname, derived from two hashes as in Kirsch and Mitzenmacher's
+     * "Less Hashing, Same Performance"
+     */
+    private long index(long first, long second, int i) {
+        return ((first + i * second) & Long.MAX_VALUE) % mBits;
+    }
+
+    private boolean isBitSet(int generation, long bit) {
+        return (mBuffer.getLong(wordOffset(generation, bit)) & (1L << bit)) != 0;
+    }
+
+    private boolean isHeaderValid() {
+        return mBuffer.getInt(OFFSET_MAGIC) == MAGIC
+                && mBuffer.getInt(OFFSET_VERSION) == VERSION
+                && mBuffer.getInt(OFFSET_GENERATIONS) == mGenerations
+                && mBuffer.getInt(OFFSET_WORDS) == mWords
+                && mBuffer.getLong(OFFSET_GENERATION_LENGTH) == mGenerationLength
+                && mBuffer.getInt(OFFSET_CURRENT) >= 0
+                && mBuffer.getInt(OFFSET_CURRENT) < mGenerations;
+    }
+
+    private void reset(long now) {
+        for (int generation = 0; generation < mGenerations; generation++) {
+            clearGeneration(generation);
+        }
+        mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        mBuffer.putInt(OFFSET_VERSION, VERSION);
+        mBuffer.putInt(OFFSET_GENERATIONS, mGenerations);
+        mBuffer.putInt(OFFSET_WORDS, mWords);
+        mBuffer.putLong(OFFSET_GENERATION_LENGTH, mGenerationLength);
+        mBuffer.putInt(OFFSET_CURRENT, 0);
+        mBuffer.putInt(OFFSET_CURRENT_COUNT, 0);
+        mBuffer.putLong(OFFSET_CURRENT_START, now);
+    }
+
+    /**
+     * Starts as many new generations as are due, clearing the oldest generation for each one
+     */
+    private void rotate(long now) {
+        long start = mBuffer.getLong(OFFSET_CURRENT_START);
+        // A clock moved backwards is treated as no time having passed
+        long elapsed = Math.max(0, now - start);
+        long due = elapsed / mGenerationLength;
+        if (due == 0 && mBuffer.getInt(OFFSET_CURRENT_COUNT) < mCapacity) return;
+        if (due >= mGenerations) {
+            reset(now);
+            return;
+        }
+
+        int current = mBuffer.getInt(OFFSET_CURRENT);
+        for (long i = 0; i < Math.max(1, due); i++) {
+            current = (current + 1) % mGenerations;
+            clearGeneration(current);
+        }
+        mBuffer.putInt(OFFSET_CURRENT, current);
+        mBuffer.putInt(OFFSET_CURRENT_COUNT, 0);
+        // A generation started early because the current one is full starts now
+        mBuffer.putLong(OFFSET_CURRENT_START, due == 0 ? now : start + due * mGenerationLength);
+        Trace.v("rotate", "generation", current, "due", due);
+    }
+
+    /**
+     * @return True if the bit wasn't set yet
+     */
+    private boolean setBit(int generation, long bit) {
+        int offset = wordOffset(generation, bit);
+        long word = mBuffer.getLong(offset);
+        long mask = 1L << bit;
+        if ((word & mask) != 0) return false;
+        mBuffer.putLong(offset, word | mask);
+        return true;
+    }
+
+    private int wordOffset(int generation, long bit) {
+        return HEADER_SIZE + (generation * mWords + (int) (bit >>> 6)) * 8;
+    }
+}
@@ -0,0 +1,146 @@
+package com.fernandobarillas.redditservice.cache;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fernandobarillas.redditservice.results.SubscriptionDelta;
+import com.fernandobarillas.redditservice.utils.AtomicFiles;
+
+import net.dean.jraw.models.Subreddit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Persisted snapshot of a user's subreddit subscriptions. The snapshot is kept in memory once
+ * loaded and written to the app's files directory every time it is updated, so that the
+ * subscriptions can be shown right away on the next start while they are refreshed from the
+ * reddit API.
+ */
+public class SubscriptionSnapshot {
+    private static final String FILE_PREFIX     = "jasw_subscriptions_";
+    private static final String FILE_USERLESS   = "userless";
+    private static final String FILE_EXTENSION  = ".json";
+    private static final String KEY_SUBREDDITS  = "subreddits";
+    private static final String KEY_UPDATE_TIME = "update_time";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File mFile;
+
+    private Map<String, Subreddit> mSubreddits;
+    private long                   mUpdateTime;
+
+    /**
+     * @param context  The context to use when looking up the files directory
+     * @param username The user the subscriptions belong to, null for a user-less session
+     */
+    public SubscriptionSnapshot(Context context, @Nullable String username) {
+        this(new File(context.getFilesDir(),
+                FILE_PREFIX + (TextUtils.isEmpty(username) ? FILE_USERLESS : username)
+                        + FILE_EXTENSION));
+    }
+
+    /**
+     * @param file The file to store the snapshot in
+     */
+    public SubscriptionSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Gets the stored snapshot as a delta against an empty snapshot, so every subreddit is
+     * reported as added
+     *
+     * @return The stored snapshot. Empty if no snapshot has been stored yet
+     */
+    public synchronized SubscriptionDelta getCachedDelta() {
+        List<Subreddit> subscriptions = new ArrayList<>(load().values());
+        return new SubscriptionDelta(subscriptions,
+                Collections.<Subreddit>emptyList(),
+                subscriptions,
+                true);
+    }
+
+    /**
+     * @return The time in milliseconds of the last update, 0 if the snapshot was never updated
+     */
+    public synchronized long getUpdateTime() {
+        load();
+        return mUpdateTime;
+    }
+
+    /**
+     * Replaces the snapshot with the latest subscriptions and stores it
+     *
+     * @param latest Every subreddit the user is currently subscribed to
+     * @return The subreddits added and removed since the previous snapshot
+     */
+    public synchronized SubscriptionDelta update(@NonNull List<Subreddit> latest) {
+        Map<String, Subreddit> previous = load();
+        Map<String, Subreddit> current = new LinkedHashMap<>(latest.size());
+        List<Subreddit> added = new ArrayList<>();
+        for (Subreddit subreddit : latest) {
+            String fullName = subreddit.getFullName();
+            current.put(fullName, subreddit);
+            if (!previous.containsKey(fullName)) added.add(subreddit);
+        }
+
+        List<Subreddit> removed = new ArrayList<>();
+        for (Map.Entry<String, Subreddit> entry : previous.entrySet()) {
+            if (!current.containsKey(entry.getKey())) removed.add(entry.getValue());
+        }
+
+        mSubreddits = current;
+        mUpdateTime = System.currentTimeMillis();
+        save();
+        Timber.d("update: [%d] added, [%d] removed", added.size(), removed.size());
+        return new SubscriptionDelta(added, removed, new ArrayList<>(current.values()), false);
+    }
+
+    private Map<String, Subreddit> load() {
+        if (mSubreddits != null) return mSubreddits;
+        mSubreddits = new LinkedHashMap<>();
+        if (!mFile.exists()) return mSubreddits;
+
+        try {
+            JsonNode root = MAPPER.readTree(mFile);
+            mUpdateTime = root.path(KEY_UPDATE_TIME).asLong();
+            for (JsonNode child : root.path(KEY_SUBREDDITS)) {
+                Subreddit subreddit = new Subreddit(child);
+                mSubreddits.put(subreddit.getFullName(), subreddit);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "load: Unable to read the subscription snapshot");
+        }
+        return mSubreddits;
+    }
+
+    private void save() {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put(KEY_UPDATE_TIME, mUpdateTime);
+        ArrayNode subredditsNode = root.putArray(KEY_SUBREDDITS);
+        for (Subreddit subreddit : mSubreddits.values()) {
+            subredditsNode.add(subreddit.getDataNode());
+        }
+
+        try {
+            AtomicFiles.write(mFile, MAPPER.writeValueAsBytes(root));
+        } catch (IOException e) {
+            Timber.w(e, "save: Unable to write the subscription snapshot");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.fernandobarillas.redditservice.crawler;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.paginators.ListingSource;
+import com.fernandobarillas.redditservice.preferences.BasePreferences;
+
+/**
+ * The progress of a named crawl: the after cursor of the last page each source delivered to its
+ * sink, or whether the source was crawled to the end. A crawl started again with the same
+ * checkpoints resumes every source where it stopped and skips the sources already done.
+ */
+public class CrawlCheckpoints extends BasePreferences {
+    private static final String PREFERENCES_PREFIX = "jasw_crawl_";
+    /** Stored for sources crawled to the end. Never a valid after cursor */
+    private static final String COMPLETE           = "-";
+
+    /**
+     * @param context   The context to load the checkpoints with
+     * @param crawlName The name of the crawl the checkpoints belong to
+     */
+    public CrawlCheckpoints(Context context, String crawlName) {
+        mSharedPreferences =
+                context.getSharedPreferences(PREFERENCES_PREFIX + crawlName, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Forgets the progress of every source, so that the next crawl starts over
+     */
+    public void clear() {
+        mSharedPreferences.edit().clear().apply();
+    }
+
+    /**
+     * @param source The source to get the checkpoint of
+     * @return The after cursor to resume the source at, null to start at its first page
+     */
+    @Nullable
+    public String getAfter(ListingSource source) {
+        String after = mSharedPreferences.getString(source.getId(), null);
+        return COMPLETE.equals(after) ? null : after;
+    }
+
+    /**
+     * @param source The source to check
+     * @return True if the source was crawled to the end
+     */
+    public boolean isComplete(ListingSource source) {
+        return COMPLETE.equals(mSharedPreferences.getString(source.getId(), null));
+    }
+
+    /**
+     * @param source The source a page was delivered for
+     * @param after  The after cursor of the delivered page, null if it was the source's last page
+     */
+    public void setAfter(ListingSource source, @Nullable String after) {
+        setStringPreference(source.getId(), after != null ? after : COMPLETE);
+    }
+}
@@ -0,0 +1,90 @@
+package com.fernandobarillas.redditservice.crawler;
+
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.paginators.ListingSource;
+
+/**
+ * The outcome of crawling a single source
+ */
+public class CrawlResult {
+    private final ListingSource mSource;
+    private final int           mPages;
+    private final int           mSubmissions;
+    private final boolean       mIsResumed;
+    private final boolean       mIsSkipped;
+    private final Throwable     mError;
+
+    CrawlResult(ListingSource source,
+            int pages,
+            int submissions,
+            boolean isResumed,
+            boolean isSkipped,
+            @Nullable Throwable error) {
+        mSource = source;
+        mPages = pages;
+        mSubmissions = submissions;
+        mIsResumed = isResumed;
+        mIsSkipped = isSkipped;
+        mError = error;
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlResult{" +
+                "mSource=" + mSource +
+                ", mPages=" + mPages +
+                ", mSubmissions=" + mSubmissions +
+                ", mIsResumed=" + mIsResumed +
+                ", mIsSkipped=" + mIsSkipped +
+                ", mError=" + mError +
+                '}';
+    }
+
+    /**
+     * @return The error that stopped the source from being crawled to the end, null if it was
+     * crawled to the end. Crawling the source again resumes after its last delivered page
+     */
+    @Nullable
+    public Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * @return The pages delivered to the sink during this crawl
+     */
+    public int getPages() {
+        return mPages;
+    }
+
+    public ListingSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return The Submissions delivered to the sink during this crawl
+     */
+    public int getSubmissions() {
+        return mSubmissions;
+    }
+
+    /**
+     * @return True if the source was resumed from a checkpoint instead of starting at its first
+     * page
+     */
+    public boolean isResumed() {
+        return mIsResumed;
+    }
+
+    /**
+     * @return True if the checkpoints show the source was already crawled to the end, in which
+     * case nothing was downloaded
+     */
+    public boolean isSkipped() {
+        return mIsSkipped;
+    }
+
+    public boolean isSuccessful() {
+        return mError == null;
+    }
+}
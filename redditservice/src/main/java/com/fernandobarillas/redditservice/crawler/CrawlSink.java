@@ -0,0 +1,24 @@
+package com.fernandobarillas.redditservice.crawler;
+
+import com.fernandobarillas.redditservice.paginators.ListingSource;
+
+import net.dean.jraw.models.Submission;
+
+import java.util.List;
+
+/**
+ * Receives the pages downloaded by a {@link ListingCrawler}. The pages of a source are delivered
+ * one at a time and in order, while pages of different sources are delivered concurrently from
+ * background threads, so implementations must be thread-safe
+ */
+public interface CrawlSink {
+    /**
+     * Called for every downloaded page. The source's checkpoint only moves past the page once this
+     * returns, so a page whose delivery threw is downloaded again when the crawl is resumed
+     *
+     * @param source The source the page belongs to
+     * @param page   The Submissions of the page
+     * @throws Exception To stop crawling the source
+     */
+    void onPage(ListingSource source, List<Submission> page) throws Exception;
+}
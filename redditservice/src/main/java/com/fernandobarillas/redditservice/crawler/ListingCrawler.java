@@ -0,0 +1,309 @@
+package com.fernandobarillas.redditservice.crawler;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.data.AccountSession;
+import com.fernandobarillas.redditservice.data.RedditData;
+import com.fernandobarillas.redditservice.http.RateLimitException;
+import com.fernandobarillas.redditservice.paginators.ListingSource;
+import com.fernandobarillas.redditservice.tracing.Trace;
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Observer;
+import rx.exceptions.Exceptions;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observables.SyncOnSubscribe;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Walks every page of a set of listings and delivers each page to a {@link CrawlSink}, for bulk
+ * ingestion of whole subreddits, users and domains.
+ * <p>
+ * Concurrency is bounded in two ways. Up to {@link Builder#setMaxConcurrency(int)} sources are
+ * crawled at the same time, the others waiting for one of them to finish. Within a source, pages
+ * are chained through their after cursor, so the next page can only be requested once the page
+ * before it has been downloaded; {@link Builder#setMaxPagesPerSource(int)} bounds how many of a
+ * source's pages can be downloaded ahead of the sink, which is 1 by default so that a source's
+ * next page is only requested once the sink is done with the current one.
+ * <p>
+ * Every request goes through the account's rate limiter, which spaces requests out as the budget
+ * runs low and holds them for a short while once it is used up. A request it would have to hold
+ * for longer fails with a {@link RateLimitException} instead; the source then waits until the
+ * budget allows the request and carries on after its last delivered page, so a crawl that uses up
+ * the budget slows down rather than fails. Keep the maximum concurrency low for long crawls, since
+ * held requests each keep a background thread.
+ * <p>
+ * When {@link CrawlCheckpoints} are set, each source's checkpoint moves past every page once the
+ * sink has received it. An interrupted crawl started again with the same checkpoints picks every
+ * source up after its last delivered page, and skips the sources already crawled to the end.
+ */
+public class ListingCrawler {
+    /** Sources crawled at the same time by default */
+    public static final int DEFAULT_MAX_CONCURRENCY      = 4;
+    /** Pages of a single source in flight at once by default */
+    public static final int DEFAULT_MAX_PAGES_PER_SOURCE = 1;
+
+    /**
+     * Subscribes to a source's pages again once the rate limit allows it, for as long as the
+     * requests fail with a {@link RateLimitException}. Other errors are passed on
+     */
+    private static final Func1<Observable<? extends Throwable>, Observable<?>>
+            RETRY_RATE_LIMITED = new Func1<Observable<? extends Throwable>, Observable<?>>() {
+        @Override
+        public Observable<?> call(Observable<? extends Throwable> errors) {
+            return errors.flatMap(new Func1<Throwable, Observable<?>>() {
+                @Override
+                public Observable<?> call(Throwable throwable) {
+                    RateLimitException rateLimitException = getRateLimitException(throwable);
+                    if (rateLimitException == null) return Observable.error(throwable);
+                    long delay = Math.max(0,
+                            rateLimitException.getSendTime() - System.currentTimeMillis());
+                    Trace.d("retryRateLimited", "delay", delay);
+                    return Observable.timer(delay, TimeUnit.MILLISECONDS, Schedulers.io());
+                }
+            });
+        }
+    };
+
+    private final AccountSession   mSession;
+    private final CrawlSink        mSink;
+    private final CrawlCheckpoints mCheckpoints;
+    private final int              mMaxConcurrency;
+    private final int              mMaxPagesPerSource;
+
+    private ListingCrawler(Builder builder) {
+        mSession = builder.session;
+        mSink = builder.sink;
+        mCheckpoints = builder.checkpoints;
+        mMaxConcurrency = builder.maxConcurrency;
+        mMaxPagesPerSource = builder.maxPagesPerSource;
+    }
+
+    /**
+     * Crawls every passed-in source. A source that fails is reported in its result and doesn't
+     * stop the others
+     *
+     * @param sources The sources to crawl. Duplicates are crawled once
+     * @return An Observable that emits the result of each source as it finishes, in no particular
+     * order, then completes once every source is done. Work starts when subscribing and stops
+     * when unsubscribing
+     */
+    public Observable<CrawlResult> crawl(@NonNull Collection<ListingSource> sources) {
+        List<ListingSource> uniqueSources = new ArrayList<>();
+        for (ListingSource source : sources) {
+            if (!uniqueSources.contains(source)) uniqueSources.add(source);
+        }
+        return Observable.from(uniqueSources)
+                .flatMap(new Func1<ListingSource, Observable<CrawlResult>>() {
+                    @Override
+                    public Observable<CrawlResult> call(ListingSource source) {
+                        return crawl(source);
+                    }
+                }, mMaxConcurrency);
+    }
+
+    /**
+     * @param source The source to crawl
+     * @return An Observable that emits the source's result once it has been crawled to the end or
+     * has failed
+     */
+    public Observable<CrawlResult> crawl(@NonNull final ListingSource source) {
+        return Observable.defer(new Func0<Observable<CrawlResult>>() {
+            @Override
+            public Observable<CrawlResult> call() {
+                if (mCheckpoints != null && mCheckpoints.isComplete(source)) {
+                    return Observable.just(new CrawlResult(source, 0, 0, false, true, null));
+                }
+                String after = mCheckpoints != null ? mCheckpoints.getAfter(source) : null;
+                final Progress progress = new Progress(source, after);
+                return mSession.authenticated(getPages(progress).subscribeOn(Schedulers.io()))
+                        .observeOn(Schedulers.io(), mMaxPagesPerSource)
+                        .doOnNext(new Action1<Page>() {
+                            @Override
+                            public void call(Page page) {
+                                deliver(source, page, progress);
+                            }
+                        })
+                        .retryWhen(RETRY_RATE_LIMITED)
+                        .count()
+                        .map(new Func1<Integer, CrawlResult>() {
+                            @Override
+                            public CrawlResult call(Integer pages) {
+                                Trace.v("crawl", "source", source, "pages", pages);
+                                return progress.toResult(null);
+                            }
+                        })
+                        .onErrorReturn(new Func1<Throwable, CrawlResult>() {
+                            @Override
+                            public CrawlResult call(Throwable throwable) {
+                                Timber.w(throwable, "crawl: Unable to crawl %s", source);
+                                return progress.toResult(throwable);
+                            }
+                        });
+            }
+        });
+    }
+
+    private void deliver(ListingSource source, Page page, Progress progress) {
+        try {
+            mSink.onPage(source, page.mSubmissions);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        if (mCheckpoints != null) mCheckpoints.setAfter(source, page.mAfter);
+        progress.mAfter = page.mAfter;
+        progress.mPages++;
+        progress.mSubmissions += page.mSubmissions.size();
+    }
+
+    /**
+     * @return An Observable that downloads one page of the source per item requested downstream,
+     * starting after the last page delivered each time it is subscribed to
+     */
+    private Observable<Page> getPages(final Progress progress) {
+        final RedditData redditData = mSession.getRedditData();
+        Func0<Paginator<Submission>> start = new Func0<Paginator<Submission>>() {
+            @Override
+            public Paginator<Submission> call() {
+                Paginator<Submission> paginator = progress.mSource.newPaginator(redditData);
+                String after = progress.mAfter;
+                if (after != null) paginator.setAfter(after);
+                return paginator;
+            }
+        };
+        Func2<Paginator<Submission>, Observer<? super Page>, Paginator<Submission>> next =
+                new Func2<Paginator<Submission>, Observer<? super Page>, Paginator<Submission>>() {
+                    @Override
+                    public Paginator<Submission> call(Paginator<Submission> paginator,
+                            Observer<? super Page> observer) {
+                        if (!paginator.hasNext()) {
+                            observer.onCompleted();
+                            return paginator;
+                        }
+                        Listing<Submission> listing = paginator.next(true);
+                        List<Submission> children = listing.getChildren();
+                        if (children == null) children = Collections.emptyList();
+                        StringPool.getListingPool().internSubmissions(children);
+                        observer.onNext(new Page(children, listing.getAfter()));
+                        return paginator;
+                    }
+                };
+        return Observable.create(SyncOnSubscribe.<Paginator<Submission>, Page>createStateful(start,
+                next));
+    }
+
+    /**
+     * @return The RateLimitException the passed-in error is or was caused by, such as when JRAW
+     * wraps it, null if there is none
+     */
+    @Nullable
+    private static RateLimitException getRateLimitException(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitException) return (RateLimitException) cause;
+        }
+        return null;
+    }
+
+    public static class Builder {
+        // Required parameters
+        private final AccountSession session;
+        private final CrawlSink      sink;
+
+        // Optional parameters, using default values
+        private CrawlCheckpoints checkpoints       = null;
+        private int              maxConcurrency    = DEFAULT_MAX_CONCURRENCY;
+        private int              maxPagesPerSource = DEFAULT_MAX_PAGES_PER_SOURCE;
+
+        /**
+         * @param session The account to crawl as, see {@link
+         *                com.fernandobarillas.redditservice.RedditService#getAccount(String)}
+         * @param sink    Receives every downloaded page
+         */
+        public Builder(@NonNull AccountSession session, @NonNull CrawlSink sink) {
+            this.session = session;
+            this.sink = sink;
+        }
+
+        public ListingCrawler build() {
+            return new ListingCrawler(this);
+        }
+
+        /**
+         * @param checkpoints The checkpoints to resume sources from and to record progress in,
+         *                    null to always start every source at its first page
+         */
+        public Builder setCheckpoints(@Nullable CrawlCheckpoints checkpoints) {
+            this.checkpoints = checkpoints;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrency The number of sources crawled at the same time
+         */
+        public Builder setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            return this;
+        }
+
+        /**
+         * @param maxPagesPerSource The number of pages of a single source that can be downloaded
+         *                          ahead of the sink
+         */
+        public Builder setMaxPagesPerSource(int maxPagesPerSource) {
+            this.maxPagesPerSource = Math.max(1, maxPagesPerSource);
+            return this;
+        }
+    }
+
+    /**
+     * A downloaded page and the cursor of the page after it
+     */
+    private static class Page {
+        final List<Submission> mSubmissions;
+        final String           mAfter;
+
+        Page(List<Submission> submissions, @Nullable String after) {
+            mSubmissions = submissions;
+            mAfter = after;
+        }
+    }
+
+    /**
+     * What a source has delivered so far. Only updated from the thread delivering its pages
+     */
+    private static class Progress {
+        final ListingSource mSource;
+        final boolean       mIsResumed;
+
+        /** The cursor of the page after the last delivered one */
+        volatile String mAfter;
+        volatile int    mPages;
+        volatile int    mSubmissions;
+
+        Progress(ListingSource source, @Nullable String after) {
+            mSource = source;
+            mIsResumed = after != null;
+            mAfter = after;
+        }
+
+        CrawlResult toResult(@Nullable Throwable error) {
+            return new CrawlResult(mSource, mPages, mSubmissions, mIsResumed, false, error);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.fernandobarillas.redditservice.data;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.fernandobarillas.redditservice.ServiceState;
+import com.fernandobarillas.redditservice.cache.SeenFilter;
+import com.fernandobarillas.redditservice.cache.SubscriptionSnapshot;
+import com.fernandobarillas.redditservice.observables.AuthenticationGate;
+import com.fernandobarillas.redditservice.preferences.RedditAuthPreferences;
+import com.fernandobarillas.redditservice.preferences.ServicePreferences;
+import com.fernandobarillas.redditservice.requests.AuthRequest;
+import com.fernandobarillas.redditservice.results.AuthResult;
+import com.fernandobarillas.redditservice.tracing.Trace;
+
+import net.dean.jraw.RedditClient;
+import net.dean.jraw.http.UserAgent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Everything the service keeps for a single reddit account: its client and data, its token state
+ * and the preferences it is stored in, its subscription snapshot, its vote and save queue and the
+ * {@link SeenFilter} the Submissions it has been shown are recorded in.
+ * Sessions are kept in a {@link ClientPool} so that switching between accounts keeps each
+ * account's authentication and warm connections.
+ */
+public class AccountSession {
+    /**
+     * Time to deduct from authentication token expiration time. Gives a good buffer before reddit
+     * deauthenticates the client
+     */
+    private static final long FIVE_MINUTES_IN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * Time a new token is used for at least before being refreshed, for tokens that expire within
+     * the buffer above or that look expired because of clock skew
+     */
+    private static final long MIN_TOKEN_LIFETIME     = TimeUnit.MINUTES.toMillis(1);
+
+    private final String                mUsername;
+    private final RedditAuthPreferences mAuthPreferences;
+    private final ServicePreferences    mServicePreferences;
+    private final RedditData            mRedditData;
+    private final AuthenticationGate    mAuthenticationGate;
+    private final SubscriptionSnapshot  mSubscriptionSnapshot;
+    private final Listener              mListener;
+
+    private volatile ServiceState mState = ServiceState.UNINITIALIZED;
+    private volatile SeenFilter   mSeenFilter;
+
+    /**
+     * @param context            The context to load the account's stored data with
+     * @param username           The account's username, null for a user-less session
+     * @param userAgent          The User-Agent to make requests with
+     * @param sharedClient       The client whose connection pool and dispatcher are shared by
+     *                           every session
+     * @param isRawJson          True to ask reddit not to escape HTML entities in responses
+     * @param servicePreferences The preferences holding the app's reddit client ID and redirect URI
+     * @param listener           Notified of the session's authentication state
+     */
+    AccountSession(Context context,
+            @Nullable String username,
+            UserAgent userAgent,
+            OkHttpClient sharedClient,
+            boolean isRawJson,
+            ServicePreferences servicePreferences,
+            @NonNull Listener listener) {
+        mUsername = TextUtils.isEmpty(username) ? null : username;
+        mAuthPreferences = new RedditAuthPreferences(context, mUsername);
+        Timber.i(
+                "AccountSession: Loaded preferences for user [%s]",
+                mAuthPreferences.getUsername());
+        mServicePreferences = servicePreferences;
+        mListener = listener;
+
+        mRedditData = new RedditData(userAgent, sharedClient, isRawJson);
+        mRedditData.getMutationQueue().setMutationLog(new MutationLog(context, mUsername));
+        mSubscriptionSnapshot = new SubscriptionSnapshot(context, mUsername);
+        mAuthenticationGate = new AuthenticationGate(mRedditData.mRedditClient,
+                new Func0<AuthRequest>() {
+                    @Override
+                    public AuthRequest call() {
+                        return getNewAuthRequest();
+                    }
+                },
+                new AuthenticationGate.Listener() {
+                    @Override
+                    public void onAuthError(Throwable throwable) {
+                        Timber.e(throwable, "onAuthError: Authentication failed [%s]", mUsername);
+                        setState(ServiceState.FAILED);
+                    }
+
+                    @Override
+                    public void onAuthResult(AuthResult authResult) {
+                        handleAuthResult(authResult);
+                    }
+                },
+                mAuthPreferences.getExpirationTime());
+    }
+
+    @Override
+    public String toString() {
+        return "AccountSession{" + "mUsername='" + mUsername + '\'' + ", mState=" + mState + '}';
+    }
+
+    /**
+     * Makes the passed-in request wait for this account's client to hold a valid token.
+     * Concurrent requests share a single token refresh, see {@link AuthenticationGate}
+     *
+     * @param request The request to make once authenticated
+     * @return An Observable that subscribes to the request once the client is authenticated
+     */
+    public <T> Observable<T> authenticated(final Observable<T> request) {
+        return mAuthenticationGate.awaitAuthentication()
+                .concatMap(new Func1<Boolean, Observable<T>>() {
+                    @Override
+                    public Observable<T> call(Boolean isAuthenticated) {
+                        return request;
+                    }
+                });
+    }
+
+    public AuthenticationGate getAuthenticationGate() {
+        return mAuthenticationGate;
+    }
+
+    public RedditClient getRedditClient() {
+        return mRedditData.mRedditClient;
+    }
+
+    public RedditData getRedditData() {
+        return mRedditData;
+    }
+
+    /**
+     * @return The filter the Submissions shown to this account are recorded in, null if none is set
+     */
+    @Nullable
+    public SeenFilter getSeenFilter() {
+        return mSeenFilter;
+    }
+
+    /**
+     * @return The authentication state of this account
+     */
+    public ServiceState getState() {
+        return mState;
+    }
+
+    public SubscriptionSnapshot getSubscriptionSnapshot() {
+        return mSubscriptionSnapshot;
+    }
+
+    /**
+     * @return The account's username, null for a user-less session
+     */
+    @Nullable
+    public String getUsername() {
+        return mUsername;
+    }
+
+    /**
+     * Records fullnames in the account's {@link SeenFilter} on an io thread, since recording
+     * touches the filter's memory-mapped file. Does nothing when no filter is set
+     *
+     * @param fullnames The fullnames of the Submissions that have been shown
+     */
+    public void recordSeen(final Collection<String> fullnames) {
+        final SeenFilter seenFilter = mSeenFilter;
+        if (seenFilter == null || fullnames.isEmpty()) return;
+        final List<String> batch = new ArrayList<>(fullnames);
+        Observable.fromCallable(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                for (String fullname : batch) {
+                    seenFilter.add(fullname);
+                }
+                return batch.size();
+            }
+        }).subscribeOn(Schedulers.io()).subscribe(new Action1<Integer>() {
+            @Override
+            public void call(Integer count) {
+                Trace.v("recordSeen", "count", count);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Timber.w(throwable, "recordSeen: Unable to record seen Submissions");
+            }
+        });
+    }
+
+    /**
+     * Sets the filter to record the Submissions the service's getMoreSubmissions methods return
+     * to this account in, so that they can be left out of later pages. Submissions are recorded
+     * as they are delivered to the subscriber, so the rest of a page isn't recorded once the
+     * subscriber unsubscribes. Each account needs a filter of its own, such as with {@link
+     * SeenFilter#SeenFilter(Context, String)} and the account's username
+     *
+     * @param seenFilter The filter to use, or null to stop recording Submissions
+     */
+    public void setSeenFilter(@Nullable SeenFilter seenFilter) {
+        mSeenFilter = seenFilter;
+    }
+
+    /**
+     * Stops renewing the account's token and gives its queued votes and saves a last chance to be
+     * sent. Queued requests that fail stay logged and are replayed the next time the account is
+     * used
+     */
+    void close() {
+        Trace.v("close", "username", mUsername);
+        mAuthenticationGate.stopRenewal();
+        mRedditData.getMutationQueue().flush();
+    }
+
+    /**
+     * Sends the vote and save requests in the account's {@link MutationLog} that haven't been
+     * acknowledged yet, once the client is authenticated
+     */
+    void replayMutations() {
+        authenticated(mRedditData.getMutationQueue().replay()).subscribeOn(Schedulers.io())
+                .subscribe(new Action1<Boolean>() {
+                    @Override
+                    public void call(Boolean result) {
+                        Timber.v("replayMutations: Replayed a logged request");
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        Timber.w(throwable, "replayMutations: Unable to replay logged requests");
+                    }
+                });
+    }
+
+    /**
+     * Starts authenticating the account and renewing its token ahead of time
+     */
+    void start() {
+        // Renew tokens ahead of time so that requests never wait on a refresh
+        mAuthenticationGate.startRenewal();
+        if (mAuthenticationGate.isAuthenticated()) {
+            setState(ServiceState.READY);
+            return;
+        }
+
+        setState(ServiceState.AUTHENTICATING);
+        mAuthenticationGate.awaitAuthentication()
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<Boolean>() {
+                    @Override
+                    public void call(Boolean isAuthenticated) {
+                        Timber.v("start: Authenticated [%s]", mUsername);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        // The gate listener has already moved the session to the FAILED state
+                        Timber.e(throwable, "start: Unable to authenticate [%s]", mUsername);
+                    }
+                });
+    }
+
+    private AuthRequest getNewAuthRequest() {
+        Trace.v("getNewAuthRequest");
+        if (mAuthPreferences.getUsername() != null && mAuthPreferences.getRefreshToken() == null) {
+            // TODO: Handle non-userless with no refresh token
+            Timber.e(
+                    "getNewAuthRequest: No refresh token found for user [%s]",
+                    mAuthPreferences.getUsername());
+            return null;
+        }
+        Timber.v(
+                "getNewAuthRequest: Building new auth request for username [%s]",
+                mAuthPreferences.getUsername());
+        return new AuthRequest(
+                mAuthPreferences.getRefreshToken(),
+                mServicePreferences.getRedditClientId(),
+                mServicePreferences.getRedditRedirectUrl(),
+                mAuthPreferences.getAuthenticationJson(),
+                mAuthPreferences.getExpirationTime());
+    }
+
+    private void handleAuthResult(AuthResult authResult) {
+        Trace.v("handleAuthResult", "authResult", authResult);
+        if (!authResult.isCachedData()) {
+            Timber.v("authenticationCallback: Caching new authentication data");
+            String authenticationJson = authResult.getAuthenticationJson();
+            long currentTime = new Date().getTime();
+            long expirationTime = authResult.getExpirationTime() - FIVE_MINUTES_IN_MILLIS;
+            Timber.d("handleAuthResult: Crrnt time: [%s]", new Date(currentTime));
+            Timber.d("handleAuthResult: Exprn time: [%s]", new Date(expirationTime));
+            Timber.d("handleAuthResult: Auth json: [%s]", authenticationJson);
+            if (expirationTime > currentTime && !TextUtils.isEmpty(authenticationJson)) {
+                mAuthPreferences.setExpirationTime(expirationTime);
+                mAuthPreferences.setAuthenticationJson(authenticationJson);
+                mAuthPreferences.commit();
+                mAuthenticationGate.setExpirationTime(expirationTime);
+                Timber.i(
+                        "handleAuthResult: New auth data cached for user [%s]",
+                        mAuthPreferences.getUsername());
+            } else {
+                // The gate would otherwise keep the previous token's expiration, which has passed,
+                // and every request would start another refresh
+                mAuthenticationGate.setExpirationTime(
+                        Math.max(expirationTime, currentTime + MIN_TOKEN_LIFETIME));
+                Timber.i(
+                        "handleAuthResult: New auth data was NOT cached for user [%s]",
+                        mAuthPreferences.getUsername());
+            }
+        } else {
+            Timber.d(
+                    "handleAuthResult: Auth result already cached. Expiration: [%s]",
+                    new Date(mAuthPreferences.getExpirationTime()));
+            mAuthenticationGate.setExpirationTime(mAuthPreferences.getExpirationTime());
+        }
+        setState(ServiceState.READY);
+    }
+
+    private void setState(ServiceState state) {
+        mState = state;
+        mListener.onStateChanged(this, state);
+    }
+
+    /**
+     * Notified when the authentication state of a session changes
+     */
+    public interface Listener {
+        void onStateChanged(AccountSession session, ServiceState state);
+    }
+}
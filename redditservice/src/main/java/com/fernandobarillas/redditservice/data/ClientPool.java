@@ -0,0 +1,196 @@
+package com.fernandobarillas.redditservice.data;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.fernandobarillas.redditservice.http.CachingDns;
+import com.fernandobarillas.redditservice.http.ConnectionWarmer;
+import com.fernandobarillas.redditservice.preferences.ServicePreferences;
+
+import net.dean.jraw.http.UserAgent;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import rx.functions.Action1;
+import timber.log.Timber;
+
+/**
+ * Pool of {@link AccountSession}s keyed by username. Each account keeps its own client and token
+ * state, while every account's client is built from the same OkHttpClient and so shares a single
+ * connection pool and dispatcher. Switching accounts reuses the account's session and the
+ * connections already open to reddit, and requests made as different accounts can run at the same
+ * time. The shared client resolves hosts through a {@link CachingDns}, and can open its
+ * connections to reddit ahead of the first request with {@link #prewarm()}.
+ */
+public class ClientPool {
+    /** Key of the user-less session */
+    private static final String USERLESS_KEY = "";
+
+    private final Context                     mContext;
+    private final UserAgent                   mUserAgent;
+    private final OkHttpClient                mSharedClient;
+    private final CachingDns                  mDns;
+    private final boolean                     mIsRawJson;
+    private final ServicePreferences          mServicePreferences;
+    private final AccountSession.Listener     mListener;
+    private final Map<String, AccountSession> mSessions;
+
+    /**
+     * @param context            The context to load each account's stored data with
+     * @param userAgent          The User-Agent to make requests with
+     * @param okHttpClient       A custom client to build every account's client from, null to use
+     *                           a default client
+     * @param connectionPool     The pool to keep idle connections in, null to use the client's own
+     * @param servicePreferences The preferences holding the app's reddit client ID and redirect URI
+     * @param listener           Notified of the authentication state of every session
+     */
+    public ClientPool(Context context,
+            UserAgent userAgent,
+            @Nullable OkHttpClient okHttpClient,
+            @Nullable ConnectionPool connectionPool,
+            ServicePreferences servicePreferences,
+            @NonNull AccountSession.Listener listener) {
+        mContext = context;
+        mUserAgent = userAgent;
+        OkHttpClient.Builder clientBuilder =
+                okHttpClient != null ? okHttpClient.newBuilder() : new OkHttpClient.Builder();
+        mDns = new CachingDns(okHttpClient != null ? okHttpClient.dns() : Dns.SYSTEM,
+                CachingDns.DEFAULT_TTL);
+        clientBuilder.dns(mDns);
+        if (connectionPool != null) clientBuilder.connectionPool(connectionPool);
+        mSharedClient = clientBuilder.build();
+        mIsRawJson = okHttpClient != null;
+        mServicePreferences = servicePreferences;
+        mListener = listener;
+        mSessions = new LinkedHashMap<>();
+    }
+
+    /**
+     * Stops every session and removes it from the pool
+     */
+    public synchronized void close() {
+        for (AccountSession session : mSessions.values()) {
+            session.close();
+        }
+        mSessions.clear();
+    }
+
+    /**
+     * Gets the session for an account, creating it and starting its authentication if the pool
+     * doesn't hold one yet
+     *
+     * @param username The account's username, null for the user-less session
+     * @return The account's session
+     */
+    public synchronized AccountSession getSession(@Nullable String username) {
+        String key = getKey(username);
+        AccountSession session = mSessions.get(key);
+        if (session == null) {
+            Timber.d("getSession: New session for [%s]", username);
+            session = new AccountSession(mContext,
+                    username,
+                    mUserAgent,
+                    mSharedClient,
+                    mIsRawJson,
+                    mServicePreferences,
+                    mListener);
+            mSessions.put(key, session);
+            session.start();
+        }
+        return session;
+    }
+
+    /**
+     * @param paginator A paginator instantiated by one of the sessions' {@link RedditData}
+     * @return The session the paginator was instantiated by, null if no session in the pool
+     * instantiated it
+     */
+    @Nullable
+    public synchronized AccountSession getSession(Paginator<Submission> paginator) {
+        for (AccountSession session : mSessions.values()) {
+            if (session.getRedditData().isOwnPaginator(paginator)) return session;
+        }
+        return null;
+    }
+
+    /**
+     * @return Every session in the pool, in the order they were created
+     */
+    public synchronized List<AccountSession> getSessions() {
+        return new ArrayList<>(mSessions.values());
+    }
+
+    /**
+     * @param username The account's username, null for the user-less session
+     * @return The account's session, null if the pool doesn't hold one
+     */
+    @Nullable
+    public synchronized AccountSession peekSession(@Nullable String username) {
+        return mSessions.get(getKey(username));
+    }
+
+    /**
+     * Forgets the hosts resolved on the previous network, since the addresses reddit's hosts
+     * resolve to can differ between networks
+     */
+    public void onNetworkChanged() {
+        mDns.clear();
+    }
+
+    /**
+     * Stops an account's session and removes it from the pool
+     *
+     * @param username The account's username, null for the user-less session
+     */
+    public synchronized void remove(@Nullable String username) {
+        AccountSession session = mSessions.remove(getKey(username));
+        if (session != null) session.close();
+    }
+
+    /**
+     * Resolves reddit's hosts and opens a connection to each of them in the background, at the
+     * same time as any authentication in progress. Every session's client picks the connections up
+     * from the shared connection pool
+     */
+    public void prewarm() {
+        final long startTime = System.currentTimeMillis();
+        new ConnectionWarmer(mSharedClient, mUserAgent.toString()).warm(ConnectionWarmer.OAUTH_HOST,
+                ConnectionWarmer.WWW_HOST).toList().subscribe(new Action1<List<String>>() {
+            @Override
+            public void call(List<String> hosts) {
+                Timber.i("prewarm: Connected to %s in %d ms",
+                        hosts,
+                        System.currentTimeMillis() - startTime);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Timber.w(throwable, "prewarm: Unable to open connections");
+            }
+        });
+    }
+
+    /**
+     * Sends the logged votes and saves of every session, see {@link
+     * AccountSession#replayMutations()}
+     */
+    public void replayMutations() {
+        for (AccountSession session : getSessions()) {
+            session.replayMutations();
+        }
+    }
+
+    private static String getKey(@Nullable String username) {
+        return TextUtils.isEmpty(username) ? USERLESS_KEY : username.toLowerCase();
+    }
+}
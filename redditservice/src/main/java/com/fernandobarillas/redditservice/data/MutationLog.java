@@ -0,0 +1,285 @@
+package com.fernandobarillas.redditservice.data;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.fernandobarillas.redditservice.utils.AtomicFiles;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Write-ahead log for vote and save requests. Each request is appended and synced to disk before
+ * it is sent, and acknowledged once reddit has accepted it, so that requests made while offline
+ * or lost to the process dying can be sent again on the next start. Vote and save requests set a
+ * state rather than toggle it, which makes sending one twice harmless.
+ * <p>
+ * Each line of the log is one record: {@code <sequence> <type> <fullname> <value>} for a request
+ * and {@code <sequence> A} for an acknowledgement. A request is written together with the
+ * acknowledgements of the pending requests it supersedes, and only the latest request for each
+ * contribution is ever replayed. The log is compacted down to its pending requests when it is
+ * loaded and once enough acknowledgements have piled up.
+ */
+public class MutationLog {
+    public static final char TYPE_SAVE = 'S';
+    public static final char TYPE_VOTE = 'V';
+
+    private static final char   TYPE_ACKNOWLEDGEMENT = 'A';
+    private static final String FILE_PREFIX          = "jasw_mutations_";
+    private static final String FILE_USERLESS        = "userless";
+    private static final String FILE_EXTENSION       = ".log";
+    /** Acknowledgements appended before the log is rewritten with its pending requests only */
+    private static final int    COMPACTION_THRESHOLD = 100;
+
+    private final File             mFile;
+    private final Map<Long, Entry> mPending;
+
+    private boolean mIsLoaded;
+    private long    mNextSequence;
+    private int     mAcknowledgementCount;
+
+    /**
+     * @param context  The context to use when looking up the files directory
+     * @param username The user the requests are made as, null for a user-less session
+     */
+    public MutationLog(Context context, @Nullable String username) {
+        this(new File(context.getFilesDir(),
+                FILE_PREFIX + (TextUtils.isEmpty(username) ? FILE_USERLESS : username)
+                        + FILE_EXTENSION));
+    }
+
+    /**
+     * @param file The file to store the log in
+     */
+    public MutationLog(File file) {
+        mFile = file;
+        mPending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Marks requests as done so that they are never sent again
+     *
+     * @param sequences The sequence numbers returned when the requests were appended
+     */
+    public synchronized void acknowledge(Collection<Long> sequences) {
+        load();
+        StringBuilder records = new StringBuilder();
+        for (Long sequence : sequences) {
+            if (mPending.remove(sequence) == null) continue;
+            records.append(toAcknowledgement(sequence));
+            mAcknowledgementCount++;
+        }
+        if (records.length() == 0) return;
+
+        if (mPending.isEmpty() || mAcknowledgementCount >= COMPACTION_THRESHOLD) {
+            compact();
+            return;
+        }
+        try {
+            append(mFile, records.toString());
+        } catch (IOException e) {
+            // The requests are replayed on the next start then, which is harmless
+            Timber.w(e, "acknowledge: Unable to append to the mutation log");
+        }
+    }
+
+    /**
+     * Appends a request to the log, syncing it to disk before returning. Pending requests of the
+     * same type for the same contribution are superseded: they are acknowledged in the same write
+     * and won't be replayed
+     *
+     * @param type     Either {@link #TYPE_VOTE} or {@link #TYPE_SAVE}
+     * @param fullName The fullname of the contribution the request is for
+     * @param value    The vote direction as an int for votes, 1 to save or 0 to unsave for saves
+     * @return The sequence number to acknowledge the request with
+     * @throws IOException When the request can't be written to disk, in which case it isn't
+     *                     logged and the pending requests it would supersede are kept
+     */
+    public synchronized long append(char type, String fullName, int value) throws IOException {
+        load();
+        Entry entry = new Entry(mNextSequence++, type, fullName, value);
+        // The request goes first, a partial last line is skipped when loading
+        StringBuilder records = new StringBuilder(entry.toRecord());
+        List<Long> superseded = new ArrayList<>();
+        for (Entry pending : mPending.values()) {
+            if (!pending.getKey().equals(entry.getKey())) continue;
+            superseded.add(pending.mSequence);
+            records.append(toAcknowledgement(pending.mSequence));
+        }
+        append(mFile, records.toString());
+
+        for (Long sequence : superseded) {
+            mPending.remove(sequence);
+        }
+        mAcknowledgementCount += superseded.size();
+        mPending.put(entry.mSequence, entry);
+        return entry.mSequence;
+    }
+
+    /**
+     * @return Every request that hasn't been acknowledged yet, in the order they were made
+     */
+    public synchronized List<Entry> getPendingEntries() {
+        load();
+        return new ArrayList<>(mPending.values());
+    }
+
+    private static void append(File file, String records) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+
+        FileOutputStream outputStream = new FileOutputStream(file, true);
+        try {
+            outputStream.write(records.getBytes("UTF-8"));
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void compact() {
+        StringBuilder records = new StringBuilder();
+        for (Entry entry : mPending.values()) {
+            records.append(entry.toRecord());
+        }
+        // Replace the log in a single step so that dying mid-write doesn't lose it
+        try {
+            AtomicFiles.write(mFile, records.toString().getBytes("UTF-8"));
+        } catch (IOException e) {
+            Timber.w(e, "compact: Unable to rewrite the mutation log");
+        }
+        mAcknowledgementCount = 0;
+    }
+
+    private void load() {
+        if (mIsLoaded) return;
+        mIsLoaded = true;
+        if (!mFile.exists()) return;
+
+        Set<Long> acknowledged = new HashSet<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                // A partial last line means the process died while appending, skip it
+                if (fields.length < 2 || fields[1].length() != 1) continue;
+                try {
+                    long sequence = Long.parseLong(fields[0]);
+                    mNextSequence = Math.max(mNextSequence, sequence + 1);
+                    char type = fields[1].charAt(0);
+                    if (type == TYPE_ACKNOWLEDGEMENT) {
+                        acknowledged.add(sequence);
+                    } else if (fields.length == 4) {
+                        mPending.put(sequence,
+                                new Entry(sequence, type, fields[2], Integer.parseInt(fields[3])));
+                    }
+                } catch (NumberFormatException e) {
+                    Timber.w("load: Skipping malformed record [%s]", line);
+                }
+            }
+        } catch (IOException e) {
+            Timber.w(e, "load: Unable to read the mutation log");
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        // Only the latest request for each contribution matters when replaying. Acknowledgements
+        // are applied after, so that an acknowledged request never lets an older one through
+        Map<String, Long> latestSequences = new HashMap<>();
+        for (Entry entry : mPending.values()) {
+            Long latestSequence = latestSequences.get(entry.getKey());
+            if (latestSequence == null || latestSequence < entry.mSequence) {
+                latestSequences.put(entry.getKey(), entry.mSequence);
+            }
+        }
+        Iterator<Entry> iterator = mPending.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (latestSequences.get(entry.getKey()) != entry.mSequence
+                    || acknowledged.contains(entry.mSequence)) {
+                iterator.remove();
+            }
+        }
+        compact();
+    }
+
+    private static String toAcknowledgement(long sequence) {
+        return sequence + " " + TYPE_ACKNOWLEDGEMENT + "\n";
+    }
+
+    /**
+     * A single request stored in the log
+     */
+    public static class Entry {
+        private final long   mSequence;
+        private final char   mType;
+        private final String mFullName;
+        private final int    mValue;
+
+        Entry(long sequence, char type, String fullName, int value) {
+            mSequence = sequence;
+            mType = type;
+            mFullName = fullName;
+            mValue = value;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "mSequence=" + mSequence +
+                    ", mType=" + mType +
+                    ", mFullName='" + mFullName + '\'' +
+                    ", mValue=" + mValue +
+                    '}';
+        }
+
+        public String getFullName() {
+            return mFullName;
+        }
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        public char getType() {
+            return mType;
+        }
+
+        public int getValue() {
+            return mValue;
+        }
+
+        String getKey() {
+            return mType + mFullName;
+        }
+
+        String toRecord() {
+            return mSequence + " " + mType + " " + mFullName + " " + mValue + "\n";
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.fernandobarillas.redditservice.data;
+
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fernandobarillas.redditservice.metrics.MetricsRegistry;
+import com.fernandobarillas.redditservice.observables.Saving;
+import com.fernandobarillas.redditservice.observables.Voting;
+import com.fernandobarillas.redditservice.requests.SaveRequest;
+import com.fernandobarillas.redditservice.requests.VoteRequest;
+import com.fernandobarillas.redditservice.tracing.Trace;
+
+import net.dean.jraw.http.NetworkException;
+import net.dean.jraw.managers.AccountManager;
+import net.dean.jraw.models.PublicContribution;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.models.VoteDirection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+import timber.log.Timber;
+
+/**
+ * Queue for vote and save requests, keyed by the contribution's fullname. A request waits for a
+ * short coalescing delay before being sent and any request made for the same contribution in the
+ * meantime replaces it, so a user toggling a vote up, down and up again only sends the last vote.
+ * Requests that wouldn't change the contribution's vote or saved state are completed without
+ * being sent: the state the contribution was passed in with and, for the most recently changed
+ * contributions, the state their last successful request left them in must both already match.
+ * Either one can be out of date, so a request they disagree on is always sent. No more than a
+ * fixed number of requests are sent at the same time.
+ * <p>
+ * Every caller's Observable emits the result of the request that was finally sent for its
+ * contribution. When a {@link MutationLog} is set every request is logged before it is queued and
+ * acknowledged once reddit has accepted or rejected it. A request that can't be logged fails with
+ * the IOException without being sent. The log is written to outside the queue's lock, so
+ * requests that are draining aren't held up by the disk. Requests that failed to reach reddit
+ * stay in the log and are sent again by {@link #replay()}.
+ */
+public class MutationQueue {
+    /** Requests sent at the same time by default */
+    public static final int  DEFAULT_MAX_CONCURRENCY = 2;
+    /** Time a request waits for a newer request to replace it by default */
+    public static final long DEFAULT_COALESCE_DELAY  = 500;
+
+    private static final String VOTE_PREFIX   = "vote:";
+    private static final String SAVE_PREFIX   = "save:";
+    /** Contributions whose confirmed vote and saved state are remembered */
+    private static final int    MAX_CONFIRMED = 500;
+
+    private final AccountManager        mAccountManager;
+    private final Map<String, Mutation> mPending;
+    private final Set<String>           mInFlight;
+
+    /** The vote and saved state of each contribution as of its last successful request */
+    private final LruCache<String, VoteDirection> mConfirmedVotes;
+    private final LruCache<String, Boolean>       mConfirmedSaves;
+    /** Sequence numbers of the logged requests that are queued or in flight */
+    private final Set<Long>                       mTrackedSequences;
+    /** Held while a request is logged and queued, so requests are queued in the order logged */
+    private final Object                          mLogLock = new Object();
+
+    private MutationLog mMutationLog;
+
+    private int  mActiveCount;
+    private int  mMaxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private long mCoalesceDelay  = DEFAULT_COALESCE_DELAY;
+
+    public MutationQueue(AccountManager accountManager) {
+        mAccountManager = accountManager;
+        mPending = new LinkedHashMap<>();
+        mInFlight = new HashSet<>();
+        mConfirmedVotes = new LruCache<>(MAX_CONFIRMED);
+        mConfirmedSaves = new LruCache<>(MAX_CONFIRMED);
+        mTrackedSequences = new HashSet<>();
+    }
+
+    /**
+     * Sends every queued request right away, skipping what is left of their coalescing delay.
+     * Requests still wait for the requests in flight ahead of them
+     */
+    public void flush() {
+        Trace.v("flush");
+        synchronized (this) {
+            for (Mutation mutation : mPending.values()) {
+                mutation.mReadyTime = 0;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Queues every request from the {@link MutationLog} that hasn't been acknowledged and isn't
+     * already queued or in flight
+     *
+     * @return An Observable that completes once every replayed request has been sent. Requests
+     * that fail again stay in the log and don't stop the others
+     */
+    public Observable<Boolean> replay() {
+        return Observable.defer(new Func0<Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call() {
+                MutationLog mutationLog;
+                synchronized (MutationQueue.this) {
+                    mutationLog = mMutationLog;
+                }
+                if (mutationLog == null) return Observable.empty();
+
+                List<Observable<Boolean>> replays = new ArrayList<>();
+                for (MutationLog.Entry entry : mutationLog.getPendingEntries()) {
+                    synchronized (MutationQueue.this) {
+                        if (mTrackedSequences.contains(entry.getSequence())) continue;
+                    }
+                    Mutation mutation = fromLogEntry(entry);
+                    if (mutation == null) continue;
+                    Timber.d("replay: Replaying %s", entry);
+                    replays.add(enqueue(mutation).onErrorResumeNext(Observable.<Boolean>empty()));
+                }
+                return Observable.merge(replays);
+            }
+        });
+    }
+
+    /**
+     * Queues a save or unsave request
+     *
+     * @param contribution The contribution to save or unsave
+     * @param isSave       True to save, false to unsave
+     * @return An Observable that emits true once the last request queued for this contribution
+     * has completed
+     */
+    public Observable<Boolean> save(@NonNull PublicContribution contribution, boolean isSave) {
+        return enqueue(new SaveMutation(contribution, isSave));
+    }
+
+    /**
+     * @param mutationLog The log to write requests to before they are sent, null to disable
+     *                    logging
+     */
+    public synchronized void setMutationLog(MutationLog mutationLog) {
+        mMutationLog = mutationLog;
+    }
+
+    /**
+     * @param coalesceDelay The time in milliseconds a request waits for a newer request for the
+     *                      same contribution to replace it
+     */
+    public synchronized void setCoalesceDelay(long coalesceDelay) {
+        mCoalesceDelay = Math.max(0, coalesceDelay);
+    }
+
+    /**
+     * @param maxConcurrency The maximum number of requests to send at the same time
+     */
+    public synchronized void setMaxConcurrency(int maxConcurrency) {
+        mMaxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Queues a vote request
+     *
+     * @param contribution  The contribution to vote on
+     * @param voteDirection The vote to cast
+     * @return An Observable that emits true once the last request queued for this contribution
+     * has completed
+     */
+    public Observable<Boolean> vote(
+            @NonNull PublicContribution contribution, @NonNull VoteDirection voteDirection) {
+        return enqueue(new VoteMutation(contribution, voteDirection));
+    }
+
+    private void drain() {
+        List<Mutation> skipped = new ArrayList<>();
+        MutationLog mutationLog;
+        synchronized (this) {
+            mutationLog = mMutationLog;
+            long currentTime = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Mutation>> iterator = mPending.entrySet().iterator();
+            while (mActiveCount < mMaxConcurrency && iterator.hasNext()) {
+                Map.Entry<String, Mutation> entry = iterator.next();
+                final String key = entry.getKey();
+                final Mutation mutation = entry.getValue();
+                // Requests for the same contribution are sent one at a time, in order
+                if (mutation.mReadyTime > currentTime || mInFlight.contains(key)) continue;
+
+                iterator.remove();
+                if (mutation.isNoOp()) {
+                    Timber.d("drain: Skipping request that changes nothing for %s", key);
+                    mTrackedSequences.removeAll(mutation.mSequences);
+                    skipped.add(mutation);
+                    continue;
+                }
+
+                mInFlight.add(key);
+                mActiveCount++;
+                // Replayed requests failed or never got a response the first time they were sent
+                if (mutation.mIsReplay) {
+                    MetricsRegistry.getDefault().getEndpoint(mutation.getEndpoint()).onRetry();
+                }
+                mutation.execute().subscribeOn(Schedulers.io()).subscribe(new Action1<Boolean>() {
+                    @Override
+                    public void call(Boolean result) {
+                        onMutationFinished(key, mutation, null);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        onMutationFinished(key, mutation, throwable);
+                    }
+                });
+            }
+        }
+
+        for (Mutation mutation : skipped) {
+            acknowledge(mutationLog, mutation);
+            complete(mutation.mWaiters, null);
+        }
+    }
+
+    private Observable<Boolean> enqueue(final Mutation mutation) {
+        return Observable.defer(new Func0<Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call() {
+                AsyncSubject<Boolean> waiter = AsyncSubject.create();
+                long coalesceDelay;
+                synchronized (mLogLock) {
+                    MutationLog mutationLog;
+                    synchronized (MutationQueue.this) {
+                        mutationLog = mMutationLog;
+                    }
+                    if (mutationLog != null && mutation.mSequences.isEmpty()) {
+                        try {
+                            mutation.mSequences.add(mutationLog.append(mutation.getLogType(),
+                                    mutation.mContribution.getFullName(),
+                                    mutation.getLogValue()));
+                        } catch (IOException e) {
+                            // A request that can't be logged could be lost, let the caller decide
+                            return Observable.error(e);
+                        }
+                    }
+
+                    synchronized (MutationQueue.this) {
+                        mTrackedSequences.addAll(mutation.mSequences);
+                        String key = mutation.getKey();
+                        Mutation pending = mPending.get(key);
+                        if (pending != null) {
+                            // Only the latest intent for a contribution is sent
+                            mutation.mReadyTime = pending.mReadyTime;
+                            mutation.mWaiters.addAll(pending.mWaiters);
+                            mutation.mSequences.addAll(pending.mSequences);
+                        } else {
+                            mutation.mReadyTime = System.currentTimeMillis() + mCoalesceDelay;
+                        }
+                        mutation.mWaiters.add(waiter);
+                        mPending.put(key, mutation);
+                        coalesceDelay = mCoalesceDelay;
+                    }
+                }
+                scheduleDrain(coalesceDelay);
+                return waiter;
+            }
+        });
+    }
+
+    /**
+     * Removes the logged requests covered by a mutation from the log. Writes to the log, so must
+     * be called without holding the lock
+     *
+     * @param mutationLog The log the requests were written to, null if logging is disabled
+     */
+    private static void acknowledge(MutationLog mutationLog, Mutation mutation) {
+        if (mutationLog != null && !mutation.mSequences.isEmpty()) {
+            mutationLog.acknowledge(mutation.mSequences);
+        }
+    }
+
+    /**
+     * Builds a mutation for a request read back from the log. Logged requests only keep the
+     * contribution's fullname, which is all reddit needs to vote or save
+     *
+     * @return The mutation to queue, null if the entry type is unknown
+     */
+    private Mutation fromLogEntry(MutationLog.Entry entry) {
+        ObjectNode dataNode = JsonNodeFactory.instance.objectNode();
+        dataNode.put("name", entry.getFullName());
+        dataNode.put("id", entry.getFullName().substring(entry.getFullName().indexOf('_') + 1));
+        PublicContribution contribution = new Submission(dataNode);
+
+        Mutation mutation;
+        switch (entry.getType()) {
+            case MutationLog.TYPE_SAVE:
+                mutation = new SaveMutation(contribution, entry.getValue() != 0);
+                break;
+            case MutationLog.TYPE_VOTE:
+                VoteDirection voteDirection = VoteDirection.NO_VOTE;
+                if (entry.getValue() == VoteRequest.UPVOTE) voteDirection = VoteDirection.UPVOTE;
+                if (entry.getValue() == VoteRequest.DOWNVOTE) {
+                    voteDirection = VoteDirection.DOWNVOTE;
+                }
+                mutation = new VoteMutation(contribution, voteDirection);
+                break;
+            default:
+                return null;
+        }
+        // The stub contribution holds no vote or saved state to compare against
+        mutation.mIsReplay = true;
+        mutation.mSequences.add(entry.getSequence());
+        return mutation;
+    }
+
+    /**
+     * @return True if the request might succeed when sent again later, such as when the device
+     * was offline or reddit was unavailable
+     */
+    private static boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof IOException || throwable.getCause() instanceof IOException) {
+            return true;
+        }
+        if (throwable instanceof NetworkException) {
+            NetworkException networkException = (NetworkException) throwable;
+            return networkException.getResponse() == null
+                    || networkException.getResponse().getStatusCode() >= 500;
+        }
+        return false;
+    }
+
+    private void onMutationFinished(String key, Mutation mutation, Throwable throwable) {
+        MutationLog mutationLog;
+        synchronized (this) {
+            mInFlight.remove(key);
+            mActiveCount--;
+            if (throwable == null) mutation.onSuccess();
+            mTrackedSequences.removeAll(mutation.mSequences);
+            mutationLog = mMutationLog;
+        }
+        // Requests that might succeed later stay in the log for a replay
+        if (throwable == null || !isRetryable(throwable)) acknowledge(mutationLog, mutation);
+        complete(mutation.mWaiters, throwable);
+        drain();
+    }
+
+    private void scheduleDrain(long delay) {
+        Observable.timer(delay, TimeUnit.MILLISECONDS, Schedulers.io())
+                .subscribe(new Action1<Long>() {
+                    @Override
+                    public void call(Long aLong) {
+                        drain();
+                    }
+                });
+    }
+
+    private static void complete(List<AsyncSubject<Boolean>> waiters, Throwable throwable) {
+        for (AsyncSubject<Boolean> waiter : waiters) {
+            if (throwable != null) {
+                waiter.onError(throwable);
+            } else {
+                waiter.onNext(true);
+                waiter.onCompleted();
+            }
+        }
+    }
+
+    private abstract class Mutation {
+        final PublicContribution          mContribution;
+        final List<AsyncSubject<Boolean>> mWaiters   = new ArrayList<>();
+        /** Sequence numbers of every logged request this mutation replaces */
+        final List<Long>                  mSequences = new ArrayList<>();
+        boolean mIsReplay;
+        long    mReadyTime;
+
+        Mutation(PublicContribution contribution) {
+            mContribution = contribution;
+        }
+
+        abstract Observable<Boolean> execute();
+
+        /**
+         * @return The {@link MetricsRegistry} endpoint the request is made to
+         */
+        abstract String getEndpoint();
+
+        abstract String getKey();
+
+        abstract char getLogType();
+
+        abstract int getLogValue();
+
+        /**
+         * @return True if the contribution's state and its confirmed state, whichever are known,
+         * already agree with the state this request would put it in. Must be called while holding
+         * the queue's lock
+         */
+        abstract boolean isNoOp();
+
+        /**
+         * Records the state the contribution is in after the request. Must be called while
+         * holding the queue's lock
+         */
+        abstract void onSuccess();
+    }
+
+    private class SaveMutation extends Mutation {
+        final boolean mIsSave;
+
+        SaveMutation(PublicContribution contribution, boolean isSave) {
+            super(contribution);
+            mIsSave = isSave;
+        }
+
+        @Override
+        Observable<Boolean> execute() {
+            return new Saving(mAccountManager).save(new SaveRequest(mContribution, mIsSave));
+        }
+
+        @Override
+        String getEndpoint() {
+            return MetricsRegistry.ENDPOINT_SAVE;
+        }
+
+        @Override
+        String getKey() {
+            return SAVE_PREFIX + mContribution.getFullName();
+        }
+
+        @Override
+        char getLogType() {
+            return MutationLog.TYPE_SAVE;
+        }
+
+        @Override
+        int getLogValue() {
+            return mIsSave ? 1 : 0;
+        }
+
+        @Override
+        boolean isNoOp() {
+            if (mIsReplay) return false;
+            Boolean confirmed = mConfirmedSaves.get(mContribution.getFullName());
+            Boolean isSaved = null;
+            if (mContribution instanceof Submission) {
+                isSaved = ((Submission) mContribution).isSaved();
+            }
+            if (confirmed == null && isSaved == null) return false;
+            return (confirmed == null || confirmed == mIsSave)
+                    && (isSaved == null || isSaved == mIsSave);
+        }
+
+        @Override
+        void onSuccess() {
+            mConfirmedSaves.put(mContribution.getFullName(), mIsSave);
+        }
+    }
+
+    private class VoteMutation extends Mutation {
+        final VoteDirection mVoteDirection;
+
+        VoteMutation(PublicContribution contribution, VoteDirection voteDirection) {
+            super(contribution);
+            mVoteDirection = voteDirection;
+        }
+
+        @Override
+        Observable<Boolean> execute() {
+            return new Voting(mAccountManager).vote(new VoteRequest(mContribution, mVoteDirection));
+        }
+
+        @Override
+        String getEndpoint() {
+            return MetricsRegistry.ENDPOINT_VOTE;
+        }
+
+        @Override
+        String getKey() {
+            return VOTE_PREFIX + mContribution.getFullName();
+        }
+
+        @Override
+        char getLogType() {
+            return MutationLog.TYPE_VOTE;
+        }
+
+        @Override
+        int getLogValue() {
+            return new VoteRequest(mContribution, mVoteDirection).getVoteDirection();
+        }
+
+        @Override
+        boolean isNoOp() {
+            if (mIsReplay) return false;
+            VoteDirection confirmed = mConfirmedVotes.get(mContribution.getFullName());
+            VoteDirection currentVote = mContribution.getVote();
+            if (confirmed == null && currentVote == null) return false;
+            return (confirmed == null || confirmed == mVoteDirection)
+                    && (currentVote == null || currentVote == mVoteDirection);
+        }
+
+        @Override
+        void onSuccess() {
+            mConfirmedVotes.put(mContribution.getFullName(), mVoteDirection);
+        }
+    }
+}
@@ -1,9 +1,6 @@
 package com.fernandobarillas.redditservice.data;
 
-import com.fernandobarillas.redditservice.observables.Saving;
-import com.fernandobarillas.redditservice.observables.Voting;
-import com.fernandobarillas.redditservice.requests.SaveRequest;
-import com.fernandobarillas.redditservice.requests.VoteRequest;
+import com.fernandobarillas.redditservice.tracing.Trace;
 
 import net.dean.jraw.RedditClient;
 import net.dean.jraw.managers.AccountManager;
@@ -11,7 +8,6 @@ import net.dean.jraw.models.PublicContribution;
 import net.dean.jraw.models.VoteDirection;
 
 import rx.Observable;
-import timber.log.Timber;
 
 /**
  * Created by fb on 12/14/15.
@@ -19,36 +15,31 @@ import timber.log.Timber;
 public class RedditAccount {
     private RedditClient   mRedditClient;
     private AccountManager mAccountManager;
+    private MutationQueue  mMutationQueue;
 
     public RedditAccount(RedditClient redditClient) {
-        Timber.v("RedditAccount() called with: " + "redditClient = [" + redditClient + "]");
+        Trace.v("RedditAccount", "redditClient", redditClient);
         mRedditClient = redditClient;
         mAccountManager = new AccountManager(mRedditClient);
+        mMutationQueue = new MutationQueue(mAccountManager);
+    }
+
+    /**
+     * @return The queue that coalesces and sends this account's vote and save requests
+     */
+    public MutationQueue getMutationQueue() {
+        return mMutationQueue;
     }
 
     public Observable<Boolean> saveContribution(
             final PublicContribution contribution, final boolean isSave) {
-        Timber.v("saveContribution() called with: "
-                + "contribution = ["
-                + contribution
-                + "], isSave = ["
-                + isSave
-                + "]");
-        SaveRequest saveRequest = new SaveRequest(contribution, isSave);
-        Saving saving = new Saving(mAccountManager);
-        return saving.save(saveRequest);
+        Trace.v("saveContribution", "contribution", contribution, "isSave", isSave);
+        return mMutationQueue.save(contribution, isSave);
     }
 
     public Observable<Boolean> voteContribution(
             PublicContribution contribution, VoteDirection voteDirection) {
-        Timber.v("voteContribution() called with: "
-                + "contribution = ["
-                + contribution
-                + "], voteDirection = ["
-                + voteDirection
-                + "]");
-        VoteRequest voteRequest = new VoteRequest(contribution, voteDirection);
-        Voting voting = new Voting(mAccountManager);
-        return voting.vote(voteRequest);
+        Trace.v("voteContribution", "contribution", contribution, "voteDirection", voteDirection);
+        return mMutationQueue.vote(contribution, voteDirection);
     }
 }
@@ -3,25 +3,49 @@ package com.fernandobarillas.redditservice.data;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import com.fernandobarillas.redditservice.cache.CachedListing;
+import com.fernandobarillas.redditservice.cache.ListingCache;
+import com.fernandobarillas.redditservice.cache.ListingKey;
+import com.fernandobarillas.redditservice.http.MetricsInterceptor;
+import com.fernandobarillas.redditservice.http.RateLimiter;
+import com.fernandobarillas.redditservice.metrics.MetricsRegistry;
+import com.fernandobarillas.redditservice.observables.InFlightRequests;
+import com.fernandobarillas.redditservice.observables.ListingPagination;
+import com.fernandobarillas.redditservice.observables.StreamingPagination;
 import com.fernandobarillas.redditservice.observables.UserSubscriptions;
 import com.fernandobarillas.redditservice.paginators.UserSubmissionPaginator;
+import com.fernandobarillas.redditservice.requests.SubmissionRequest;
 import com.fernandobarillas.redditservice.requests.SubredditRequest;
 import com.fernandobarillas.redditservice.requests.UserSubmissionsRequest;
+import com.fernandobarillas.redditservice.tracing.Trace;
+import com.fernandobarillas.redditservice.utils.StringPool;
 
 import net.dean.jraw.RedditClient;
 import net.dean.jraw.http.LoggingMode;
 import net.dean.jraw.http.OkHttpAdapter;
 import net.dean.jraw.http.UserAgent;
+import net.dean.jraw.models.Listing;
 import net.dean.jraw.models.PublicContribution;
+import net.dean.jraw.models.Submission;
 import net.dean.jraw.models.Subreddit;
+import net.dean.jraw.models.Thing;
 import net.dean.jraw.models.VoteDirection;
+import net.dean.jraw.paginators.Paginator;
 import net.dean.jraw.paginators.SubredditPaginator;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
 import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
 import timber.log.Timber;
 
 /**
@@ -34,25 +58,233 @@ public class RedditData {
 
     public RedditClient mRedditClient;
 
-    private RedditAccount mRedditAccount;
+    private RedditAccount       mRedditAccount;
+    private RateLimiter         mRateLimiter;
+    private StreamingPagination mStreamingPagination;
+
+    /**
+     * The key of the next page for every paginator this class has instantiated. Paginators are
+     * weakly held so that a paginator the client has dropped doesn't leak
+     */
+    private final Map<Paginator<Submission>, ListingKey> mPaginatorKeys =
+            Collections.synchronizedMap(new WeakHashMap<Paginator<Submission>, ListingKey>());
+
+    /** Page downloads in flight, shared by every paginator asking for the same page */
+    private final InFlightRequests<ListingKey, Listing<Submission>>      mInFlightPages =
+            new InFlightRequests<>();
+    private final InFlightRequests<ListingKey, CachedListing>            mInFlightCachedPages =
+            new InFlightRequests<>();
+    private final InFlightRequests<ListingKey, StreamingPagination.Item> mInFlightStreams =
+            new InFlightRequests<>();
+
+    /** Downloads a page using a fresh paginator built from its key */
+    private final Func1<ListingKey, Listing<Submission>> mFetchListing =
+            new Func1<ListingKey, Listing<Submission>>() {
+                @Override
+                public Listing<Submission> call(ListingKey listingKey) {
+                    Listing<Submission> listing = getPaginator(listingKey.toRequest()).next(true);
+                    StringPool.getListingPool().internSubmissions(listing);
+                    return listing;
+                }
+            };
 
     public RedditData(UserAgent userAgent, @Nullable final OkHttpClient okHttpClient) {
-        Timber.v("RedditData() called with: " + "userAgent = [" + userAgent + "]");
+        this(userAgent,
+                okHttpClient != null ? okHttpClient : new OkHttpClient(),
+                okHttpClient != null);
+    }
 
-        if (okHttpClient != null) {
-            OkHttpAdapter adapter = new OkHttpAdapter(okHttpClient, Protocol.HTTP_2);
-            adapter.setRawJson(true);
-            mRedditClient = new RedditClient(userAgent, adapter);
-        } else {
-            mRedditClient = new RedditClient(userAgent);
-        }
+    /**
+     * @param userAgent    The User-Agent to make requests with
+     * @param sharedClient The client to build this instance's client from. Clients built from the
+     *                     same one share its connection pool and dispatcher
+     * @param isRawJson    True to ask reddit not to escape HTML entities in responses
+     */
+    public RedditData(UserAgent userAgent, OkHttpClient sharedClient, boolean isRawJson) {
+        Trace.v("RedditData", "userAgent", userAgent);
+
+        // Every request goes through the rate limiter, so the client always gets an OkHttpAdapter.
+        // The limiter is per instance since each account has its own budget, while metrics are
+        // recorded per attempt for every account together
+        mRateLimiter = new RateLimiter();
+        OkHttpClient client = sharedClient.newBuilder()
+                .addInterceptor(mRateLimiter)
+                .addNetworkInterceptor(new MetricsInterceptor(MetricsRegistry.getDefault()))
+                .build();
+        OkHttpAdapter adapter = new OkHttpAdapter(client, Protocol.HTTP_2);
+        if (isRawJson) adapter.setRawJson(true);
+        mRedditClient = new RedditClient(userAgent, adapter);
+        mStreamingPagination = new StreamingPagination(client, userAgent.toString(), isRawJson);
 
         mRedditClient.setLoggingMode(LoggingMode.ON_FAIL);
+        // These retries happen inside JRAW, so the metrics count them as requests, not retries
         mRedditClient.setRetryLimit(DOWNLOAD_RETRIES);
 
         mRedditAccount = new RedditAccount(mRedditClient);
     }
 
+    /**
+     * Goes through a whole listing, downloading each page only once the Submissions of the page
+     * before it have all been requested. See {@link ListingPagination}
+     *
+     * @param request  The listing to go through, starting at its after cursor
+     * @param maxItems The number of Submissions after which to stop, or {@link
+     *                 ListingPagination#NO_LIMIT}
+     * @return An Observable that emits every Submission of the listing. Each subscription starts
+     * over with a new paginator. Must be subscribed to once the client is authenticated
+     */
+    public Observable<Submission> getAllSubmissions(final SubmissionRequest request, int maxItems) {
+        return ListingPagination.getAllSubmissions(new Func0<Paginator<Submission>>() {
+            @Override
+            public Paginator<Submission> call() {
+                return getPaginator(request);
+            }
+        }, maxItems);
+    }
+
+    /**
+     * Gets the next page for a paginator through the passed-in cache. The paginator itself is used
+     * as a handle only: pages are downloaded using fresh paginators built from the page's {@link
+     * ListingKey}, and the passed-in paginator has its after cursor moved past each page returned
+     * so that it stays usable without the cache. Concurrent requests for the same page share a
+     * single cache lookup
+     *
+     * @param paginator    A paginator instantiated by this class
+     * @param listingCache The cache to get pages from
+     * @return An Observable that emits the next page, empty if the listing has no more pages, or
+     * null if the paginator wasn't instantiated by this class and can't be cached
+     */
+    @Nullable
+    public Observable<List<Submission>> getCachedSubmissions(
+            final Paginator<Submission> paginator, final ListingCache listingCache) {
+        if (!mPaginatorKeys.containsKey(paginator)) return null;
+        // Look the key up when subscribing so that pages requested back to back each get the
+        // key left behind by the page before them
+        return Observable.defer(new Func0<Observable<CachedListing>>() {
+            @Override
+            public Observable<CachedListing> call() {
+                final ListingKey key = mPaginatorKeys.get(paginator);
+                if (key == null || key.isEnd()) return Observable.empty();
+                return mInFlightCachedPages.share(key, new Func0<Observable<CachedListing>>() {
+                    @Override
+                    public Observable<CachedListing> call() {
+                        return listingCache.getListing(key, mFetchListing);
+                    }
+                }).doOnNext(new Action1<CachedListing>() {
+                    @Override
+                    public void call(CachedListing cachedListing) {
+                        advance(paginator, key, cachedListing.getAfter());
+                    }
+                });
+            }
+        }).map(new Func1<CachedListing, List<Submission>>() {
+            @Override
+            public List<Submission> call(CachedListing cachedListing) {
+                return cachedListing.getChildren();
+            }
+        });
+    }
+
+    /**
+     * Gets the next page for a paginator, sharing the download with any concurrent request for
+     * the same page made through another paginator. The paginator is used as a handle the same
+     * way as in {@link #getCachedSubmissions(Paginator, ListingCache)}
+     *
+     * @param paginator A paginator instantiated by this class
+     * @return An Observable that emits the next page, empty if the listing has no more pages, or
+     * null if the paginator wasn't instantiated by this class
+     */
+    @Nullable
+    public Observable<List<Submission>> getSharedSubmissions(
+            final Paginator<Submission> paginator) {
+        if (!mPaginatorKeys.containsKey(paginator)) return null;
+        return Observable.defer(new Func0<Observable<List<Submission>>>() {
+            @Override
+            public Observable<List<Submission>> call() {
+                final ListingKey key = mPaginatorKeys.get(paginator);
+                if (key == null || key.isEnd()) return Observable.empty();
+                return mInFlightPages.share(key, new Func0<Observable<Listing<Submission>>>() {
+                    @Override
+                    public Observable<Listing<Submission>> call() {
+                        return Observable.fromCallable(new Callable<Listing<Submission>>() {
+                            @Override
+                            public Listing<Submission> call() throws Exception {
+                                return mFetchListing.call(key);
+                            }
+                        });
+                    }
+                }).doOnNext(new Action1<Listing<Submission>>() {
+                    @Override
+                    public void call(Listing<Submission> listing) {
+                        advance(paginator, key, listing.getAfter());
+                    }
+                }).map(new Func1<Listing<Submission>, List<Submission>>() {
+                    @Override
+                    public List<Submission> call(Listing<Submission> listing) {
+                        return listing.getChildren();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Gets the next page for a paginator, emitting each Submission as soon as it has been read
+     * from the response. Concurrent requests for the same page share a single stream, and the
+     * paginator is used as a handle the same way as in {@link #getCachedSubmissions(Paginator,
+     * ListingCache)}. The paginator only moves past the page once the whole page has been read.
+     * When the stream fails before its first Submission, such as on an error response, the page
+     * is downloaded by a paginator instead, with the client's retries and API error handling
+     *
+     * @param paginator A paginator instantiated by this class
+     * @return An Observable that emits the Submissions of the next page, empty if the listing has
+     * no more pages, or null if the paginator wasn't instantiated by this class. Must be
+     * subscribed to once the client is authenticated
+     */
+    @Nullable
+    public Observable<Submission> getStreamingSubmissions(final Paginator<Submission> paginator) {
+        if (!mPaginatorKeys.containsKey(paginator)) return null;
+        return Observable.defer(new Func0<Observable<Submission>>() {
+            @Override
+            public Observable<Submission> call() {
+                final ListingKey key = mPaginatorKeys.get(paginator);
+                if (key == null || key.isEnd()) return Observable.empty();
+                return mInFlightStreams.share(key,
+                        new Func0<Observable<StreamingPagination.Item>>() {
+                            @Override
+                            public Observable<StreamingPagination.Item> call() {
+                                return streamPage(key);
+                            }
+                        }).doOnNext(new Action1<StreamingPagination.Item>() {
+                    @Override
+                    public void call(StreamingPagination.Item item) {
+                        if (item.isEnd()) advance(paginator, key, item.getAfter());
+                    }
+                }).concatMap(new Func1<StreamingPagination.Item, Observable<Submission>>() {
+                    @Override
+                    public Observable<Submission> call(StreamingPagination.Item item) {
+                        return item.isEnd()
+                                ? Observable.<Submission>empty()
+                                : Observable.just(item.getSubmission());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Instantiates a new paginator for the passed-in request
+     *
+     * @param request The request data to use when instantiating a new paginator
+     * @return A SubredditPaginator or UserSubmissionPaginator, depending on the request type
+     */
+    public final Paginator<Submission> getPaginator(final SubmissionRequest request) {
+        if (request instanceof UserSubmissionsRequest) {
+            return getUserSubmissionsPaginator((UserSubmissionsRequest) request);
+        }
+        return getSubredditPaginator((SubredditRequest) request);
+    }
+
     /**
      * Instantiates a new SubredditPaginator using the current RedditClient instance
      *
@@ -75,10 +307,33 @@ public class RedditData {
         paginator.setSorting(subredditRequest.getSorting());
         paginator.setAfter(subredditRequest.getAfter());
         paginator.setTimePeriod(subredditRequest.getTimePeriod());
+        mPaginatorKeys.put(paginator, ListingKey.of(subredditRequest));
 
         return paginator;
     }
 
+    /**
+     * @param fullName The fullname of the Submission to download
+     * @return An Observable that emits the Submission, empty if reddit returned no Submission for
+     * the fullname
+     */
+    public Observable<Submission> getSubmission(final String fullName) {
+        return Observable.fromCallable(new Callable<Listing<Thing>>() {
+            @Override
+            public Listing<Thing> call() throws Exception {
+                return mRedditClient.get(fullName);
+            }
+        }).concatMap(new Func1<Listing<Thing>, Observable<Submission>>() {
+            @Override
+            public Observable<Submission> call(Listing<Thing> things) {
+                for (Thing thing : things) {
+                    if (thing instanceof Submission) return Observable.just((Submission) thing);
+                }
+                return Observable.empty();
+            }
+        });
+    }
+
     /**
      * @return An Observable for a user's subscribed subreddits
      */
@@ -103,10 +358,34 @@ public class RedditData {
         paginator.setSorting(userRequest.getSorting());
         paginator.setAfter(userRequest.getAfter());
         paginator.setTimePeriod(userRequest.getTimePeriod());
+        mPaginatorKeys.put(paginator, ListingKey.of(userRequest));
 
         return paginator;
     }
 
+    /**
+     * @return The rate limiter every request made by the client goes through
+     */
+    public RateLimiter getRateLimiter() {
+        return mRateLimiter;
+    }
+
+    /**
+     * @return The queue that coalesces and sends the vote and save requests
+     */
+    public MutationQueue getMutationQueue() {
+        return mRedditAccount.getMutationQueue();
+    }
+
+    /**
+     * @param paginator The paginator to check
+     * @return True if the paginator was instantiated by this instance and so makes its requests
+     * with this instance's client
+     */
+    public boolean isOwnPaginator(final Paginator<Submission> paginator) {
+        return mPaginatorKeys.containsKey(paginator);
+    }
+
     /**
      * @param contribution The contribution to save/unsave
      * @param isSave       True if you want to save the contribution, false if you want to unsave
@@ -128,4 +407,56 @@ public class RedditData {
             final VoteDirection voteDirection) {
         return mRedditAccount.voteContribution(contribution, voteDirection);
     }
+
+    /**
+     * Moves a paginator handle past a page it was returned
+     */
+    private void advance(Paginator<Submission> paginator, ListingKey key, String after) {
+        mPaginatorKeys.put(paginator, key.next(after));
+        if (after != null) paginator.setAfter(after);
+    }
+
+    /**
+     * @return An Observable that downloads a page whole and emits it as streamed items
+     */
+    private Observable<StreamingPagination.Item> downloadPage(final ListingKey key) {
+        return Observable.fromCallable(new Callable<Listing<Submission>>() {
+            @Override
+            public Listing<Submission> call() throws Exception {
+                return mFetchListing.call(key);
+            }
+        }).concatMap(new Func1<Listing<Submission>, Observable<StreamingPagination.Item>>() {
+            @Override
+            public Observable<StreamingPagination.Item> call(Listing<Submission> listing) {
+                return StreamingPagination.toItems(listing);
+            }
+        });
+    }
+
+    /**
+     * Streams a page, falling back to downloading it with a paginator when the stream fails before
+     * emitting anything. Once Submissions have been emitted the page can't be restarted without
+     * repeating them, so later errors are passed on
+     */
+    private Observable<StreamingPagination.Item> streamPage(final ListingKey key) {
+        final AtomicBoolean isStarted = new AtomicBoolean();
+        String accessToken = mRedditClient.getOAuthData().getAccessToken();
+        return mStreamingPagination.getItems(mStreamingPagination.buildRequest(key, accessToken))
+                .doOnNext(new Action1<StreamingPagination.Item>() {
+                    @Override
+                    public void call(StreamingPagination.Item item) {
+                        isStarted.set(true);
+                    }
+                })
+                .onErrorResumeNext(
+                        new Func1<Throwable, Observable<StreamingPagination.Item>>() {
+                            @Override
+                            public Observable<StreamingPagination.Item> call(
+                                    Throwable throwable) {
+                                if (isStarted.get()) return Observable.error(throwable);
+                                Timber.w(throwable, "streamPage: Downloading %s instead", key);
+                                return downloadPage(key);
+                            }
+                        });
+    }
 }
@@ -0,0 +1,110 @@
+package com.fernandobarillas.redditservice.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dns;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * DNS resolver that keeps the addresses of the hosts it resolved. Once an entry is older than its
+ * time to live it is still returned right away, and resolved again in the background so that
+ * requests never wait on a lookup for a host they have already connected to. An entry that can't
+ * be refreshed keeps being used for at most {@link #MAX_STALE_TIME} past its time to live, after
+ * which the host is looked up again before any request to it. Call {@link #clear()} when the
+ * device changes networks.
+ */
+public class CachingDns implements Dns {
+    /** Time after which a resolved host is resolved again in the background by default */
+    public static final long DEFAULT_TTL    = TimeUnit.MINUTES.toMillis(5);
+    /** Time past its time to live during which an entry is still used while being refreshed */
+    public static final long MAX_STALE_TIME = TimeUnit.MINUTES.toMillis(30);
+
+    private final Dns                mDelegate;
+    private final long               mTtl;
+    private final Map<String, Entry> mEntries;
+    private final Set<String>        mRefreshing;
+
+    /**
+     * @param delegate The resolver to look hosts up with
+     * @param ttl      The time in milliseconds after which a host is resolved again
+     */
+    public CachingDns(Dns delegate, long ttl) {
+        mDelegate = delegate;
+        mTtl = ttl;
+        mEntries = new ConcurrentHashMap<>();
+        mRefreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = mEntries.get(hostname);
+        if (entry == null) return resolve(hostname);
+        // Refreshes have kept failing, so the addresses may well be wrong by now
+        if (entry.isExpired(mTtl + MAX_STALE_TIME)) return resolve(hostname);
+        if (entry.isExpired(mTtl)) refresh(hostname);
+        return entry.mAddresses;
+    }
+
+    /**
+     * Forgets every resolved host, for instance after the device changed networks
+     */
+    public void clear() {
+        mEntries.clear();
+    }
+
+    private void refresh(final String hostname) {
+        // Only one refresh per host at a time, requests keep using the current entry meanwhile
+        if (!mRefreshing.add(hostname)) return;
+        Observable.fromCallable(new Callable<List<InetAddress>>() {
+            @Override
+            public List<InetAddress> call() throws Exception {
+                try {
+                    return resolve(hostname);
+                } finally {
+                    mRefreshing.remove(hostname);
+                }
+            }
+        }).subscribeOn(Schedulers.io()).subscribe(new Action1<List<InetAddress>>() {
+            @Override
+            public void call(List<InetAddress> addresses) {
+                Timber.v("refresh: Resolved [%s] to %s", hostname, addresses);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Timber.w(throwable, "refresh: Unable to resolve [%s]", hostname);
+            }
+        });
+    }
+
+    private List<InetAddress> resolve(String hostname) throws UnknownHostException {
+        List<InetAddress> addresses = mDelegate.lookup(hostname);
+        mEntries.put(hostname, new Entry(addresses));
+        return addresses;
+    }
+
+    private static class Entry {
+        final List<InetAddress> mAddresses;
+        final long              mResolvedTime;
+
+        Entry(List<InetAddress> addresses) {
+            mAddresses = addresses;
+            mResolvedTime = System.currentTimeMillis();
+        }
+
+        boolean isExpired(long ttl) {
+            return System.currentTimeMillis() - mResolvedTime > ttl;
+        }
+    }
+}
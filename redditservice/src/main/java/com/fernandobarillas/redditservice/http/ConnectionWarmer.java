@@ -0,0 +1,95 @@
+package com.fernandobarillas.redditservice.http;
+
+import java.io.IOException;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+import timber.log.Timber;
+
+/**
+ * Opens connections to reddit's hosts ahead of the first real request, so that the DNS lookup,
+ * TCP and TLS handshakes and HTTP/2 setup don't add to the time it takes to show the first page.
+ * Each host gets a HEAD request for its root, the response is discarded and the connection is
+ * left in the client's connection pool.
+ * <p>
+ * Connections are only reused by clients that share the warming client's connection pool and
+ * were built from it with {@link OkHttpClient#newBuilder()}, since a pooled connection is only
+ * picked for requests with the same DNS, TLS and proxy settings.
+ */
+public class ConnectionWarmer {
+    /** The host API requests are made to */
+    public static final String OAUTH_HOST = "oauth.reddit.com";
+    /** The host authentication requests are made to */
+    public static final String WWW_HOST   = "www.reddit.com";
+
+    private static final String HEADER_USER_AGENT = "User-Agent";
+
+    private final OkHttpClient mClient;
+    private final String       mUserAgent;
+
+    /**
+     * @param client    The client whose connection pool should hold the connections
+     * @param userAgent The User-Agent to send with the warming requests
+     */
+    public ConnectionWarmer(OkHttpClient client, String userAgent) {
+        mClient = client;
+        mUserAgent = userAgent;
+    }
+
+    /**
+     * Opens a connection to each host, all at the same time on background threads
+     *
+     * @param hosts The hosts to connect to
+     * @return An Observable that emits each host once a connection to it is in the pool, then
+     * completes. Hosts that can't be reached are logged and skipped
+     */
+    public Observable<String> warm(String... hosts) {
+        Observable<String> connections = Observable.empty();
+        for (String host : hosts) {
+            connections = connections.mergeWith(connect(host));
+        }
+        return connections;
+    }
+
+    private Observable<String> connect(final String host) {
+        return Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(final Subscriber<? super String> subscriber) {
+                Request request = new Request.Builder().url("https://" + host + "/")
+                        .head()
+                        .header(HEADER_USER_AGENT, mUserAgent)
+                        .build();
+                final Call call = mClient.newCall(request);
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        call.cancel();
+                    }
+                }));
+
+                long startTime = System.currentTimeMillis();
+                Response response = null;
+                try {
+                    response = call.execute();
+                    Timber.d("connect: Connected to [%s] in %d ms",
+                            host,
+                            System.currentTimeMillis() - startTime);
+                    if (!subscriber.isUnsubscribed()) subscriber.onNext(host);
+                } catch (IOException e) {
+                    // The first request opens the connection instead
+                    Timber.w(e, "connect: Unable to connect to [%s]", host);
+                } finally {
+                    if (response != null) response.close();
+                }
+                if (!subscriber.isUnsubscribed()) subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+}
@@ -0,0 +1,147 @@
+package com.fernandobarillas.redditservice.http;
+
+import com.fernandobarillas.redditservice.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * OkHttp interceptor that records the metrics of every request in a {@link MetricsRegistry}, under
+ * the reddit endpoint the request was made to. Latency is measured from the request leaving to its
+ * response headers being received, and response body bytes are counted as the body is read.
+ * <p>
+ * Add it as a network interceptor so that each attempt is measured on its own, bytes are counted
+ * before decompression and the time spent held by the {@link RateLimiter} isn't counted as latency.
+ */
+public class MetricsInterceptor implements Interceptor {
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final String PATH_ACCESS_TOKEN  = "/api/v1/access_token";
+    private static final String PATH_SAVE          = "/api/save";
+    private static final String PATH_SUBSCRIPTIONS = "/subreddits/mine";
+    private static final String PATH_UNSAVE        = "/api/unsave";
+    private static final String PATH_VOTE          = "/api/vote";
+    private static final String SUFFIX_JSON        = ".json";
+
+    /** Last path segments of the listings of submissions */
+    private static final Set<String> LISTING_SEGMENTS = new HashSet<>(Arrays.asList("",
+            "best",
+            "controversial",
+            "hot",
+            "new",
+            "rising",
+            "submitted",
+            "top"));
+
+    private final MetricsRegistry mRegistry;
+
+    /**
+     * @param registry The registry to record metrics in
+     */
+    public MetricsInterceptor(MetricsRegistry registry) {
+        mRegistry = registry;
+    }
+
+    /**
+     * @param url The URL a request is made to
+     * @return The {@link MetricsRegistry} endpoint the request's metrics are recorded under
+     */
+    public static String getEndpoint(HttpUrl url) {
+        String path = url.encodedPath();
+        if (path.startsWith(PATH_ACCESS_TOKEN)) return MetricsRegistry.ENDPOINT_TOKEN_REFRESH;
+        if (path.startsWith(PATH_VOTE)) return MetricsRegistry.ENDPOINT_VOTE;
+        if (path.startsWith(PATH_SAVE) || path.startsWith(PATH_UNSAVE)) {
+            return MetricsRegistry.ENDPOINT_SAVE;
+        }
+        if (path.startsWith(PATH_SUBSCRIPTIONS)) return MetricsRegistry.ENDPOINT_SUBSCRIPTIONS;
+
+        // Front page and subreddit listings, with or without a sorting, and user submissions
+        List<String> segments = url.pathSegments();
+        String lastSegment = segments.get(segments.size() - 1);
+        if (lastSegment.endsWith(SUFFIX_JSON)) {
+            lastSegment = lastSegment.substring(0, lastSegment.length() - SUFFIX_JSON.length());
+        }
+        boolean isSubreddit = segments.size() == 2 && "r".equals(segments.get(0));
+        if (isSubreddit || LISTING_SEGMENTS.contains(lastSegment)) {
+            return MetricsRegistry.ENDPOINT_LISTING;
+        }
+        return MetricsRegistry.ENDPOINT_OTHER;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        MetricsRegistry.Endpoint endpoint = mRegistry.getEndpoint(getEndpoint(request.url()));
+        if (request.body() != null) {
+            long contentLength = request.body().contentLength();
+            if (contentLength > 0) endpoint.addBytesSent(contentLength);
+        }
+
+        long requestTime = endpoint.onRequest();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            endpoint.onError();
+            throw e;
+        } finally {
+            endpoint.onResponse(requestTime);
+        }
+
+        if (response.code() == HTTP_TOO_MANY_REQUESTS) endpoint.onRateLimited();
+        ResponseBody body = response.body();
+        if (body == null) return response;
+        return response.newBuilder().body(new CountingBody(body, endpoint)).build();
+    }
+
+    /**
+     * Response body that adds the bytes read from it to an endpoint's received bytes
+     */
+    private static class CountingBody extends ResponseBody {
+        private final ResponseBody   mDelegate;
+        private final BufferedSource mSource;
+
+        CountingBody(ResponseBody delegate, final MetricsRegistry.Endpoint endpoint) {
+            mDelegate = delegate;
+            Source source = new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) endpoint.addBytesReceived(read);
+                    return read;
+                }
+            };
+            mSource = Okio.buffer(source);
+        }
+
+        @Override
+        public long contentLength() {
+            return mDelegate.contentLength();
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return mSource;
+        }
+    }
+}
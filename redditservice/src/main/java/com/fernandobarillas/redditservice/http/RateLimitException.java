@@ -0,0 +1,27 @@
+package com.fernandobarillas.redditservice.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the {@link RateLimiter} for a request that would have to be held for longer than its
+ * maximum hold time. The request is not sent and doesn't count against the budget, so it can be
+ * made again once {@link #getSendTime()} has passed
+ */
+public class RateLimitException extends IOException {
+    private final long mSendTime;
+
+    /**
+     * @param sendTime The time in milliseconds at which the request could have been sent
+     */
+    public RateLimitException(long sendTime) {
+        super("Request held by the rate limit until " + sendTime);
+        mSendTime = sendTime;
+    }
+
+    /**
+     * @return The time in milliseconds at which the request could have been sent
+     */
+    public long getSendTime() {
+        return mSendTime;
+    }
+}
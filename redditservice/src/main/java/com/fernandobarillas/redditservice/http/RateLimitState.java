@@ -0,0 +1,68 @@
+package com.fernandobarillas.redditservice.http;
+
+/**
+ * Snapshot of the request budget reddit reported for a token through its X-Ratelimit headers
+ */
+public class RateLimitState {
+    /** The budget used before any rate limit headers have been seen */
+    public static final RateLimitState UNKNOWN = new RateLimitState(-1, -1, 0, 0);
+
+    private final int  mRemaining;
+    private final int  mUsed;
+    private final long mResetTime;
+    private final long mDelay;
+
+    public RateLimitState(int remaining, int used, long resetTime, long delay) {
+        mRemaining = remaining;
+        mUsed = used;
+        mResetTime = resetTime;
+        mDelay = delay;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitState{" +
+                "mRemaining=" + mRemaining +
+                ", mUsed=" + mUsed +
+                ", mResetTime=" + mResetTime +
+                ", mDelay=" + mDelay +
+                '}';
+    }
+
+    /**
+     * @return The time in milliseconds the next request will be held for before being sent
+     */
+    public long getDelay() {
+        return mDelay;
+    }
+
+    /**
+     * @return The requests left in the current window, -1 if unknown
+     */
+    public int getRemaining() {
+        return mRemaining;
+    }
+
+    /**
+     * @return The time in milliseconds when the current window ends and the budget is reset, 0 if
+     * unknown
+     */
+    public long getResetTime() {
+        return mResetTime;
+    }
+
+    /**
+     * @return The requests made in the current window, -1 if unknown
+     */
+    public int getUsed() {
+        return mUsed;
+    }
+
+    /**
+     * @return True if requests are being paced or held, in which case optional requests such as
+     * prefetches should be put off
+     */
+    public boolean isThrottled() {
+        return mDelay > 0;
+    }
+}
@@ -0,0 +1,269 @@
+package com.fernandobarillas.redditservice.http;
+
+import com.fernandobarillas.redditservice.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import rx.Observable;
+import rx.subjects.BehaviorSubject;
+import rx.subjects.SerializedSubject;
+import timber.log.Timber;
+
+/**
+ * OkHttp interceptor that schedules requests according to the budget reddit reports through its
+ * X-Ratelimit-Remaining, X-Ratelimit-Used and X-Ratelimit-Reset headers. The budget is tracked per
+ * access token and per window. Requests go out right away while plenty of budget is left, are
+ * spaced out evenly over the rest of the window once the remaining budget drops below the pacing
+ * threshold and are held until the window resets once the budget is used up. A request that gets
+ * a 429 response anyway is held until the reset and sent again instead of failing.
+ * <p>
+ * Requests are held on the thread making them, so the interceptor must be added as an application
+ * interceptor and requests must never be made from the main thread. Holds are bounded by {@link
+ * #setMaxHoldTime(long)} so that a window minutes away from resetting doesn't pin a thread for its
+ * whole length: a request that would have to wait longer fails right away with a {@link
+ * RateLimitException}, and a 429 response that would have to be held longer is returned as is.
+ */
+public class RateLimiter implements Interceptor {
+    /** Remaining requests in a window below which requests start being spaced out by default */
+    public static final int  DEFAULT_PACING_THRESHOLD = 100;
+    /** Time a request is held at most by default before failing instead */
+    public static final long DEFAULT_MAX_HOLD_TIME    = TimeUnit.SECONDS.toMillis(15);
+
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String HEADER_REMAINING     = "X-Ratelimit-Remaining";
+    private static final String HEADER_RESET         = "X-Ratelimit-Reset";
+    private static final String HEADER_RETRY_AFTER   = "Retry-After";
+    private static final String HEADER_USED          = "X-Ratelimit-Used";
+    private static final String NO_TOKEN             = "";
+
+    private static final int  HTTP_TOO_MANY_REQUESTS = 429;
+    /** Times a request is held and sent again after a 429 response before it is returned */
+    private static final int  MAX_HOLD_RETRIES       = 2;
+    /** Time to hold requests after a 429 response that doesn't say when the window resets */
+    private static final long DEFAULT_HOLD_TIME      = TimeUnit.SECONDS.toMillis(10);
+
+    private final Map<String, Budget>            mBudgets;
+    private final BehaviorSubject<RateLimitState> mState;
+    /** Serializes updates to the state, which are published from every thread making requests */
+    private final SerializedSubject<RateLimitState, RateLimitState> mStatePublisher;
+
+    private int  mPacingThreshold = DEFAULT_PACING_THRESHOLD;
+    private long mMaxHoldTime     = DEFAULT_MAX_HOLD_TIME;
+
+    public RateLimiter() {
+        mBudgets = new HashMap<>();
+        mState = BehaviorSubject.create(RateLimitState.UNKNOWN);
+        mStatePublisher = mState.toSerialized();
+    }
+
+    /**
+     * @return The budget of the token that made the latest request
+     */
+    public RateLimitState getState() {
+        return mState.getValue();
+    }
+
+    /**
+     * @return An Observable that emits the current budget, then the budget after every request
+     * is scheduled and every response is received. Emitted on one of the threads making requests,
+     * never while the limiter's lock is held
+     */
+    public Observable<RateLimitState> getStateUpdates() {
+        return mState.asObservable();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String token = request.header(HEADER_AUTHORIZATION);
+        if (token == null) token = NO_TOKEN;
+
+        for (int attempt = 0; ; attempt++) {
+            Schedule schedule = schedule(token);
+            publish(schedule.mState);
+            if (!schedule.mIsAllowed) throw new RateLimitException(schedule.mSendTime);
+            hold(schedule.mSendTime - System.currentTimeMillis());
+
+            Response response = chain.proceed(request);
+            RateLimitState state = update(token, response);
+            publish(state);
+            boolean isLimited = response.code() == HTTP_TOO_MANY_REQUESTS;
+            if (!isLimited || attempt >= MAX_HOLD_RETRIES || state.getDelay() > getMaxHoldTime()) {
+                return response;
+            }
+
+            Timber.w("intercept: Rate limited, holding %s until the window resets", request.url());
+            response.close();
+            MetricsRegistry.getDefault()
+                    .getEndpoint(MetricsInterceptor.getEndpoint(request.url()))
+                    .onRetry();
+        }
+    }
+
+    /**
+     * @param maxHoldTime The time in milliseconds a request is held at most. Requests that would
+     *                    have to be held longer fail with a {@link RateLimitException}
+     */
+    public synchronized void setMaxHoldTime(long maxHoldTime) {
+        mMaxHoldTime = Math.max(0, maxHoldTime);
+    }
+
+    /**
+     * @param pacingThreshold The remaining requests in a window below which requests start being
+     *                        spaced out over the rest of the window
+     */
+    public synchronized void setPacingThreshold(int pacingThreshold) {
+        mPacingThreshold = Math.max(0, pacingThreshold);
+    }
+
+    private static RateLimitState toState(Budget budget, long delay) {
+        return new RateLimitState(budget.mRemaining,
+                budget.mUsed,
+                budget.mResetTime,
+                Math.max(0, delay));
+    }
+
+    private Budget getBudget(String token, long currentTime) {
+        Budget budget = mBudgets.get(token);
+        if (budget != null) return budget;
+
+        // Tokens are replaced every time they are renewed, drop the budgets of the old ones
+        Iterator<Budget> iterator = mBudgets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mResetTime <= currentTime) iterator.remove();
+        }
+        budget = new Budget();
+        mBudgets.put(token, budget);
+        return budget;
+    }
+
+    private static void hold(long delay) throws InterruptedIOException {
+        if (delay <= 0) return;
+        Timber.d("hold: Holding request for [%d] ms", delay);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+
+    private static double parseHeader(Response response, String name) {
+        String value = response.header(name);
+        if (value == null) return -1;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            Timber.w("parseHeader: Invalid %s header [%s]", name, value);
+            return -1;
+        }
+    }
+
+    private synchronized long getMaxHoldTime() {
+        return mMaxHoldTime;
+    }
+
+    /**
+     * Emits a state change. Never called with the lock held, so that subscribers don't run under it
+     */
+    private void publish(RateLimitState state) {
+        mStatePublisher.onNext(state);
+    }
+
+    /**
+     * Reserves a slot for a request in its token's budget, unless the request would have to be
+     * held for longer than the maximum hold time
+     */
+    private synchronized Schedule schedule(String token) {
+        long currentTime = System.currentTimeMillis();
+        Budget budget = getBudget(token, currentTime);
+        long maxSendTime = currentTime + mMaxHoldTime;
+        long sendTime = budget.reserve(currentTime, mPacingThreshold, maxSendTime);
+        return new Schedule(sendTime,
+                sendTime <= maxSendTime,
+                toState(budget, sendTime - currentTime));
+    }
+
+    /**
+     * Updates a token's budget from the rate limit headers of a response
+     *
+     * @return The token's budget after the response
+     */
+    private synchronized RateLimitState update(String token, Response response) {
+        long currentTime = System.currentTimeMillis();
+        Budget budget = getBudget(token, currentTime);
+        double remaining = parseHeader(response, HEADER_REMAINING);
+        double reset = parseHeader(response, HEADER_RESET);
+        if (remaining >= 0 && reset >= 0) {
+            budget.mRemaining = (int) remaining;
+            budget.mUsed = (int) parseHeader(response, HEADER_USED);
+            budget.mResetTime = currentTime + (long) (reset * 1000);
+        }
+
+        boolean isLimited = response.code() == HTTP_TOO_MANY_REQUESTS;
+        if (isLimited) {
+            budget.mRemaining = 0;
+            if (budget.mResetTime <= currentTime) {
+                double retryAfter = parseHeader(response, HEADER_RETRY_AFTER);
+                budget.mResetTime = currentTime
+                        + (retryAfter > 0 ? (long) (retryAfter * 1000) : DEFAULT_HOLD_TIME);
+            }
+        }
+        return toState(budget, budget.mRemaining == 0 ? budget.mResetTime - currentTime : 0);
+    }
+
+    /**
+     * The budget of a single token in its current window
+     */
+    private static class Budget {
+        int  mRemaining = -1;
+        int  mUsed      = -1;
+        long mResetTime;
+        long mNextSendTime;
+
+        /**
+         * Takes a request out of the budget, unless it would have to be sent after maxSendTime
+         *
+         * @return The time in milliseconds at which the request may be sent. The request is only
+         * taken out of the budget if this isn't after maxSendTime
+         */
+        long reserve(long currentTime, int pacingThreshold, long maxSendTime) {
+            // Nothing is known about a new token or a window that has ended until a response
+            // reports the new budget
+            if (mRemaining < 0 || currentTime >= mResetTime) return currentTime;
+            if (mRemaining == 0) return mResetTime;
+
+            long sendTime = currentTime;
+            if (mRemaining <= pacingThreshold) {
+                sendTime = Math.max(currentTime, mNextSendTime);
+                if (sendTime > maxSendTime) return sendTime;
+                mNextSendTime = sendTime + (mResetTime - currentTime) / mRemaining;
+            }
+            mRemaining--;
+            return sendTime;
+        }
+    }
+
+    /**
+     * The outcome of scheduling a request
+     */
+    private static class Schedule {
+        final long           mSendTime;
+        final boolean        mIsAllowed;
+        final RateLimitState mState;
+
+        Schedule(long sendTime, boolean isAllowed, RateLimitState state) {
+            mSendTime = sendTime;
+            mIsAllowed = isAllowed;
+            mState = state;
+        }
+    }
+}
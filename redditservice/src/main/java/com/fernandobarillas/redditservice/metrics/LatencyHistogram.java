@@ -0,0 +1,201 @@
+package com.fernandobarillas.redditservice.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe latency histogram with log-linear buckets, in the spirit of HdrHistogram. Values are
+ * recorded in microseconds, from 1 µs up to an hour. Every power of two is split into 32 linear
+ * sub-buckets, so a percentile is always reported within about 3% of the recorded value while the
+ * whole histogram takes a fixed 7 KB no matter how many values it holds.
+ * <p>
+ * Recording a value is a handful of atomic increments and never allocates, so it can be done on
+ * every request.
+ */
+public class LatencyHistogram {
+    /** The highest value that can be recorded, larger values are recorded as this one */
+    public static final long MAX_VALUE = TimeUnit.HOURS.toMicros(1);
+
+    /** Bits of precision kept for each power of two */
+    private static final int SUB_BUCKET_BITS  = 5;
+    private static final int SUB_BUCKET_HALF  = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF << 1;
+    private static final int BUCKET_COUNT     = getIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray mCounts;
+    private final AtomicLong      mCount;
+    private final AtomicLong      mSum;
+    private final AtomicLong      mMin;
+    private final AtomicLong      mMax;
+
+    public LatencyHistogram() {
+        mCounts = new AtomicLongArray(BUCKET_COUNT);
+        mCount = new AtomicLong();
+        mSum = new AtomicLong();
+        mMin = new AtomicLong(Long.MAX_VALUE);
+        mMax = new AtomicLong();
+    }
+
+    /**
+     * @param value    The value to record
+     * @param timeUnit The unit of the passed-in value
+     */
+    public void record(long value, TimeUnit timeUnit) {
+        recordMicros(timeUnit.toMicros(value));
+    }
+
+    /**
+     * @param micros The value to record in microseconds. Negative values are recorded as 0
+     */
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        mCounts.incrementAndGet(getIndex(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+
+        long min;
+        do {
+            min = mMin.get();
+        } while (value < min && !mMin.compareAndSet(min, value));
+        long max;
+        do {
+            max = mMax.get();
+        } while (value > max && !mMax.compareAndSet(max, value));
+    }
+
+    /**
+     * Forgets every recorded value
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMin.set(Long.MAX_VALUE);
+        mMax.set(0);
+    }
+
+    /**
+     * @return A copy of the values recorded so far. Values recorded while the copy is being taken
+     * may or may not be part of it
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            count += counts[i];
+        }
+        long min = mMin.get();
+        return new Snapshot(counts,
+                count,
+                mSum.get(),
+                min == Long.MAX_VALUE ? 0 : min,
+                mMax.get());
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" + "mCount=" + mCount + ", mMax=" + mMax + '}';
+    }
+
+    /**
+     * Values below 64 get a bucket each. Above that, each power of two gets 32 buckets indexed by
+     * the value's 6 most significant bits
+     */
+    static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return The highest value recorded into the bucket at the passed-in index
+     */
+    static long getHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (index & (SUB_BUCKET_HALF - 1)) + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram's values
+     */
+    public static class Snapshot {
+        private final long[] mCounts;
+        private final long   mCount;
+        private final long   mSum;
+        private final long   mMin;
+        private final long   mMax;
+
+        Snapshot(long[] counts, long count, long sum, long min, long max) {
+            mCounts = counts;
+            mCount = count;
+            mSum = sum;
+            mMin = min;
+            mMax = max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "mCount=" + mCount +
+                    ", p50=" + getValueAtPercentile(50) +
+                    ", p99=" + getValueAtPercentile(99) +
+                    ", mMax=" + mMax +
+                    '}';
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return The largest recorded value in microseconds, 0 if nothing was recorded
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * @return The average recorded value in microseconds, 0 if nothing was recorded
+         */
+        public double getMean() {
+            return mCount == 0 ? 0 : (double) mSum / mCount;
+        }
+
+        /**
+         * @return The smallest recorded value in microseconds, 0 if nothing was recorded
+         */
+        public long getMin() {
+            return mMin;
+        }
+
+        /**
+         * @return The sum of every recorded value in microseconds
+         */
+        public long getSum() {
+            return mSum;
+        }
+
+        /**
+         * @param percentile The percentile to get, from 0 to 100
+         * @return The value in microseconds that the passed-in percentage of the recorded values
+         * are at or below, 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (mCount == 0) return 0;
+            double fraction = Math.min(Math.max(0, percentile), 100) / 100;
+            long target = Math.max(1, (long) Math.ceil(fraction * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= target) return Math.max(mMin, Math.min(getHighestValue(i), mMax));
+            }
+            return mMax;
+        }
+    }
+}
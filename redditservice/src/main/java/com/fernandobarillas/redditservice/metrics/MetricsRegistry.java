@@ -0,0 +1,260 @@
+package com.fernandobarillas.redditservice.metrics;
+
+import android.support.annotation.NonNull;
+
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.functions.Func0;
+
+/**
+ * Collects the library's request and cache metrics: a latency histogram per reddit endpoint, the
+ * bytes each endpoint transferred, its retries, 429 responses and requests in flight, and the hit
+ * ratio of each cache. Every counter is updated with lock-free atomics so that metrics can be
+ * recorded on every request.
+ * <p>
+ * Metrics are read through {@link #snapshot()}, which can be rendered with {@link
+ * MetricsSnapshot#toText()} for a debug screen or a local scrape endpoint.
+ */
+public class MetricsRegistry {
+    public static final String ENDPOINT_LISTING       = "listing";
+    public static final String ENDPOINT_OTHER         = "other";
+    public static final String ENDPOINT_SAVE          = "save";
+    public static final String ENDPOINT_SUBSCRIPTIONS = "subscriptions";
+    public static final String ENDPOINT_TOKEN_REFRESH = "token_refresh";
+    public static final String ENDPOINT_VOTE          = "vote";
+
+    public static final String CACHE_LISTING     = "listing";
+    public static final String CACHE_STRING_POOL = "string_pool";
+
+    private static final MetricsRegistry DEFAULT_REGISTRY = new MetricsRegistry();
+
+    static {
+        final StringPool listingPool = StringPool.getListingPool();
+        DEFAULT_REGISTRY.registerGauge(CACHE_STRING_POOL + "_hit_ratio", new Func0<Number>() {
+            @Override
+            public Number call() {
+                return listingPool.getHitRate();
+            }
+        });
+    }
+
+    private final ConcurrentMap<String, Endpoint>      mEndpoints;
+    private final ConcurrentMap<String, Cache>         mCaches;
+    private final ConcurrentMap<String, Func0<Number>> mGauges;
+
+    public MetricsRegistry() {
+        mEndpoints = new ConcurrentHashMap<>();
+        mCaches = new ConcurrentHashMap<>();
+        mGauges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return The registry every client and cache in the library records its metrics to
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT_REGISTRY;
+    }
+
+    /**
+     * @param name The cache's name, such as {@link #CACHE_LISTING}
+     * @return The hit and miss counters of the cache, created the first time they are asked for
+     */
+    public Cache getCache(@NonNull String name) {
+        Cache cache = mCaches.get(name);
+        if (cache != null) return cache;
+        Cache newCache = new Cache();
+        cache = mCaches.putIfAbsent(name, newCache);
+        return cache != null ? cache : newCache;
+    }
+
+    /**
+     * @param name The endpoint's name, such as {@link #ENDPOINT_LISTING}
+     * @return The metrics of the endpoint, created the first time they are asked for
+     */
+    public Endpoint getEndpoint(@NonNull String name) {
+        Endpoint endpoint = mEndpoints.get(name);
+        if (endpoint != null) return endpoint;
+        Endpoint newEndpoint = new Endpoint();
+        endpoint = mEndpoints.putIfAbsent(name, newEndpoint);
+        return endpoint != null ? endpoint : newEndpoint;
+    }
+
+    /**
+     * Adds a gauge whose value is read from the passed-in function every time a snapshot is taken
+     *
+     * @param name  The gauge's name, replaces any gauge with the same name
+     * @param value Returns the gauge's current value. Called on the thread taking the snapshot
+     */
+    public void registerGauge(@NonNull String name, @NonNull Func0<Number> value) {
+        mGauges.put(name, value);
+    }
+
+    /**
+     * Sets every counter and histogram back to 0. Requests in flight and gauges are left as-is
+     */
+    public void reset() {
+        for (Endpoint endpoint : mEndpoints.values()) {
+            endpoint.reset();
+        }
+        for (Cache cache : mCaches.values()) {
+            cache.reset();
+        }
+    }
+
+    /**
+     * @return A copy of every metric's current value
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.EndpointSnapshot> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<String, Endpoint> entry : mEndpoints.entrySet()) {
+            endpoints.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        Map<String, MetricsSnapshot.CacheSnapshot> caches = new LinkedHashMap<>();
+        for (Map.Entry<String, Cache> entry : mCaches.entrySet()) {
+            caches.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        Map<String, Double> gauges = new LinkedHashMap<>();
+        for (Map.Entry<String, Func0<Number>> entry : mGauges.entrySet()) {
+            Number value = entry.getValue().call();
+            if (value != null) gauges.put(entry.getKey(), value.doubleValue());
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), endpoints, caches, gauges);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsRegistry{" + "mEndpoints=" + mEndpoints.keySet() + '}';
+    }
+
+    /**
+     * The metrics of a single reddit endpoint
+     */
+    public static class Endpoint {
+        private final LatencyHistogram mLatency       = new LatencyHistogram();
+        private final AtomicLong       mRequests      = new AtomicLong();
+        private final AtomicLong       mErrors        = new AtomicLong();
+        private final AtomicLong       mRateLimited   = new AtomicLong();
+        private final AtomicLong       mRetries       = new AtomicLong();
+        private final AtomicLong       mBytesSent     = new AtomicLong();
+        private final AtomicLong       mBytesReceived = new AtomicLong();
+        private final AtomicLong       mInFlight      = new AtomicLong();
+
+        Endpoint() {
+        }
+
+        public void addBytesReceived(long bytes) {
+            mBytesReceived.addAndGet(bytes);
+        }
+
+        public void addBytesSent(long bytes) {
+            mBytesSent.addAndGet(bytes);
+        }
+
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        /**
+         * Records a request that failed without a response, such as on a timeout
+         */
+        public void onError() {
+            mErrors.incrementAndGet();
+        }
+
+        /**
+         * Records a 429 response
+         */
+        public void onRateLimited() {
+            mRateLimited.incrementAndGet();
+        }
+
+        /**
+         * Records a request leaving. Call {@link #onResponse(long)} once it returns
+         *
+         * @return The time to pass to {@link #onResponse(long)}
+         */
+        public long onRequest() {
+            mRequests.incrementAndGet();
+            mInFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * Records a request returning, with or without a response
+         *
+         * @param requestTime The time returned by {@link #onRequest()}
+         */
+        public void onResponse(long requestTime) {
+            mInFlight.decrementAndGet();
+            mLatency.record(System.nanoTime() - requestTime, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Records a request being sent again after it failed. Only the retries made by the
+         * library itself are recorded, such as requests held back by the rate limiter and
+         * mutations sent again. The retries JRAW's RedditClient makes on its own, up to its retry
+         * limit, go out as new requests that can't be told apart from the first attempt, so they
+         * are counted as requests instead
+         */
+        public void onRetry() {
+            mRetries.incrementAndGet();
+        }
+
+        void reset() {
+            mLatency.reset();
+            mRequests.set(0);
+            mErrors.set(0);
+            mRateLimited.set(0);
+            mRetries.set(0);
+            mBytesSent.set(0);
+            mBytesReceived.set(0);
+        }
+
+        MetricsSnapshot.EndpointSnapshot snapshot(String name) {
+            return new MetricsSnapshot.EndpointSnapshot(name,
+                    mLatency.snapshot(),
+                    mRequests.get(),
+                    mErrors.get(),
+                    mRateLimited.get(),
+                    mRetries.get(),
+                    mBytesSent.get(),
+                    mBytesReceived.get(),
+                    mInFlight.get());
+        }
+    }
+
+    /**
+     * The hit and miss counters of a single cache
+     */
+    public static class Cache {
+        private final AtomicLong mHits   = new AtomicLong();
+        private final AtomicLong mMisses = new AtomicLong();
+
+        Cache() {
+        }
+
+        public void onHit() {
+            mHits.incrementAndGet();
+        }
+
+        public void onMiss() {
+            mMisses.incrementAndGet();
+        }
+
+        void reset() {
+            mHits.set(0);
+            mMisses.set(0);
+        }
+
+        MetricsSnapshot.CacheSnapshot snapshot(String name) {
+            return new MetricsSnapshot.CacheSnapshot(name, mHits.get(), mMisses.get());
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.fernandobarillas.redditservice.metrics;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable copy of every metric in a {@link MetricsRegistry} at the time it was taken
+ */
+public class MetricsSnapshot {
+    /** Prefix of every metric name in the text format */
+    private static final String PREFIX = "redditservice_";
+
+    /** Percentiles of each latency histogram included in the text format */
+    private static final double[] QUANTILES = {0.5, 0.75, 0.9, 0.99, 0.999};
+
+    private static final double MICROS_PER_SECOND = 1000000.0;
+
+    private final long                          mTime;
+    private final Map<String, EndpointSnapshot> mEndpoints;
+    private final Map<String, CacheSnapshot>    mCaches;
+    private final Map<String, Double>           mGauges;
+
+    MetricsSnapshot(long time,
+            Map<String, EndpointSnapshot> endpoints,
+            Map<String, CacheSnapshot> caches,
+            Map<String, Double> gauges) {
+        mTime = time;
+        mEndpoints = Collections.unmodifiableMap(endpoints);
+        mCaches = Collections.unmodifiableMap(caches);
+        mGauges = Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * @return The caches that recorded at least one lookup, keyed by name
+     */
+    public Map<String, CacheSnapshot> getCaches() {
+        return mCaches;
+    }
+
+    /**
+     * @return The endpoints that were requested at least once, keyed by name
+     */
+    public Map<String, EndpointSnapshot> getEndpoints() {
+        return mEndpoints;
+    }
+
+    /**
+     * @return The value of every registered gauge, keyed by name
+     */
+    public Map<String, Double> getGauges() {
+        return mGauges;
+    }
+
+    /**
+     * @return The time in milliseconds since the epoch the snapshot was taken at
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * Renders the snapshot in the Prometheus text exposition format. Latencies are in seconds,
+     * sizes in bytes
+     *
+     * @return One line per metric value, each metric preceded by its type
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+
+        appendType(text, "request_latency_seconds", "summary");
+        for (EndpointSnapshot endpoint : mEndpoints.values()) {
+            String labels = "endpoint=\"" + endpoint.mName + "\"";
+            LatencyHistogram.Snapshot latency = endpoint.mLatency;
+            for (double quantile : QUANTILES) {
+                appendValue(text,
+                        "request_latency_seconds",
+                        labels + ",quantile=\"" + quantile + "\"",
+                        latency.getValueAtPercentile(quantile * 100) / MICROS_PER_SECOND);
+            }
+            appendValue(text,
+                    "request_latency_seconds_sum",
+                    labels,
+                    latency.getSum() / MICROS_PER_SECOND);
+            appendValue(text, "request_latency_seconds_count", labels, latency.getCount());
+        }
+
+        appendEndpointCounter(text, "requests_total", "counter", Field.REQUESTS);
+        appendEndpointCounter(text, "request_errors_total", "counter", Field.ERRORS);
+        appendEndpointCounter(text, "rate_limited_total", "counter", Field.RATE_LIMITED);
+        appendEndpointCounter(text, "retries_total", "counter", Field.RETRIES);
+        appendEndpointCounter(text, "sent_bytes_total", "counter", Field.BYTES_SENT);
+        appendEndpointCounter(text, "received_bytes_total", "counter", Field.BYTES_RECEIVED);
+        appendEndpointCounter(text, "requests_in_flight", "gauge", Field.IN_FLIGHT);
+
+        appendType(text, "cache_hits_total", "counter");
+        for (CacheSnapshot cache : mCaches.values()) {
+            appendValue(text, "cache_hits_total", "cache=\"" + cache.mName + "\"", cache.mHits);
+        }
+        appendType(text, "cache_misses_total", "counter");
+        for (CacheSnapshot cache : mCaches.values()) {
+            appendValue(text, "cache_misses_total", "cache=\"" + cache.mName + "\"", cache.mMisses);
+        }
+        appendType(text, "cache_hit_ratio", "gauge");
+        for (CacheSnapshot cache : mCaches.values()) {
+            appendValue(text,
+                    "cache_hit_ratio",
+                    "cache=\"" + cache.mName + "\"",
+                    cache.getHitRatio());
+        }
+
+        for (Map.Entry<String, Double> gauge : mGauges.entrySet()) {
+            appendType(text, gauge.getKey(), "gauge");
+            appendValue(text, gauge.getKey(), null, gauge.getValue());
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "mTime=" + mTime +
+                ", mEndpoints=" + mEndpoints.values() +
+                ", mCaches=" + mCaches.values() +
+                ", mGauges=" + mGauges +
+                '}';
+    }
+
+    private void appendEndpointCounter(StringBuilder text, String name, String type, Field field) {
+        appendType(text, name, type);
+        for (EndpointSnapshot endpoint : mEndpoints.values()) {
+            appendValue(text, name, "endpoint=\"" + endpoint.mName + "\"", endpoint.get(field));
+        }
+    }
+
+    private static void appendType(StringBuilder text, String name, String type) {
+        text.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendValue(StringBuilder text, String name, String labels, double value) {
+        text.append(PREFIX).append(name);
+        if (labels != null) text.append('{').append(labels).append('}');
+        text.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            text.append((long) value);
+        } else {
+            text.append(String.format(Locale.US, "%.6f", value));
+        }
+        text.append('\n');
+    }
+
+    private enum Field {
+        REQUESTS, ERRORS, RATE_LIMITED, RETRIES, BYTES_SENT, BYTES_RECEIVED, IN_FLIGHT
+    }
+
+    /**
+     * The metrics of a single reddit endpoint
+     */
+    public static class EndpointSnapshot {
+        private final String                    mName;
+        private final LatencyHistogram.Snapshot mLatency;
+        private final long                      mRequests;
+        private final long                      mErrors;
+        private final long                      mRateLimited;
+        private final long                      mRetries;
+        private final long                      mBytesSent;
+        private final long                      mBytesReceived;
+        private final long                      mInFlight;
+
+        EndpointSnapshot(String name,
+                LatencyHistogram.Snapshot latency,
+                long requests,
+                long errors,
+                long rateLimited,
+                long retries,
+                long bytesSent,
+                long bytesReceived,
+                long inFlight) {
+            mName = name;
+            mLatency = latency;
+            mRequests = requests;
+            mErrors = errors;
+            mRateLimited = rateLimited;
+            mRetries = retries;
+            mBytesSent = bytesSent;
+            mBytesReceived = bytesReceived;
+            mInFlight = inFlight;
+        }
+
+        @Override
+        public String toString() {
+            return "EndpointSnapshot{" +
+                    "mName='" + mName + '\'' +
+                    ", mLatency=" + mLatency +
+                    ", mRequests=" + mRequests +
+                    ", mErrors=" + mErrors +
+                    ", mRateLimited=" + mRateLimited +
+                    ", mRetries=" + mRetries +
+                    ", mInFlight=" + mInFlight +
+                    '}';
+        }
+
+        /**
+         * @return The bytes of response bodies read from the network, before decompression
+         */
+        public long getBytesReceived() {
+            return mBytesReceived;
+        }
+
+        /**
+         * @return The bytes of request bodies sent
+         */
+        public long getBytesSent() {
+            return mBytesSent;
+        }
+
+        /**
+         * @return The requests that failed without a response
+         */
+        public long getErrors() {
+            return mErrors;
+        }
+
+        /**
+         * @return The requests waiting for their response when the snapshot was taken
+         */
+        public long getInFlight() {
+            return mInFlight;
+        }
+
+        /**
+         * @return The time from each request leaving to its response headers being received
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return mLatency;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return The 429 responses received
+         */
+        public long getRateLimited() {
+            return mRateLimited;
+        }
+
+        public long getRequests() {
+            return mRequests;
+        }
+
+        /**
+         * @return The requests sent again after failing or being rate limited
+         */
+        public long getRetries() {
+            return mRetries;
+        }
+
+        private long get(Field field) {
+            switch (field) {
+                case REQUESTS:
+                    return mRequests;
+                case ERRORS:
+                    return mErrors;
+                case RATE_LIMITED:
+                    return mRateLimited;
+                case RETRIES:
+                    return mRetries;
+                case BYTES_SENT:
+                    return mBytesSent;
+                case BYTES_RECEIVED:
+                    return mBytesReceived;
+                default:
+                    return mInFlight;
+            }
+        }
+    }
+
+    /**
+     * The hit and miss counters of a single cache
+     */
+    public static class CacheSnapshot {
+        private final String mName;
+        private final long   mHits;
+        private final long   mMisses;
+
+        CacheSnapshot(String name, long hits, long misses) {
+            mName = name;
+            mHits = hits;
+            mMisses = misses;
+        }
+
+        @Override
+        public String toString() {
+            return "CacheSnapshot{" +
+                    "mName='" + mName + '\'' +
+                    ", mHits=" + mHits +
+                    ", mMisses=" + mMisses +
+                    '}';
+        }
+
+        /**
+         * @return The fraction of lookups that were hits, 0 before any lookup
+         */
+        public double getHitRatio() {
+            long lookups = mHits + mMisses;
+            return lookups == 0 ? 0 : (double) mHits / lookups;
+        }
+
+        public long getHits() {
+            return mHits;
+        }
+
+        public long getMisses() {
+            return mMisses;
+        }
+
+        public String getName() {
+            return mName;
+        }
+    }
+}
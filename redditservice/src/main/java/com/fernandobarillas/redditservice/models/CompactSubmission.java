@@ -0,0 +1,217 @@
+package com.fernandobarillas.redditservice.models;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.models.VoteDirection;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Compact, immutable view of a {@link Submission} for holding large feeds in memory. A Submission
+ * keeps the whole JSON tree reddit returned for it, while this class copies out the numbers as
+ * primitives, packs the boolean fields into a single int and keeps only the strings needed to
+ * show a post in a feed.
+ * <p>
+ * The Submission a view was made from is only weakly held. Use {@link #getSubmission()} while it
+ * is still around, or {@code RedditService.getFullSubmission()} to download it again once it has
+ * been collected.
+ */
+public final class CompactSubmission {
+    private static final String FULLNAME_PREFIX = "t3_";
+
+    private static final int FLAG_NSFW     = 1;
+    private static final int FLAG_SAVED    = 1 << 1;
+    private static final int FLAG_SELF     = 1 << 2;
+    private static final int FLAG_STICKIED = 1 << 3;
+    private static final int FLAG_HIDDEN   = 1 << 4;
+    private static final int FLAG_LOCKED   = 1 << 5;
+    private static final int FLAG_SPOILER  = 1 << 6;
+    private static final int FLAG_ARCHIVED = 1 << 7;
+    private static final int FLAG_UPVOTE   = 1 << 8;
+    private static final int FLAG_DOWNVOTE = 1 << 9;
+
+    private final String mId;
+    private final String mTitle;
+    private final String mAuthor;
+    private final String mSubreddit;
+    private final String mDomain;
+    private final String mUrl;
+    private final String mPermalink;
+    private final String mThumbnail;
+    private final long   mCreatedUtc;
+    private final int    mScore;
+    private final int    mCommentCount;
+    private final int    mFlags;
+
+    private final WeakReference<Submission> mSubmission;
+
+    private CompactSubmission(JsonNode data, @Nullable Submission submission) {
+        mId = data.path("id").asText();
+        mTitle = text(data, "title");
+        mAuthor = text(data, "author");
+        mSubreddit = text(data, "subreddit");
+        mDomain = text(data, "domain");
+        mUrl = text(data, "url");
+        mPermalink = text(data, "permalink");
+        mThumbnail = text(data, "thumbnail");
+        mCreatedUtc = data.path("created_utc").asLong();
+        mScore = data.path("score").asInt();
+        mCommentCount = data.path("num_comments").asInt();
+
+        int flags = 0;
+        if (data.path("over_18").asBoolean()) flags |= FLAG_NSFW;
+        if (data.path("saved").asBoolean()) flags |= FLAG_SAVED;
+        if (data.path("is_self").asBoolean()) flags |= FLAG_SELF;
+        if (data.path("stickied").asBoolean()) flags |= FLAG_STICKIED;
+        if (data.path("hidden").asBoolean()) flags |= FLAG_HIDDEN;
+        if (data.path("locked").asBoolean()) flags |= FLAG_LOCKED;
+        if (data.path("spoiler").asBoolean()) flags |= FLAG_SPOILER;
+        if (data.path("archived").asBoolean()) flags |= FLAG_ARCHIVED;
+        JsonNode likes = data.path("likes");
+        if (likes.isBoolean()) flags |= likes.asBoolean() ? FLAG_UPVOTE : FLAG_DOWNVOTE;
+        mFlags = flags;
+
+        mSubmission = submission != null ? new WeakReference<>(submission) : null;
+    }
+
+    /**
+     * @param submission The Submission to make a view of
+     * @return A compact view of the Submission
+     */
+    public static CompactSubmission from(@NonNull Submission submission) {
+        return new CompactSubmission(submission.getDataNode(), submission);
+    }
+
+    /**
+     * Makes a view straight from the JSON data of a link, without building a Submission first
+     *
+     * @param data The "data" object of a link
+     * @return A compact view of the link
+     */
+    public static CompactSubmission fromDataNode(@NonNull JsonNode data) {
+        return new CompactSubmission(data, null);
+    }
+
+    private static String text(JsonNode data, String field) {
+        JsonNode value = data.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    @Override
+    public String toString() {
+        return "CompactSubmission{" +
+                "mId='" + mId + '\'' +
+                ", mSubreddit='" + mSubreddit + '\'' +
+                ", mTitle='" + mTitle + '\'' +
+                ", mScore=" + mScore +
+                '}';
+    }
+
+    public String getAuthor() {
+        return mAuthor;
+    }
+
+    public int getCommentCount() {
+        return mCommentCount;
+    }
+
+    /**
+     * @return The creation time in seconds since the epoch, UTC
+     */
+    public long getCreatedUtc() {
+        return mCreatedUtc;
+    }
+
+    public String getDomain() {
+        return mDomain;
+    }
+
+    /**
+     * @return The fullname of the post, such as t3_abc123
+     */
+    public String getFullName() {
+        return FULLNAME_PREFIX + mId;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public String getPermalink() {
+        return mPermalink;
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    /**
+     * @return The Submission this view was made from, or null if it has been garbage collected or
+     * the view was made from JSON data
+     */
+    @Nullable
+    public Submission getSubmission() {
+        return mSubmission != null ? mSubmission.get() : null;
+    }
+
+    public String getSubredditName() {
+        return mSubreddit;
+    }
+
+    public String getThumbnail() {
+        return mThumbnail;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return The logged-in user's vote on the post as of when it was downloaded
+     */
+    public VoteDirection getVote() {
+        if ((mFlags & FLAG_UPVOTE) != 0) return VoteDirection.UPVOTE;
+        if ((mFlags & FLAG_DOWNVOTE) != 0) return VoteDirection.DOWNVOTE;
+        return VoteDirection.NO_VOTE;
+    }
+
+    public boolean isArchived() {
+        return (mFlags & FLAG_ARCHIVED) != 0;
+    }
+
+    public boolean isHidden() {
+        return (mFlags & FLAG_HIDDEN) != 0;
+    }
+
+    public boolean isLocked() {
+        return (mFlags & FLAG_LOCKED) != 0;
+    }
+
+    public boolean isNsfw() {
+        return (mFlags & FLAG_NSFW) != 0;
+    }
+
+    public boolean isSaved() {
+        return (mFlags & FLAG_SAVED) != 0;
+    }
+
+    public boolean isSelfPost() {
+        return (mFlags & FLAG_SELF) != 0;
+    }
+
+    public boolean isSpoiler() {
+        return (mFlags & FLAG_SPOILER) != 0;
+    }
+
+    public boolean isStickied() {
+        return (mFlags & FLAG_STICKIED) != 0;
+    }
+}
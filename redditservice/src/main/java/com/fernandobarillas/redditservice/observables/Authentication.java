@@ -4,6 +4,7 @@ import android.text.TextUtils;
 
 import com.fernandobarillas.redditservice.requests.AuthRequest;
 import com.fernandobarillas.redditservice.results.AuthResult;
+import com.fernandobarillas.redditservice.tracing.Trace;
 import com.fernandobarillas.redditservice.utils.OauthUtils;
 
 import net.dean.jraw.RedditClient;
@@ -53,7 +54,7 @@ public class Authentication {
      * @return An Observable that returns an AuthResult
      */
     public Observable<AuthResult> asyncAuthenticate(final AuthRequest authRequest) {
-        Timber.v("asyncAuthenticate() called with: " + "authRequest = [" + authRequest + "]");
+        Trace.v("asyncAuthenticate", "authRequest", authRequest);
         mAuthRequest = authRequest;
         return Observable.create(new Observable.OnSubscribe<AuthResult>() {
             @Override
@@ -78,13 +79,13 @@ public class Authentication {
      * @throws OAuthException When an error occurs during the OAuth procedure
      */
     public AuthResult authenticate(final AuthRequest authRequest) throws OAuthException {
-        Timber.v("authenticate() called with: " + "authRequest = [" + authRequest + "]");
+        Trace.v("authenticate", "authRequest", authRequest);
         mAuthRequest = authRequest;
         return performAuthentication();
     }
 
     private AuthResult performAuthentication() throws OAuthException, NetworkException {
-        Timber.v("performAuthentication() called");
+        Trace.v("performAuthentication");
         String refreshToken = mAuthRequest.getRefreshToken();
         String redditClientId = mAuthRequest.getRedditClientId();
         String redditRedirectUri = mAuthRequest.getRedditRedirectUri();
@@ -0,0 +1,241 @@
+package com.fernandobarillas.redditservice.observables;
+
+import android.support.annotation.NonNull;
+
+import com.fernandobarillas.redditservice.requests.AuthRequest;
+import com.fernandobarillas.redditservice.results.AuthResult;
+import com.fernandobarillas.redditservice.tracing.Trace;
+
+import net.dean.jraw.RedditClient;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Keeps the client's token state in memory and makes sure that only a single authentication
+ * request is in flight at any time. Requests that need a valid token wait on {@link
+ * #awaitAuthentication()}: while the token is fresh it emits right away, and while it is being
+ * refreshed every waiting request is queued on the same {@link Authentication#authenticate} call
+ * rather than starting its own. The gate can also renew the token in the background shortly
+ * before it expires, see {@link #startRenewal()}, so that requests don't have to wait on a refresh
+ * at all.
+ */
+public class AuthenticationGate {
+    /** Upper bound of the random delay taken off each renewal time */
+    private static final long MAX_RENEWAL_JITTER = TimeUnit.SECONDS.toMillis(60);
+    /** Time to wait before trying again after a background renewal fails */
+    private static final long RENEWAL_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+    /** Passed to {@link #scheduleRenewal(long)} to renew at the stored expiration time */
+    private static final long RENEWAL_AT_EXPIRATION = -1;
+
+    private final RedditClient       mRedditClient;
+    private final Func0<AuthRequest> mAuthRequestFactory;
+    private final Listener           mListener;
+
+    private volatile long mExpirationTime;
+
+    private final Random mRandom = new Random();
+
+    private Observable<Boolean> mInFlight;
+    private boolean             mIsRenewalEnabled;
+    private Subscription        mRenewalSubscription;
+
+    /**
+     * @param redditClient       The client to authenticate
+     * @param authRequestFactory Builds the request to use when the token needs to be refreshed.
+     *                           Only called while a refresh is starting
+     * @param listener           Notified of the result of every authentication request
+     * @param expirationTime     The expiration time of the token the client currently holds, or
+     *                           {@link AuthRequest#INVALID_EXPIRATION_TIME} if there is none
+     */
+    public AuthenticationGate(@NonNull RedditClient redditClient,
+            @NonNull Func0<AuthRequest> authRequestFactory,
+            @NonNull Listener listener,
+            long expirationTime) {
+        mRedditClient = redditClient;
+        mAuthRequestFactory = authRequestFactory;
+        mListener = listener;
+        mExpirationTime = expirationTime;
+    }
+
+    /**
+     * Waits for the client to hold a valid token, starting a refresh if there is none and no other
+     * refresh is already in flight
+     *
+     * @return An Observable that emits true once the client is authenticated. Emits right away on
+     * the subscribing thread when the token is fresh, otherwise emits on an io thread once the
+     * shared refresh completes
+     */
+    public Observable<Boolean> awaitAuthentication() {
+        return Observable.defer(new Func0<Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call() {
+                if (isAuthenticated()) return Observable.just(true);
+                return getInFlight(false).observeOn(Schedulers.io());
+            }
+        });
+    }
+
+    public long getExpirationTime() {
+        return mExpirationTime;
+    }
+
+    /**
+     * @return True if the client holds a token that hasn't expired yet
+     */
+    public boolean isAuthenticated() {
+        return mRedditClient.isAuthenticated() && !Authentication.isExpired(mExpirationTime);
+    }
+
+    /**
+     * Updates the in-memory expiration time, normally with the time stored after handling an
+     * {@link AuthResult}
+     *
+     * @param expirationTime The time in milliseconds the current token should be refreshed at
+     */
+    public synchronized void setExpirationTime(long expirationTime) {
+        mExpirationTime = expirationTime;
+        if (mIsRenewalEnabled) scheduleRenewal(RENEWAL_AT_EXPIRATION);
+    }
+
+    /**
+     * Starts renewing the token in the background shortly before each stored expiration time. A
+     * random jitter of up to a minute is taken off each renewal time so that clients started
+     * together don't all renew at once
+     */
+    public synchronized void startRenewal() {
+        Trace.v("startRenewal");
+        mIsRenewalEnabled = true;
+        scheduleRenewal(RENEWAL_AT_EXPIRATION);
+    }
+
+    /**
+     * Cancels any scheduled background renewal. A renewal that has already started still completes
+     */
+    public synchronized void stopRenewal() {
+        Trace.v("stopRenewal");
+        mIsRenewalEnabled = false;
+        if (mRenewalSubscription != null) mRenewalSubscription.unsubscribe();
+        mRenewalSubscription = null;
+    }
+
+    /**
+     * @param isRenewal True to ignore any cached authentication data and request a new token, used
+     *                  when the current token is still valid but about to expire
+     */
+    private synchronized Observable<Boolean> getInFlight(final boolean isRenewal) {
+        if (mInFlight != null) return mInFlight;
+
+        Timber.d("getInFlight: Starting a new token refresh, renewal [%s]", isRenewal);
+        mInFlight = Observable.create(new Observable.OnSubscribe<AuthResult>() {
+            @Override
+            public void call(Subscriber<? super AuthResult> subscriber) {
+                try {
+                    AuthRequest authRequest = mAuthRequestFactory.call();
+                    if (isRenewal && authRequest != null) {
+                        // Authentication reuses cached data until it expires, which would make
+                        // renewing a token that is still valid a no-op
+                        authRequest = new AuthRequest(authRequest.getRefreshToken(),
+                                authRequest.getRedditClientId(),
+                                authRequest.getRedditRedirectUri(),
+                                authRequest.getAuthenticationJson(),
+                                AuthRequest.INVALID_EXPIRATION_TIME);
+                    }
+                    Authentication authentication = new Authentication(mRedditClient);
+                    AuthResult authResult = authentication.authenticate(authRequest);
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onNext(authResult);
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onError(e);
+                }
+            }
+        }).subscribeOn(Schedulers.io()).doOnNext(new Action1<AuthResult>() {
+            @Override
+            public void call(AuthResult authResult) {
+                mListener.onAuthResult(authResult);
+            }
+        }).doOnError(new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                mListener.onAuthError(throwable);
+            }
+        }).doOnTerminate(new Action0() {
+            @Override
+            public void call() {
+                // The next caller to find an expired token starts a new refresh
+                synchronized (AuthenticationGate.this) {
+                    mInFlight = null;
+                }
+            }
+        }).map(new Func1<AuthResult, Boolean>() {
+            @Override
+            public Boolean call(AuthResult authResult) {
+                return true;
+            }
+        }).cache();
+        return mInFlight;
+    }
+
+    /**
+     * Replaces any scheduled renewal with a new one. Must be called while holding the lock
+     *
+     * @param delay {@link #RENEWAL_AT_EXPIRATION} to renew at the stored expiration time minus
+     *              jitter, otherwise the time in milliseconds to wait before renewing
+     */
+    private void scheduleRenewal(long delay) {
+        if (mRenewalSubscription != null) mRenewalSubscription.unsubscribe();
+        mRenewalSubscription = null;
+        if (delay == RENEWAL_AT_EXPIRATION) {
+            // Nothing to renew until the first authentication stores an expiration time
+            if (mExpirationTime == AuthRequest.INVALID_EXPIRATION_TIME) return;
+            long jitter = (long) (mRandom.nextDouble() * MAX_RENEWAL_JITTER);
+            delay = Math.max(0, mExpirationTime - jitter - System.currentTimeMillis());
+        }
+
+        Timber.d("scheduleRenewal: Renewing token in [%d] ms", delay);
+        mRenewalSubscription = Observable.timer(delay, TimeUnit.MILLISECONDS, Schedulers.io())
+                .concatMap(new Func1<Long, Observable<Boolean>>() {
+                    @Override
+                    public Observable<Boolean> call(Long aLong) {
+                        return getInFlight(true);
+                    }
+                })
+                .subscribe(new Action1<Boolean>() {
+                    @Override
+                    public void call(Boolean isAuthenticated) {
+                        // Rescheduling happens when the new expiration time is stored
+                        Timber.i("scheduleRenewal: Token renewed in the background");
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        Timber.w(throwable, "scheduleRenewal: Background renewal failed");
+                        synchronized (AuthenticationGate.this) {
+                            if (mIsRenewalEnabled) scheduleRenewal(RENEWAL_RETRY_DELAY);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Receives the outcome of each authentication request made through the gate. Called on an io
+     * thread, before any of the waiting requests are resumed
+     */
+    public interface Listener {
+        void onAuthError(Throwable throwable);
+
+        void onAuthResult(AuthResult authResult);
+    }
+}
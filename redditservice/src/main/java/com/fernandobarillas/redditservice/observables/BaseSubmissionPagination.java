@@ -1,5 +1,7 @@
 package com.fernandobarillas.redditservice.observables;
 
+import com.fernandobarillas.redditservice.utils.StringPool;
+
 import net.dean.jraw.models.Listing;
 import net.dean.jraw.models.Submission;
 import net.dean.jraw.paginators.Paginator;
@@ -23,6 +25,7 @@ abstract class BaseSubmissionPagination {
                     if (paginator.hasNext()) {
                         Listing<Submission> submissionListing = paginator.next(true);
                         if (submissionListing.getChildren() != null) {
+                            StringPool.getListingPool().internSubmissions(submissionListing);
                             subscriber.onNext(submissionListing);
                         }
                     }
@@ -0,0 +1,137 @@
+package com.fernandobarillas.redditservice.observables;
+
+import android.support.annotation.NonNull;
+
+import com.fernandobarillas.redditservice.tracing.Trace;
+import com.fernandobarillas.redditservice.utils.FullnameSet;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Leaves out the Submissions a paginator has already returned. Hot and rising listings reorder
+ * between requests, so a page fetched by its after cursor often repeats Submissions of the pages
+ * before it. When a page loses Submissions this way, the pages after it are downloaded to top it
+ * back up to the paginator's limit. Submissions downloaded past the limit are held for the
+ * paginator's next page.
+ * <p>
+ * The Submissions seen are tracked per paginator, as a {@link FullnameSet}. Paginators are weakly
+ * held, and a new paginator starts over with nothing seen.
+ */
+public class DistinctPagination {
+    /** Pages downloaded at most on top of the first one to top a page up */
+    public static final int MAX_TOP_UPS = 2;
+
+    private final Map<Paginator<Submission>, Session> mSessions =
+            Collections.synchronizedMap(new WeakHashMap<Paginator<Submission>, Session>());
+
+    /**
+     * @param paginator The paginator to get the next distinct page for
+     * @param pages     Gets the next page of a paginator, emitting nothing or an empty page at the
+     *                  end of the listing
+     * @return An Observable that emits the Submissions of the next page the paginator hasn't
+     * returned yet, empty once the listing has no Submissions left
+     */
+    public Observable<Submission> getSubmissions(@NonNull final Paginator<Submission> paginator,
+            @NonNull final Func1<Paginator<Submission>, Observable<List<Submission>>> pages) {
+        return Observable.defer(new Func0<Observable<Submission>>() {
+            @Override
+            public Observable<Submission> call() {
+                Session session = getSession(paginator);
+                int limit = Math.max(1, paginator.getLimit());
+                List<Submission> held = session.take(limit);
+                Observable<Submission> heldSubmissions = Observable.from(held);
+                if (held.size() == limit) return heldSubmissions;
+                return heldSubmissions.concatWith(
+                        getPage(paginator, pages, session, limit - held.size(), MAX_TOP_UPS));
+            }
+        });
+    }
+
+    private Observable<Submission> getPage(final Paginator<Submission> paginator,
+            final Func1<Paginator<Submission>, Observable<List<Submission>>> pages,
+            final Session session,
+            final int needed,
+            final int topUps) {
+        return pages.call(paginator)
+                .defaultIfEmpty(Collections.<Submission>emptyList())
+                .concatMap(new Func1<List<Submission>, Observable<Submission>>() {
+                    @Override
+                    public Observable<Submission> call(List<Submission> page) {
+                        List<Submission> distinct = new ArrayList<>(needed);
+                        int dropped = session.filter(page, needed, distinct);
+                        int missing = needed - distinct.size();
+                        Observable<Submission> submissions = Observable.from(distinct);
+                        if (page.isEmpty() || dropped == 0 || missing == 0 || topUps == 0) {
+                            return submissions;
+                        }
+                        Trace.v("topUp", "paginator", paginator, "dropped", dropped);
+                        return submissions.concatWith(
+                                getPage(paginator, pages, session, missing, topUps - 1));
+                    }
+                });
+    }
+
+    private Session getSession(Paginator<Submission> paginator) {
+        synchronized (mSessions) {
+            Session session = mSessions.get(paginator);
+            if (session == null) {
+                session = new Session();
+                mSessions.put(paginator, session);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * The Submissions a single paginator has returned, and the ones held for its next page
+     */
+    private static class Session {
+        final FullnameSet      mSeen = new FullnameSet();
+        final List<Submission> mHeld = new ArrayList<>();
+
+        /**
+         * Adds a page's Submissions to the seen ones
+         *
+         * @param page     The page to filter
+         * @param count    The number of Submissions to return at most, the others being held
+         * @param distinct Receives the Submissions of the page that hadn't been seen yet, up to
+         *                 count
+         * @return The number of Submissions of the page that had already been seen
+         */
+        synchronized int filter(List<Submission> page, int count, List<Submission> distinct) {
+            int dropped = 0;
+            for (Submission submission : page) {
+                if (!mSeen.add(submission.getFullName())) {
+                    dropped++;
+                } else if (distinct.size() < count) {
+                    distinct.add(submission);
+                } else {
+                    mHeld.add(submission);
+                }
+            }
+            return dropped;
+        }
+
+        /**
+         * @param count The number of held Submissions to take at most
+         * @return The oldest held Submissions, up to count
+         */
+        synchronized List<Submission> take(int count) {
+            List<Submission> taken = mHeld.subList(0, Math.min(count, mHeld.size()));
+            List<Submission> submissions = new ArrayList<>(taken);
+            taken.clear();
+            return submissions;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.fernandobarillas.redditservice.observables;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import timber.log.Timber;
+
+/**
+ * Shares a single in-flight request among every subscriber asking for the same key at the same
+ * time. The first subscriber starts the request and subscribers arriving while it is in flight
+ * join it and get the same result, including the items emitted before they joined. The request is
+ * reference counted: it is only cancelled once every subscriber has unsubscribed, and it is
+ * forgotten as soon as it completes or is cancelled so that the next subscriber starts a fresh
+ * request.
+ *
+ * @param <K> The type of the canonical request key, must implement equals and hashCode
+ * @param <T> The type of the items the request emits
+ */
+public class InFlightRequests<K, T> {
+    private final Map<K, Observable<T>> mRequests;
+
+    public InFlightRequests() {
+        mRequests = new HashMap<>();
+    }
+
+    /**
+     * @return The number of requests currently in flight
+     */
+    public synchronized int getInFlightCount() {
+        return mRequests.size();
+    }
+
+    /**
+     * Gets the request for a key, joining the request in flight for the same key if there is one
+     *
+     * @param key            The canonical key of the request
+     * @param requestFactory Builds the request when none is in flight for the key. The request
+     *                       must not do any work until it is subscribed to
+     * @return An Observable that emits the result of the shared request
+     */
+    public Observable<T> share(
+            @NonNull final K key, @NonNull final Func0<Observable<T>> requestFactory) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                synchronized (InFlightRequests.this) {
+                    Observable<T> request = mRequests.get(key);
+                    if (request != null) {
+                        Timber.v("share: Joining the request in flight for %s", key);
+                        return request;
+                    }
+
+                    final AtomicReference<Observable<T>> requestReference = new AtomicReference<>();
+                    Action0 removeRequest = new Action0() {
+                        @Override
+                        public void call() {
+                            remove(key, requestReference.get());
+                        }
+                    };
+                    // Joiners get every item emitted before they arrived, so streamed results
+                    // are shared in full
+                    request = requestFactory.call()
+                            .doOnTerminate(removeRequest)
+                            .doOnUnsubscribe(removeRequest)
+                            .replay()
+                            .refCount();
+                    requestReference.set(request);
+                    mRequests.put(key, request);
+                    return request;
+                }
+            }
+        });
+    }
+
+    private synchronized void remove(K key, Observable<T> request) {
+        // A newer request may have replaced this one already
+        if (mRequests.get(key) == request) mRequests.remove(key);
+    }
+}
@@ -0,0 +1,100 @@
+package com.fernandobarillas.redditservice.observables;
+
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import java.util.Iterator;
+
+import rx.Observable;
+import rx.Observer;
+import rx.functions.Func0;
+import rx.functions.Func2;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * An RxJava Observable over every Submission of a listing, across all of its pages. Pages are
+ * downloaded on demand: the next page is only requested from reddit once every Submission of the
+ * current page has been requested downstream, so a slow consumer holds at most one page in memory
+ * no matter how long the listing is.
+ * <p>
+ * Downloads happen on the thread requesting items. Subscribe on a background scheduler, which
+ * also moves the requests made from other threads, such as by {@link Observable#observeOn}, back
+ * to it.
+ */
+public class ListingPagination {
+    /** Use as the maximum number of items to go through the whole listing */
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private ListingPagination() {
+    }
+
+    /**
+     * @param paginators Returns a new paginator positioned on the first page to emit. Called once
+     *                   per subscription, so that every subscriber goes through the listing from
+     *                   the start
+     * @param maxItems   The number of Submissions after which the Observable completes, or {@link
+     *                   #NO_LIMIT}
+     * @return An Observable that emits each Submission of the listing in order, then completes at
+     * the end of the listing or after the maximum number of items
+     */
+    public static Observable<Submission> getAllSubmissions(
+            final Func0<? extends Paginator<Submission>> paginators, final int maxItems) {
+        Func0<Cursor> start = new Func0<Cursor>() {
+            @Override
+            public Cursor call() {
+                return new Cursor(paginators.call());
+            }
+        };
+        // Called once per requested item, so pages are only downloaded as items are requested
+        Func2<Cursor, Observer<? super Submission>, Cursor> emitNext =
+                new Func2<Cursor, Observer<? super Submission>, Cursor>() {
+                    @Override
+                    public Cursor call(Cursor cursor, Observer<? super Submission> observer) {
+                        Submission submission = cursor.mEmitted < maxItems ? cursor.next() : null;
+                        if (submission == null) {
+                            observer.onCompleted();
+                        } else {
+                            cursor.mEmitted++;
+                            observer.onNext(submission);
+                        }
+                        return cursor;
+                    }
+                };
+        return Observable.create(SyncOnSubscribe.<Cursor, Submission>createStateful(start,
+                emitNext));
+    }
+
+    /**
+     * Position in a listing, holding the page currently being emitted
+     */
+    private static class Cursor {
+        final Paginator<Submission> mPaginator;
+
+        Iterator<Submission> mPage;
+        int                  mEmitted;
+
+        Cursor(Paginator<Submission> paginator) {
+            mPaginator = paginator;
+        }
+
+        /**
+         * @return The next Submission, downloading the next page first when the current one has
+         * been emitted entirely. Null at the end of the listing
+         */
+        Submission next() {
+            while (mPage == null || !mPage.hasNext()) {
+                // Let go of the emitted page before downloading the next one
+                mPage = null;
+                if (!mPaginator.hasNext()) return null;
+                Listing<Submission> listing = mPaginator.next(true);
+                if (listing.getChildren() == null || listing.isEmpty()) return null;
+                StringPool.getListingPool().internSubmissions(listing);
+                mPage = listing.iterator();
+            }
+            return mPage.next();
+        }
+    }
+}
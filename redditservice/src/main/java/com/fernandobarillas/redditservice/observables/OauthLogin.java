@@ -2,6 +2,7 @@ package com.fernandobarillas.redditservice.observables;
 
 import com.fernandobarillas.redditservice.requests.OauthLoginRequest;
 import com.fernandobarillas.redditservice.results.OauthLoginResult;
+import com.fernandobarillas.redditservice.tracing.Trace;
 
 import net.dean.jraw.RedditClient;
 import net.dean.jraw.http.oauth.Credentials;
@@ -11,7 +12,6 @@ import net.dean.jraw.http.oauth.OAuthHelper;
 
 import rx.Observable;
 import rx.Subscriber;
-import timber.log.Timber;
 
 /**
  * Created by fb on 8/3/16.
@@ -27,7 +27,7 @@ public class OauthLogin {
         return Observable.create(new Observable.OnSubscribe<OauthLoginResult>() {
             @Override
             public void call(Subscriber<? super OauthLoginResult> subscriber) {
-                Timber.v("performLogin call() called with: " + "subscriber = [" + subscriber + "]");
+                Trace.v("performLogin call", "subscriber", subscriber);
                 try {
                     if (!subscriber.isUnsubscribed()) {
                         subscriber.onNext(getLoginResult(loginRequest));
@@ -42,7 +42,7 @@ public class OauthLogin {
 
     private OauthLoginResult getLoginResult(final OauthLoginRequest loginRequest)
             throws OAuthException {
-        Timber.v("getLoginResult() called with: " + "loginRequest = [" + loginRequest + "]");
+        Trace.v("getLoginResult", "loginRequest", loginRequest);
         OAuthHelper oAuthHelper = mRedditClient.getOAuthHelper();
         String authorizationUrl = loginRequest.getAuthorizationUrl();
         Credentials credentials = loginRequest.getCredentials();
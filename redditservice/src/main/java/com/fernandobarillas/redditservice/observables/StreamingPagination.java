@@ -0,0 +1,256 @@
+package com.fernandobarillas.redditservice.observables;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fernandobarillas.redditservice.cache.ListingKey;
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Submission;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+import timber.log.Timber;
+
+/**
+ * An RxJava Observable that downloads a page of Submissions and emits each Submission as soon as
+ * its JSON object has been read from the response, instead of waiting for the whole page to be
+ * downloaded and parsed like a {@link net.dean.jraw.paginators.Paginator} does. The response body
+ * is read incrementally with a streaming JSON parser and only one child object is held as a tree
+ * at a time. The page's after cursor comes last in reddit's responses, so it is emitted as an end
+ * item once the whole page has been read.
+ */
+public class StreamingPagination {
+    private static final String OAUTH_URL      = "https://oauth.reddit.com";
+    private static final String KIND_LINK      = "t3";
+    private static final String KEY_AFTER      = "after";
+    private static final String KEY_CHILDREN   = "children";
+    private static final String KEY_DATA       = "data";
+    private static final String KEY_KIND       = "kind";
+    private static final String PATH_SUBMITTED = "submitted";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final OkHttpClient mOkHttpClient;
+    private final String       mUserAgent;
+    private final boolean      mIsRawJson;
+
+    /**
+     * @param okHttpClient The client to make the requests with
+     * @param userAgent    The User-Agent header to send with every request
+     * @param isRawJson    True to ask reddit not to escape HTML entities in the response
+     */
+    public StreamingPagination(
+            @NonNull OkHttpClient okHttpClient, @NonNull String userAgent, boolean isRawJson) {
+        mOkHttpClient = okHttpClient;
+        mUserAgent = userAgent;
+        mIsRawJson = isRawJson;
+    }
+
+    /**
+     * Builds the API request for the page of a listing
+     *
+     * @param key         The page to request
+     * @param accessToken The OAuth access token to authorize the request with
+     * @return The request for the page, made against the same endpoint a paginator would use
+     */
+    public Request buildRequest(@NonNull ListingKey key, @NonNull String accessToken) {
+        HttpUrl.Builder urlBuilder = HttpUrl.parse(OAUTH_URL).newBuilder();
+        String sorting = key.getSorting() != null
+                ? key.getSorting().name().toLowerCase(Locale.US)
+                : null;
+        if (ListingKey.TYPE_USER.equals(key.getType())) {
+            urlBuilder.addPathSegment("user")
+                    .addPathSegment(key.getName())
+                    .addPathSegment(PATH_SUBMITTED);
+            if (sorting != null) urlBuilder.addQueryParameter("sort", sorting);
+        } else {
+            if (!TextUtils.isEmpty(key.getName())) {
+                urlBuilder.addPathSegment("r").addPathSegment(key.getName());
+            }
+            if (sorting != null) urlBuilder.addPathSegment(sorting);
+        }
+
+        if (key.getTimePeriod() != null) {
+            urlBuilder.addQueryParameter("t", key.getTimePeriod().name().toLowerCase(Locale.US));
+        }
+        if (key.getAfter() != null) urlBuilder.addQueryParameter(KEY_AFTER, key.getAfter());
+        urlBuilder.addQueryParameter("limit", String.valueOf(key.getLinkLimit()));
+        if (mIsRawJson) urlBuilder.addQueryParameter("raw_json", "1");
+
+        return new Request.Builder().url(urlBuilder.build())
+                .header("Authorization", "bearer " + accessToken)
+                .header("User-Agent", mUserAgent)
+                .build();
+    }
+
+    /**
+     * @param listing A page downloaded whole, such as by a paginator
+     * @return An Observable that emits the page the same way as {@link #getItems(Request)}
+     */
+    public static Observable<Item> toItems(@NonNull Listing<Submission> listing) {
+        List<Submission> children = listing.getChildren();
+        List<Item> items = new ArrayList<>(children.size() + 1);
+        for (Submission submission : children) {
+            items.add(new Item(submission, null));
+        }
+        items.add(new Item(null, listing.getAfter()));
+        return Observable.from(items);
+    }
+
+    /**
+     * Makes a listing request and streams its Submissions
+     *
+     * @param request The request for the page, see {@link #buildRequest(ListingKey, String)}
+     * @return An Observable that emits an item for every Submission on the page in order, then an
+     * end item carrying the page's after cursor once the whole page has been read. Unsubscribing
+     * cancels the request
+     */
+    public Observable<Item> getItems(@NonNull final Request request) {
+        return Observable.create(new Observable.OnSubscribe<Item>() {
+            @Override
+            public void call(Subscriber<? super Item> subscriber) {
+                final Call call = mOkHttpClient.newCall(request);
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        call.cancel();
+                    }
+                }));
+
+                Response response = null;
+                try {
+                    if (subscriber.isUnsubscribed()) return;
+                    response = call.execute();
+                    if (!response.isSuccessful()) {
+                        throw new IOException(
+                                "Listing request failed with HTTP " + response.code());
+                    }
+
+                    String after = parse(response.body().byteStream(), subscriber);
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onNext(new Item(null, after));
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onError(e);
+                } finally {
+                    if (response != null) response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads a listing, emitting each link as soon as its object is complete
+     *
+     * @return The listing's after cursor
+     */
+    private static String parse(InputStream inputStream, Subscriber<? super Item> subscriber)
+            throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(inputStream);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Listing response is not a JSON object");
+            }
+
+            String after = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String rootField = parser.getCurrentName();
+                JsonToken rootValue = parser.nextToken();
+                if (!KEY_DATA.equals(rootField) || rootValue != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String dataField = parser.getCurrentName();
+                    JsonToken dataValue = parser.nextToken();
+                    if (KEY_AFTER.equals(dataField)) {
+                        after = dataValue == JsonToken.VALUE_NULL ? null : parser.getText();
+                    } else if (KEY_CHILDREN.equals(dataField)
+                            && dataValue == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            JsonNode child = MAPPER.readTree(parser);
+                            if (subscriber.isUnsubscribed()) return after;
+                            if (!KIND_LINK.equals(child.path(KEY_KIND).asText())) continue;
+                            JsonNode data = child.get(KEY_DATA);
+                            subscriber.onNext(new Item(new Submission(
+                                    StringPool.getListingPool().internListingFields(data)),
+                                    null));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            Timber.v("parse: Finished listing, after = [%s]", after);
+            return after;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * A Submission of a streamed page, or the end of the page. The end is an item of its own
+     * rather than a side channel so that every subscriber sharing a stream gets it, including the
+     * ones that join after the page has been read
+     */
+    public static final class Item {
+        private final Submission mSubmission;
+        private final String     mAfter;
+
+        private Item(Submission submission, String after) {
+            mSubmission = submission;
+            mAfter = after;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{" + "mSubmission=" + mSubmission + ", mAfter='" + mAfter + '\'' + '}';
+        }
+
+        /**
+         * @return The page's after cursor for the end item, null for the last page or for the
+         * item of a Submission
+         */
+        @Nullable
+        public String getAfter() {
+            return mAfter;
+        }
+
+        /**
+         * @return The Submission, null for the end item
+         */
+        @Nullable
+        public Submission getSubmission() {
+            return mSubmission;
+        }
+
+        /**
+         * @return True if this item marks the end of the page
+         */
+        public boolean isEnd() {
+            return mSubmission == null;
+        }
+    }
+}
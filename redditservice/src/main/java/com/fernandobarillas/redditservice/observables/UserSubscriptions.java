@@ -1,6 +1,7 @@
 package com.fernandobarillas.redditservice.observables;
 
 import com.fernandobarillas.redditservice.RedditService;
+import com.fernandobarillas.redditservice.tracing.Trace;
 
 import net.dean.jraw.RedditClient;
 import net.dean.jraw.models.Listing;
@@ -11,7 +12,6 @@ import java.util.List;
 
 import rx.Observable;
 import rx.Subscriber;
-import timber.log.Timber;
 
 /**
  * An RxJava Observable that downloads a reddit User's subreddit subscriptions.
@@ -21,19 +21,16 @@ public class UserSubscriptions {
     private RedditClient mRedditClient;
 
     public UserSubscriptions(RedditClient redditClient) {
-        Timber.v("UserSubscriptions() called with: " + "redditClient = [" + redditClient + "]");
+        Trace.v("UserSubscriptions", "redditClient", redditClient);
         mRedditClient = redditClient;
     }
 
     public Observable<List<Subreddit>> getSubscriptions() {
-        Timber.v("getSubscriptions() called");
+        Trace.v("getSubscriptions");
         return Observable.create(new Observable.OnSubscribe<List<Subreddit>>() {
             @Override
             public void call(Subscriber<? super List<Subreddit>> subscriber) {
-                Timber.v("getSubscriptions call() called with: "
-                        + "subscriber = ["
-                        + subscriber
-                        + "]");
+                Trace.v("getSubscriptions call", "subscriber", subscriber);
                 UserSubredditsPaginator paginator =
                         new UserSubredditsPaginator(mRedditClient, "subscriber");
                 paginator.setLimit(RedditService.MAX_LINK_LIMIT);
@@ -2,6 +2,7 @@ package com.fernandobarillas.redditservice.observables;
 
 import com.fernandobarillas.redditservice.exceptions.NullAccountManagerException;
 import com.fernandobarillas.redditservice.requests.VoteRequest;
+import com.fernandobarillas.redditservice.tracing.Trace;
 
 import net.dean.jraw.ApiException;
 import net.dean.jraw.managers.AccountManager;
@@ -9,7 +10,6 @@ import net.dean.jraw.models.VoteDirection;
 
 import rx.Observable;
 import rx.Subscriber;
-import timber.log.Timber;
 
 /**
  * Created by fb on 12/15/15.
@@ -41,7 +41,7 @@ public class Voting {
     }
 
     private boolean vote() throws NullAccountManagerException, ApiException {
-        Timber.v("doInBackground() called");
+        Trace.v("vote");
         if (mAccountManager == null) {
             throw new NullAccountManagerException();
         }
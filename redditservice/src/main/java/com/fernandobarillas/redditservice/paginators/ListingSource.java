@@ -0,0 +1,103 @@
+package com.fernandobarillas.redditservice.paginators;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.cache.ListingKey;
+import com.fernandobarillas.redditservice.data.RedditData;
+import com.fernandobarillas.redditservice.requests.SubmissionRequest;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.DomainPaginator;
+import net.dean.jraw.paginators.Paginator;
+import net.dean.jraw.paginators.Sorting;
+import net.dean.jraw.paginators.TimePeriod;
+
+import java.util.Locale;
+
+/**
+ * A listing of submissions that can be paginated from its first page any number of times: a
+ * subreddit, a user's submissions or a domain. Each source has an ID that stays the same across
+ * runs, such as for storing a {@link com.fernandobarillas.redditservice.crawler.ListingCrawler}
+ * checkpoint under.
+ */
+public abstract class ListingSource {
+    private static final String TYPE_DOMAIN = "domain";
+
+    private final String mId;
+
+    private ListingSource(String id) {
+        mId = id;
+    }
+
+    /**
+     * @param domain     The domain to get the submissions of, such as {@code i.redd.it}
+     * @param sorting    The sorting to walk the domain's submissions in
+     * @param timePeriod The time period for sortings that support one, null otherwise
+     * @param linkLimit  The number of submissions to download per page
+     * @return A source for the submissions linking to a domain
+     */
+    public static ListingSource ofDomain(@NonNull final String domain,
+            final Sorting sorting,
+            @Nullable final TimePeriod timePeriod,
+            final int linkLimit) {
+        final String name = domain.toLowerCase(Locale.US);
+        String id = TYPE_DOMAIN + "/" + name + ":" + sorting + ":" + timePeriod + ":" + linkLimit;
+        return new ListingSource(id) {
+            @Override
+            public Paginator<Submission> newPaginator(RedditData redditData) {
+                DomainPaginator paginator = new DomainPaginator(redditData.mRedditClient, name);
+                paginator.setSorting(sorting);
+                if (timePeriod != null) paginator.setTimePeriod(timePeriod);
+                paginator.setLimit(linkLimit);
+                return paginator;
+            }
+        };
+    }
+
+    /**
+     * @param request A subreddit or user submissions request. The crawl starts at its after
+     *                cursor, which is part of the source's ID
+     * @return A source for the request's listing
+     */
+    public static ListingSource ofRequest(@NonNull final SubmissionRequest request) {
+        ListingKey key = ListingKey.of(request);
+        if (key == null) {
+            throw new IllegalArgumentException("Unsupported request type: " + request);
+        }
+        return new ListingSource(key.getKeyString()) {
+            @Override
+            public Paginator<Submission> newPaginator(RedditData redditData) {
+                return redditData.getPaginator(request);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof ListingSource && mId.equals(((ListingSource) o).mId);
+    }
+
+    @Override
+    public int hashCode() {
+        return mId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ListingSource{" + "mId='" + mId + '\'' + '}';
+    }
+
+    /**
+     * @return The ID identifying the source's listing across runs
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * @param redditData The data instance of the account crawling the source
+     * @return A new paginator positioned on the source's first page
+     */
+    public abstract Paginator<Submission> newPaginator(RedditData redditData);
+}
@@ -0,0 +1,349 @@
+package com.fernandobarillas.redditservice.paginators;
+
+import android.support.annotation.NonNull;
+
+import com.fernandobarillas.redditservice.data.AccountSession;
+import com.fernandobarillas.redditservice.utils.StringPool;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.internal.operators.BackpressureUtils;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
+
+/**
+ * A single feed built from several listings, such as a custom home feed made of subreddits,
+ * domains and users. Every source is downloaded in parallel and the sources are merged with a
+ * k-way merge, so Submissions stream out in order without the whole feed ever being sorted.
+ * <p>
+ * Each source keeps a buffer of downloaded Submissions. Its next page is requested in the
+ * background once its buffer runs low as Submissions are requested downstream, and the merge
+ * waits for a source only when its buffer is empty, since its next Submission could come first.
+ * The merged order is only exact when every source is itself sorted the same way as the feed:
+ * {@link Order#NEWEST} with {@link net.dean.jraw.paginators.Sorting#NEW} sources, {@link
+ * Order#SCORE} with {@link net.dean.jraw.paginators.Sorting#TOP} sources.
+ */
+public class MergedFeed {
+    /** Submissions left in a source's buffer below which its next page is requested by default */
+    public static final int DEFAULT_REFILL_THRESHOLD = 10;
+
+    private final AccountSession      mSession;
+    private final List<ListingSource> mSources;
+    private final Order               mOrder;
+    private final int                 mRefillThreshold;
+
+    private MergedFeed(Builder builder) {
+        mSession = builder.session;
+        mSources = builder.sources;
+        mOrder = builder.order;
+        mRefillThreshold = builder.refillThreshold;
+    }
+
+    /**
+     * @return An Observable that emits every Submission of every source in the feed's order, then
+     * completes once every source has reached its end. Each subscription starts every source over.
+     * Fails as soon as a source fails
+     */
+    public Observable<Submission> getSubmissions() {
+        return Observable.create(new Observable.OnSubscribe<Submission>() {
+            @Override
+            public void call(Subscriber<? super Submission> subscriber) {
+                MergeProducer producer = new MergeProducer(subscriber);
+                subscriber.add(producer);
+                subscriber.setProducer(producer);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "MergedFeed{" + "mSources=" + mSources + ", mOrder=" + mOrder + '}';
+    }
+
+    /**
+     * The order Submissions are merged in
+     */
+    public enum Order {
+        /** Most recently created first, by created_utc */
+        NEWEST("created_utc"),
+        /** Highest score first */
+        SCORE("score");
+
+        private final String mField;
+
+        Order(String field) {
+            mField = field;
+        }
+
+        long getKey(Submission submission) {
+            return submission.getDataNode().path(mField).asLong();
+        }
+    }
+
+    public static class Builder {
+        // Required parameters
+        private final AccountSession session;
+        private final Order          order;
+
+        // Optional parameters, using default values
+        private List<ListingSource> sources         = new ArrayList<>();
+        private int                 refillThreshold = DEFAULT_REFILL_THRESHOLD;
+
+        /**
+         * @param session The account to download the sources as
+         * @param order   The order to merge the sources in
+         */
+        public Builder(@NonNull AccountSession session, @NonNull Order order) {
+            this.session = session;
+            this.order = order;
+        }
+
+        public Builder addSource(@NonNull ListingSource source) {
+            if (!sources.contains(source)) sources.add(source);
+            return this;
+        }
+
+        public MergedFeed build() {
+            return new MergedFeed(this);
+        }
+
+        /**
+         * @param refillThreshold Submissions left in a source's buffer below which its next page
+         *                        is requested
+         */
+        public Builder setRefillThreshold(int refillThreshold) {
+            this.refillThreshold = Math.max(0, refillThreshold);
+            return this;
+        }
+    }
+
+    /**
+     * A Submission and the key it is merged by
+     */
+    private static class Item {
+        final Submission mSubmission;
+        final long       mKey;
+
+        Item(Submission submission, long key) {
+            mSubmission = submission;
+            mKey = key;
+        }
+    }
+
+    /**
+     * A downloaded page waiting to be added to its source's buffer by the merge loop
+     */
+    private static class Page {
+        final Head       mHead;
+        final List<Item> mItems;
+        final boolean    mIsLast;
+        final Throwable  mError;
+
+        Page(Head head, List<Item> items, boolean isLast, Throwable error) {
+            mHead = head;
+            mItems = items;
+            mIsLast = isLast;
+            mError = error;
+        }
+    }
+
+    /**
+     * The buffered Submissions of a single source. Only touched by the merge loop, except for the
+     * paginator which is only used by the source's single download in flight
+     */
+    private static class Head {
+        final Paginator<Submission> mPaginator;
+        final ArrayDeque<Item>      mBuffer = new ArrayDeque<>();
+
+        boolean mIsDownloading;
+        boolean mIsExhausted;
+
+        Head(Paginator<Submission> paginator) {
+            mPaginator = paginator;
+        }
+    }
+
+    /**
+     * Merges the sources for a single subscriber, emitting only as many Submissions as requested
+     */
+    private class MergeProducer implements Producer, Subscription {
+        private final Subscriber<? super Submission> mChild;
+        private final CompositeSubscription          mDownloads = new CompositeSubscription();
+        private final AtomicLong                     mRequested = new AtomicLong();
+        private final AtomicInteger                  mWip       = new AtomicInteger();
+        private final Queue<Page>                    mPages     = new ConcurrentLinkedQueue<>();
+
+        /** Sources with buffered Submissions, the one whose next Submission comes first on top */
+        private final PriorityQueue<Head> mReady;
+
+        /** Sources with an empty buffer that haven't reached their end, the merge waits on them */
+        private int     mWaiting;
+        private boolean mIsStarted;
+        private boolean mIsDone;
+
+        MergeProducer(Subscriber<? super Submission> child) {
+            mChild = child;
+            mReady = new PriorityQueue<>(Math.max(1, mSources.size()), new Comparator<Head>() {
+                @Override
+                public int compare(Head first, Head second) {
+                    // Highest key first
+                    long firstKey = first.mBuffer.peekFirst().mKey;
+                    long secondKey = second.mBuffer.peekFirst().mKey;
+                    return firstKey > secondKey ? -1 : firstKey == secondKey ? 0 : 1;
+                }
+            });
+        }
+
+        @Override
+        public boolean isUnsubscribed() {
+            return mDownloads.isUnsubscribed();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) return;
+            BackpressureUtils.getAndAddRequest(mRequested, n);
+            drain();
+        }
+
+        @Override
+        public void unsubscribe() {
+            mDownloads.unsubscribe();
+        }
+
+        private void download(final Head head) {
+            head.mIsDownloading = true;
+            Observable<Page> page = Observable.fromCallable(new Callable<Page>() {
+                @Override
+                public Page call() throws Exception {
+                    Listing<Submission> listing = head.mPaginator.next(true);
+                    List<Submission> children = listing.getChildren();
+                    List<Item> items = new ArrayList<>(children != null ? children.size() : 0);
+                    if (children != null) {
+                        StringPool.getListingPool().internSubmissions(children);
+                        for (Submission submission : children) {
+                            items.add(new Item(submission, mOrder.getKey(submission)));
+                        }
+                    }
+                    boolean isLast = items.isEmpty() || !head.mPaginator.hasNext();
+                    return new Page(head, items, isLast, null);
+                }
+            });
+            mDownloads.add(mSession.authenticated(page)
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(new Action1<Page>() {
+                        @Override
+                        public void call(Page page) {
+                            mPages.offer(page);
+                            drain();
+                        }
+                    }, new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable throwable) {
+                            mPages.offer(new Page(head, null, true, throwable));
+                            drain();
+                        }
+                    }));
+        }
+
+        private void drain() {
+            if (mWip.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                if (!mIsStarted) start();
+                if (mIsDone || !addPages()) return;
+
+                long requested = mRequested.get();
+                long emitted = 0;
+                while (emitted != requested && mWaiting == 0 && !mReady.isEmpty()) {
+                    if (mChild.isUnsubscribed()) return;
+                    Head head = mReady.poll();
+                    Item item = head.mBuffer.pollFirst();
+                    if (!head.mBuffer.isEmpty()) {
+                        mReady.offer(head);
+                    } else if (!head.mIsExhausted) {
+                        mWaiting++;
+                    }
+                    refill(head);
+                    mChild.onNext(item.mSubmission);
+                    emitted++;
+                }
+                if (emitted != 0) BackpressureUtils.produced(mRequested, emitted);
+
+                if (mWaiting == 0 && mReady.isEmpty()) {
+                    mIsDone = true;
+                    mDownloads.unsubscribe();
+                    mChild.onCompleted();
+                    return;
+                }
+                missed = mWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Adds the downloaded pages to their sources' buffers
+         *
+         * @return False if a source failed, in which case the subscriber has been notified
+         */
+        private boolean addPages() {
+            Page page;
+            while ((page = mPages.poll()) != null) {
+                if (page.mError != null) {
+                    mIsDone = true;
+                    mDownloads.unsubscribe();
+                    mChild.onError(page.mError);
+                    return false;
+                }
+                Head head = page.mHead;
+                head.mIsDownloading = false;
+                head.mIsExhausted = page.mIsLast;
+                boolean wasEmpty = head.mBuffer.isEmpty();
+                head.mBuffer.addAll(page.mItems);
+                if (!wasEmpty) continue;
+                // The merge was waiting on this source
+                mWaiting--;
+                if (!head.mBuffer.isEmpty()) {
+                    mReady.offer(head);
+                    refill(head);
+                } else if (!head.mIsExhausted) {
+                    // An empty page that isn't the last one, keep waiting on the next one
+                    mWaiting++;
+                    refill(head);
+                }
+            }
+            return true;
+        }
+
+        private void refill(Head head) {
+            if (head.mIsDownloading || head.mIsExhausted) return;
+            if (head.mBuffer.size() <= mRefillThreshold) download(head);
+        }
+
+        private void start() {
+            mIsStarted = true;
+            for (ListingSource source : mSources) {
+                Head head = new Head(source.newPaginator(mSession.getRedditData()));
+                mWaiting++;
+                download(head);
+            }
+        }
+    }
+}
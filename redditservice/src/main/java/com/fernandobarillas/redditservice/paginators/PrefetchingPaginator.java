@@ -0,0 +1,268 @@
+package com.fernandobarillas.redditservice.paginators;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.http.RateLimiter;
+import com.fernandobarillas.redditservice.tracing.Trace;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.observables.ConnectableObservable;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+import rx.subscriptions.CompositeSubscription;
+import timber.log.Timber;
+
+/**
+ * Wraps a {@link Paginator} of Submissions, including {@link UserSubmissionPaginator}, and
+ * downloads its next pages in the background before they are requested. Prefetching is driven by
+ * the position of the last visible item: call {@link #onItemVisible(int)} as the user scrolls and
+ * once fewer than {@link #setPrefetchDistance(int) distance} items are left below it, up to {@link
+ * #setPrefetchDepth(int) depth} pages are downloaded ahead. {@link #getMoreSubmissions()} then
+ * returns the prefetched page without waiting on the network.
+ * <p>
+ * Pages are always downloaded one after the other since the wrapped paginator keeps the cursor
+ * for the next page: each page only starts once the page before it has completed. A page is only
+ * taken from the paginator once {@link #getMoreSubmissions()} is subscribed to, and from then on
+ * its download belongs to that subscriber: unsubscribing before the page has been downloaded
+ * cancels it, and the pages queued behind it move up. Call {@link #release()} once you no longer
+ * need the paginator to cancel any prefetch in flight and drop the prefetched pages.
+ * <p>
+ * When a {@link RateLimiter} is set, no pages are prefetched while it reports that requests are
+ * being throttled so that prefetches don't eat into the budget needed by the user's own requests.
+ */
+public class PrefetchingPaginator {
+    /** Number of pages downloaded ahead by default */
+    public static final int DEFAULT_PREFETCH_DEPTH    = 1;
+    /** Number of items left below the last visible item that triggers prefetching by default */
+    public static final int DEFAULT_PREFETCH_DISTANCE = 25;
+
+    private final Paginator<Submission>                                      mPaginator;
+    private final Func1<Paginator<Submission>, Observable<List<Submission>>> mPageLoader;
+    private final Deque<Page>                                                mPages;
+    private final CompositeSubscription                                      mPrefetches;
+
+    /** Completes once the last page started has completed, holds no reference to the page */
+    private Observable<Void> mLastPageDone;
+    private RateLimiter      mRateLimiter;
+
+    private int     mPrefetchDepth    = DEFAULT_PREFETCH_DEPTH;
+    private int     mPrefetchDistance = DEFAULT_PREFETCH_DISTANCE;
+    private int     mItemCount;
+    private boolean mIsEnd;
+    private boolean mIsReleased;
+
+    /**
+     * @param paginator  The paginator to wrap
+     * @param pageLoader Builds the request for the next page of the passed-in paginator. The
+     *                   request must not do any work until it is subscribed to
+     */
+    public PrefetchingPaginator(@NonNull Paginator<Submission> paginator,
+            @NonNull Func1<Paginator<Submission>, Observable<List<Submission>>> pageLoader) {
+        mPaginator = paginator;
+        mPageLoader = pageLoader;
+        mPages = new ArrayDeque<>();
+        mPrefetches = new CompositeSubscription();
+    }
+
+    /**
+     * Gets the next page, either prefetched or downloaded right away when no page is waiting
+     *
+     * @return An Observable that takes the next page when subscribed to and emits its Submissions
+     * on the main thread, so that every subscription gets a page of its own. Empty once the
+     * listing has no more pages
+     */
+    public Observable<Submission> getMoreSubmissions() {
+        Trace.v("getMoreSubmissions");
+        return Observable.defer(new Func0<Observable<List<Submission>>>() {
+            @Override
+            public Observable<List<Submission>> call() {
+                synchronized (PrefetchingPaginator.this) {
+                    if (mIsReleased) return Observable.empty();
+                    Page page = mPages.pollFirst();
+                    if (page == null) page = startPage();
+                    return page.take();
+                }
+            }
+        }).doOnNext(new Action1<List<Submission>>() {
+            @Override
+            public void call(List<Submission> submissions) {
+                synchronized (PrefetchingPaginator.this) {
+                    mItemCount += submissions.size();
+                }
+            }
+        }).concatMap(new Func1<List<Submission>, Observable<Submission>>() {
+            @Override
+            public Observable<Submission> call(List<Submission> submissions) {
+                return Observable.from(submissions);
+            }
+        }).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * @return The wrapped paginator
+     */
+    public Paginator<Submission> getPaginator() {
+        return mPaginator;
+    }
+
+    /**
+     * @return The number of pages downloaded ahead and not returned yet
+     */
+    public synchronized int getPrefetchedPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * @return True once the wrapped paginator has returned the last page of the listing
+     */
+    public synchronized boolean isEnd() {
+        return mIsEnd;
+    }
+
+    /**
+     * Tells the paginator how far down the listing the user has scrolled, prefetching pages when
+     * the end of the downloaded items is getting close
+     *
+     * @param index The position of the last visible item, counting every item returned so far
+     */
+    public synchronized void onItemVisible(int index) {
+        if (mIsReleased || mIsEnd) return;
+        if (mItemCount - index > mPrefetchDistance) return;
+        if (mRateLimiter != null && mRateLimiter.getState().isThrottled()) {
+            Timber.d("onItemVisible: Requests are throttled, not prefetching");
+            return;
+        }
+        while (mPages.size() < mPrefetchDepth) {
+            mPages.addLast(startPage());
+        }
+    }
+
+    /**
+     * Cancels any page download in flight and drops the prefetched pages. The paginator returns
+     * no more pages after being released
+     */
+    public synchronized void release() {
+        Trace.v("release");
+        mIsReleased = true;
+        mPrefetches.unsubscribe();
+        mPages.clear();
+        mLastPageDone = null;
+    }
+
+    /**
+     * @param prefetchDepth The number of pages to download ahead. 0 disables prefetching
+     */
+    public synchronized void setPrefetchDepth(int prefetchDepth) {
+        mPrefetchDepth = Math.max(0, prefetchDepth);
+    }
+
+    /**
+     * @param prefetchDistance The number of items left below the last visible item at which the
+     *                         next pages start downloading
+     */
+    public synchronized void setPrefetchDistance(int prefetchDistance) {
+        mPrefetchDistance = prefetchDistance;
+    }
+
+    /**
+     * @param rateLimiter The rate limiter to check before prefetching, null to always prefetch
+     */
+    public synchronized void setRateLimiter(@Nullable RateLimiter rateLimiter) {
+        mRateLimiter = rateLimiter;
+    }
+
+    /**
+     * Starts downloading the page after the last page started, as soon as that page completes or
+     * is cancelled. Must be called while holding the lock
+     *
+     * @return The page, replayed to the subscriber that takes it
+     */
+    private Page startPage() {
+        Observable<List<Submission>> source = Observable.defer(
+                new Func0<Observable<List<Submission>>>() {
+                    @Override
+                    public Observable<List<Submission>> call() {
+                        return mPageLoader.call(mPaginator);
+                    }
+                });
+        if (mLastPageDone != null) {
+            source = mLastPageDone.ignoreElements()
+                    .map(new Func1<Void, List<Submission>>() {
+                        @Override
+                        public List<Submission> call(Void aVoid) {
+                            return null;
+                        }
+                    })
+                    .concatWith(source);
+        }
+
+        final AsyncSubject<Void> pageDone = AsyncSubject.create();
+        // Failed and cancelled pages complete too so that the pages queued behind them still run
+        Action0 completePage = new Action0() {
+            @Override
+            public void call() {
+                pageDone.onCompleted();
+            }
+        };
+        ConnectableObservable<List<Submission>> page = source
+                .defaultIfEmpty(Collections.<Submission>emptyList())
+                .doOnNext(new Action1<List<Submission>>() {
+                    @Override
+                    public void call(List<Submission> submissions) {
+                        synchronized (PrefetchingPaginator.this) {
+                            if (submissions.isEmpty()) mIsEnd = true;
+                        }
+                    }
+                })
+                .doOnTerminate(completePage)
+                .doOnUnsubscribe(completePage)
+                .subscribeOn(Schedulers.io())
+                .replay();
+        Subscription connection = page.connect();
+        mPrefetches.add(connection);
+        mLastPageDone = pageDone;
+        return new Page(page, connection);
+    }
+
+    /**
+     * A page that has started downloading, or is queued to once the page before it completes
+     */
+    private class Page {
+        final Observable<List<Submission>> mReplay;
+        final Subscription                 mConnection;
+
+        Page(Observable<List<Submission>> replay, Subscription connection) {
+            mReplay = replay;
+            mConnection = connection;
+        }
+
+        /**
+         * @return An Observable that replays the page to the subscriber taking it. Unsubscribing
+         * cancels the download if the page hasn't completed yet
+         */
+        Observable<List<Submission>> take() {
+            return mReplay.doOnUnsubscribe(new Action0() {
+                @Override
+                public void call() {
+                    // Also unsubscribes the connection, which does nothing once it has completed
+                    mPrefetches.remove(mConnection);
+                }
+            });
+        }
+    }
+}
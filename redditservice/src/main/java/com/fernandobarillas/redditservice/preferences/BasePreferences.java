@@ -1,6 +1,7 @@
 package com.fernandobarillas.redditservice.preferences;
 
 import android.content.SharedPreferences;
+import android.text.TextUtils;
 
 /**
  * Created by fb on 5/18/16.
@@ -8,11 +9,26 @@ import android.content.SharedPreferences;
 public class BasePreferences {
     protected SharedPreferences mSharedPreferences;
 
+    /**
+     * Stores a long, skipping the write when the stored value is already the same since every
+     * apply() schedules a write of the whole file to disk
+     *
+     * @param key   The preference to store the value in
+     * @param value The value to store
+     */
     protected void setLongPreference(String key, long value) {
+        if (mSharedPreferences.contains(key) && mSharedPreferences.getLong(key, 0) == value) return;
         mSharedPreferences.edit().putLong(key, value).apply();
     }
 
+    /**
+     * Stores a String, skipping the write when the stored value is already the same
+     *
+     * @param key   The preference to store the value in
+     * @param value The value to store, null to store no value
+     */
     protected void setStringPreference(String key, String value) {
+        if (TextUtils.equals(mSharedPreferences.getString(key, null), value)) return;
         mSharedPreferences.edit().putString(key, value).apply();
     }
 }
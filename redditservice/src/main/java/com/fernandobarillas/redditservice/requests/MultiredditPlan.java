@@ -0,0 +1,138 @@
+package com.fernandobarillas.redditservice.requests;
+
+import com.fernandobarillas.redditservice.data.RedditData;
+import com.fernandobarillas.redditservice.paginators.ListingSource;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.SubredditPaginator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The requests a {@link MultiredditPlanner} packed a set of subreddits into
+ */
+public class MultiredditPlan {
+    private final List<SubredditRequest> mRequests;
+    private final List<List<String>>     mSubreddits;
+    private final List<String>           mRejected;
+    private final Map<String, String>    mNames;
+    private final int                    mSubredditCount;
+
+    MultiredditPlan(List<SubredditRequest> requests,
+            List<List<String>> subreddits,
+            List<String> rejected) {
+        mRequests = Collections.unmodifiableList(requests);
+        mSubreddits = Collections.unmodifiableList(subreddits);
+        mRejected = Collections.unmodifiableList(rejected);
+        mNames = new HashMap<>();
+        for (List<String> group : subreddits) {
+            for (String subreddit : group) {
+                mNames.put(subreddit.toLowerCase(Locale.US), subreddit);
+            }
+        }
+        mSubredditCount = mNames.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MultiredditPlan{" +
+                "mRequests=" + mRequests.size() +
+                ", mSubredditCount=" + mSubredditCount +
+                ", mRejected=" + mRejected.size() +
+                '}';
+    }
+
+    /**
+     * @param redditData The instance to instantiate the paginators with
+     * @return A new paginator for each request, in the same order as {@link #getRequests()}
+     */
+    public List<SubredditPaginator> getPaginators(RedditData redditData) {
+        List<SubredditPaginator> paginators = new ArrayList<>(mRequests.size());
+        for (SubredditRequest request : mRequests) {
+            paginators.add(redditData.getSubredditPaginator(request));
+        }
+        return paginators;
+    }
+
+    /**
+     * @return The names that were left out of the plan, as passed to the planner: empty names, and
+     * names that are already plus-joined since their parts' sizes are unknown. Request them on
+     * their own if needed
+     */
+    public List<String> getRejected() {
+        return mRejected;
+    }
+
+    public int getRequestCount() {
+        return mRequests.size();
+    }
+
+    /**
+     * @return The requests to make, each one for the plus-joined names of its subreddits
+     */
+    public List<SubredditRequest> getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * @return The requests saved on every page compared to requesting each subreddit on its own
+     */
+    public int getSavedRequests() {
+        return mSubredditCount - mRequests.size();
+    }
+
+    /**
+     * @return A source for each request, to crawl or merge the requests with
+     */
+    public List<ListingSource> getSources() {
+        List<ListingSource> sources = new ArrayList<>(mRequests.size());
+        for (SubredditRequest request : mRequests) {
+            sources.add(ListingSource.ofRequest(request));
+        }
+        return sources;
+    }
+
+    public int getSubredditCount() {
+        return mSubredditCount;
+    }
+
+    /**
+     * @param request The index of the request, as in {@link #getRequests()}
+     * @return The names of the subreddits packed into the request
+     */
+    public List<String> getSubreddits(int request) {
+        return mSubreddits.get(request);
+    }
+
+    /**
+     * Splits a page of a planned request back out by subreddit. A subreddit's share of a merged
+     * page can be smaller than its own page would have been, down to nothing
+     *
+     * @param page The Submissions of a page of one of the planned requests
+     * @return The page's Submissions grouped by subreddit, keyed by the names the subreddits were
+     * planned with, in the order they first appear on the page. Submissions of subreddits that
+     * weren't planned are left out
+     */
+    public Map<String, List<Submission>> split(List<Submission> page) {
+        Map<String, List<Submission>> pages = new LinkedHashMap<>();
+        for (Submission submission : page) {
+            String subredditName = submission.getSubredditName();
+            if (subredditName == null) continue;
+            String name = mNames.get(subredditName.toLowerCase(Locale.US));
+            if (name == null) continue;
+            List<Submission> submissions = pages.get(name);
+            if (submissions == null) {
+                submissions = new ArrayList<>();
+                pages.put(name, submissions);
+            }
+            submissions.add(submission);
+        }
+        return pages;
+    }
+}
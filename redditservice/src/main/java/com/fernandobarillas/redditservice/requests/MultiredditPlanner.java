@@ -0,0 +1,226 @@
+package com.fernandobarillas.redditservice.requests;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fernandobarillas.redditservice.tracing.Trace;
+
+import net.dean.jraw.paginators.Sorting;
+import net.dean.jraw.paginators.TimePeriod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packs a set of subreddits into as few requests as possible using reddit's plus-joined paths,
+ * where {@code /r/a+b+c} returns a single listing made of the submissions of all three
+ * subreddits. Forty subreddits can then be paged through with one request per page instead of
+ * forty.
+ * <p>
+ * A merged listing is ranked across all of its subreddits, so a busy subreddit packed with a quiet
+ * one pushes the quiet one's submissions off the first pages. When subscriber counts are known,
+ * subreddits are only packed together when their counts are within {@link
+ * Builder#setMaxSizeRatio(int)} of each other. Requests are also kept within a maximum number of
+ * subreddits and a maximum URL length.
+ */
+public class MultiredditPlanner {
+    /** Subreddits packed into a single request at most by default */
+    public static final int DEFAULT_MAX_SUBREDDITS = 50;
+    /** Length of a request's URL at most by default, well within what reddit and proxies accept */
+    public static final int DEFAULT_MAX_URL_LENGTH = 2000;
+    /** Factor between the largest and smallest subscriber count of a request at most by default */
+    public static final int DEFAULT_MAX_SIZE_RATIO = 20;
+
+    /**
+     * Length of a request's URL without the joined subreddit names, for the longest sorting, time
+     * period and after cursor: {@code https://oauth.reddit.com/r/<names>/controversial.json
+     * ?limit=100&after=t3_xxxxxxxxxx&t=month&raw_json=1} rounded up
+     */
+    private static final int    URL_OVERHEAD = 128;
+    private static final String SEPARATOR    = "+";
+
+    private final Sorting    mSorting;
+    private final TimePeriod mTimePeriod;
+    private final int        mLinkLimit;
+    private final int        mMaxSubreddits;
+    private final int        mMaxUrlLength;
+    private final int        mMaxSizeRatio;
+
+    private MultiredditPlanner(Builder builder) {
+        mSorting = builder.sorting;
+        mTimePeriod = builder.timePeriod;
+        mLinkLimit = builder.linkLimit;
+        mMaxSubreddits = builder.maxSubreddits;
+        mMaxUrlLength = builder.maxUrlLength;
+        mMaxSizeRatio = builder.maxSizeRatio;
+    }
+
+    /**
+     * Plans subreddits whose sizes are unknown. They are packed only by count and URL length
+     *
+     * @param subreddits The names of the subreddits to request. Duplicates are requested once,
+     *                   empty and plus-joined names are rejected
+     * @return The plan for requesting the subreddits
+     */
+    public MultiredditPlan plan(@NonNull Iterable<String> subreddits) {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (String subreddit : subreddits) {
+            sizes.put(subreddit, 0L);
+        }
+        return plan(sizes);
+    }
+
+    /**
+     * @param subscriberCounts The subscriber count of each subreddit to request, such as from
+     *                         {@link net.dean.jraw.models.Subreddit#getSubscriberCount()}. Counts
+     *                         of 0 or less are treated as unknown and packed together. Empty and
+     *                         plus-joined names are rejected, see {@link
+     *                         MultiredditPlan#getRejected()}
+     * @return The plan for requesting the subreddits
+     */
+    public MultiredditPlan plan(@NonNull Map<String, Long> subscriberCounts) {
+        List<Entry> entries = new ArrayList<>(subscriberCounts.size());
+        List<String> rejected = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, Long> count : subscriberCounts.entrySet()) {
+            String name = count.getKey() != null ? count.getKey().trim() : "";
+            // A name that is already plus-joined would be packed without its parts' sizes
+            if (name.isEmpty() || name.contains(SEPARATOR)) {
+                rejected.add(count.getKey());
+                continue;
+            }
+            String key = name.toLowerCase(Locale.US);
+            if (!seen.add(key)) continue;
+            Long size = count.getValue();
+            entries.add(new Entry(name, size != null ? size : 0));
+        }
+
+        // Largest first, so that every run of similar sizes is contiguous and can be packed
+        // greedily. Unknown sizes sort last
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry first, Entry second) {
+                return first.mSize < second.mSize ? 1 : first.mSize == second.mSize ? 0 : -1;
+            }
+        });
+
+        List<SubredditRequest> requests = new ArrayList<>();
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        long groupLargest = 0;
+        int groupLength = 0;
+        for (Entry entry : entries) {
+            int length = groupLength + (group.isEmpty() ? 0 : SEPARATOR.length())
+                    + entry.mName.length();
+            if (!group.isEmpty() && !fits(group.size() + 1, length, groupLargest, entry.mSize)) {
+                requests.add(toRequest(group));
+                groups.add(group);
+                group = new ArrayList<>();
+                length = entry.mName.length();
+            }
+            if (group.isEmpty()) groupLargest = entry.mSize;
+            group.add(entry.mName);
+            groupLength = length;
+        }
+        if (!group.isEmpty()) {
+            requests.add(toRequest(group));
+            groups.add(group);
+        }
+
+        Trace.d("plan", "subreddits", entries.size(), "requests", requests.size());
+        return new MultiredditPlan(requests, groups, rejected);
+    }
+
+    private boolean fits(int count, int length, long largest, long size) {
+        if (count > mMaxSubreddits || URL_OVERHEAD + length > mMaxUrlLength) return false;
+        // Known and unknown sizes are never packed together
+        if ((largest > 0) != (size > 0)) return false;
+        // Multiplying keeps the fraction a division would truncate, a ratio of 20.5 is over 20
+        return size <= 0 || largest <= size * mMaxSizeRatio;
+    }
+
+    private SubredditRequest toRequest(List<String> group) {
+        StringBuilder names = new StringBuilder();
+        for (String subreddit : group) {
+            if (names.length() > 0) names.append(SEPARATOR);
+            names.append(subreddit);
+        }
+        return new SubredditRequest.Builder(names.toString()).setSorting(mSorting)
+                .setTimePeriod(mTimePeriod)
+                .setLinkLimit(mLinkLimit)
+                .build();
+    }
+
+    public static class Builder {
+        // Optional parameters, using default values
+        private Sorting    sorting       = Sorting.HOT;
+        private TimePeriod timePeriod    = null;
+        private int        linkLimit     = 100;
+        private int        maxSubreddits = DEFAULT_MAX_SUBREDDITS;
+        private int        maxUrlLength  = DEFAULT_MAX_URL_LENGTH;
+        private int        maxSizeRatio  = DEFAULT_MAX_SIZE_RATIO;
+
+        public MultiredditPlanner build() {
+            return new MultiredditPlanner(this);
+        }
+
+        public Builder setLinkLimit(int linkLimit) {
+            this.linkLimit = linkLimit;
+            return this;
+        }
+
+        /**
+         * @param maxSizeRatio The factor between the largest and smallest subscriber count of a
+         *                     request at most. Lower values keep quiet subreddits visible on the
+         *                     first pages at the cost of more requests
+         */
+        public Builder setMaxSizeRatio(int maxSizeRatio) {
+            this.maxSizeRatio = Math.max(1, maxSizeRatio);
+            return this;
+        }
+
+        /**
+         * @param maxSubreddits The number of subreddits packed into a single request at most
+         */
+        public Builder setMaxSubreddits(int maxSubreddits) {
+            this.maxSubreddits = Math.max(1, maxSubreddits);
+            return this;
+        }
+
+        /**
+         * @param maxUrlLength The length of a request's URL at most. A subreddit whose name alone
+         *                     goes over is still requested on its own
+         */
+        public Builder setMaxUrlLength(int maxUrlLength) {
+            this.maxUrlLength = maxUrlLength;
+            return this;
+        }
+
+        public Builder setSorting(Sorting sorting) {
+            this.sorting = sorting;
+            return this;
+        }
+
+        public Builder setTimePeriod(@Nullable TimePeriod timePeriod) {
+            this.timePeriod = timePeriod;
+            return this;
+        }
+    }
+
+    private static class Entry {
+        final String mName;
+        final long   mSize;
+
+        Entry(String name, long size) {
+            mName = name;
+            mSize = size;
+        }
+    }
+}
@@ -3,8 +3,12 @@ package com.fernandobarillas.redditservice.requests;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.fernandobarillas.redditservice.utils.StartupTimer;
+
 import net.dean.jraw.http.UserAgent;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by fb on 7/27/16.
  */
@@ -13,6 +17,11 @@ public class StartServiceRequest {
     String    mClientId;
     String    mRedirectUri;
     UserAgent mAppUserAgent;
+    boolean   mIsPrewarmEnabled;
+    int       mMaxIdleConnections;
+    long      mKeepAliveDuration;
+
+    StartupTimer mStartupTimer;
 
     /**
      * Builds a request to start the {@link com.fernandobarillas.redditservice.RedditService} using
@@ -42,6 +51,9 @@ public class StartServiceRequest {
                 ", mClientId='" + mClientId + '\'' +
                 ", mRedirectUri='" + mRedirectUri + '\'' +
                 ", mAppUserAgent=" + mAppUserAgent +
+                ", mIsPrewarmEnabled=" + mIsPrewarmEnabled +
+                ", mMaxIdleConnections=" + mMaxIdleConnections +
+                ", mKeepAliveDuration=" + mKeepAliveDuration +
                 '}';
     }
 
@@ -53,11 +65,76 @@ public class StartServiceRequest {
         return mClientId;
     }
 
+    /**
+     * @return The time in milliseconds idle connections are kept open for, 0 to use the
+     * OkHttpClient's own connection pool
+     */
+    public long getKeepAliveDuration() {
+        return mKeepAliveDuration;
+    }
+
+    public int getMaxIdleConnections() {
+        return mMaxIdleConnections;
+    }
+
     public String getRedirectUri() {
         return mRedirectUri;
     }
 
+    /**
+     * @return The timer to record the phases of starting the service with, null if not timed
+     */
+    @Nullable
+    public StartupTimer getStartupTimer() {
+        return mStartupTimer;
+    }
+
     public String getUsername() {
         return mUsername;
     }
+
+    public boolean isPrewarmEnabled() {
+        return mIsPrewarmEnabled;
+    }
+
+    /**
+     * Sets how long connections to reddit are kept open while idle. By default the OkHttpClient's
+     * own connection pool is used, which closes connections after 5 minutes. A longer duration
+     * keeps the HTTP/2 connection around between sessions of browsing
+     *
+     * @param maxIdleConnections The number of idle connections to keep open
+     * @param keepAliveDuration  The time to keep an idle connection open for
+     * @param timeUnit           The unit of the duration
+     * @return This request, for chaining
+     */
+    public StartServiceRequest setKeepAlive(int maxIdleConnections,
+            long keepAliveDuration,
+            @NonNull TimeUnit timeUnit) {
+        mMaxIdleConnections = maxIdleConnections;
+        mKeepAliveDuration = timeUnit.toMillis(keepAliveDuration);
+        return this;
+    }
+
+    /**
+     * Sets whether to open the connections to reddit's hosts while the service authenticates, so
+     * that the first request doesn't wait on the DNS lookup and the TLS and HTTP/2 setup
+     *
+     * @param isPrewarmEnabled True to open the connections when the service starts
+     * @return This request, for chaining
+     */
+    public StartServiceRequest setPrewarmEnabled(boolean isPrewarmEnabled) {
+        mIsPrewarmEnabled = isPrewarmEnabled;
+        return this;
+    }
+
+    /**
+     * Sets a timer for the service to record how long each phase of starting it takes
+     *
+     * @param startupTimer The timer to record the phases with, null to not time the start
+     * @return This request, for chaining
+     */
+    public StartServiceRequest setStartupTimer(@Nullable StartupTimer startupTimer) {
+        mStartupTimer = startupTimer;
+        return this;
+    }
 }
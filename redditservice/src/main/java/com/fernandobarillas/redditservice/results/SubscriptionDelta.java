@@ -0,0 +1,71 @@
+package com.fernandobarillas.redditservice.results;
+
+import net.dean.jraw.models.Subreddit;
+
+import java.util.List;
+
+/**
+ * The changes to a user's subreddit subscriptions between two snapshots
+ */
+public class SubscriptionDelta {
+    private final List<Subreddit> mAdded;
+    private final List<Subreddit> mRemoved;
+    private final List<Subreddit> mSubscriptions;
+    private final boolean         mIsCachedData;
+
+    public SubscriptionDelta(
+            List<Subreddit> added,
+            List<Subreddit> removed,
+            List<Subreddit> subscriptions,
+            boolean isCachedData) {
+        mAdded = added;
+        mRemoved = removed;
+        mSubscriptions = subscriptions;
+        mIsCachedData = isCachedData;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionDelta{" +
+                "mAdded=" + mAdded.size() +
+                ", mRemoved=" + mRemoved.size() +
+                ", mSubscriptions=" + mSubscriptions.size() +
+                ", mIsCachedData=" + mIsCachedData +
+                '}';
+    }
+
+    /**
+     * @return The subreddits that weren't in the previous snapshot
+     */
+    public List<Subreddit> getAdded() {
+        return mAdded;
+    }
+
+    /**
+     * @return The subreddits from the previous snapshot that are no longer subscribed to
+     */
+    public List<Subreddit> getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * @return Every subscribed subreddit in this snapshot
+     */
+    public List<Subreddit> getSubscriptions() {
+        return mSubscriptions;
+    }
+
+    /**
+     * @return True if nothing was added or removed
+     */
+    public boolean isEmpty() {
+        return mAdded.isEmpty() && mRemoved.isEmpty();
+    }
+
+    /**
+     * @return True if this snapshot was loaded from storage rather than from the reddit API
+     */
+    public boolean isCachedData() {
+        return mIsCachedData;
+    }
+}
@@ -0,0 +1,35 @@
+package com.fernandobarillas.redditservice.tracing;
+
+import android.util.Log;
+
+import timber.log.Timber;
+
+/**
+ * Writes traced events to Timber, at the event's level and in the format the library's log calls
+ * used before tracing was added. Add it with {@link Trace#addSink(Trace.Sink)} to keep the
+ * library's verbose output in debug builds.
+ */
+public class TimberSink implements Trace.Sink {
+    private static final String TAG = "RedditService";
+
+    @Override
+    public void onEvent(TraceEvent event) {
+        switch (event.getLevel()) {
+            case Log.VERBOSE:
+                Timber.tag(TAG).v("%s", event);
+                break;
+            case Log.DEBUG:
+                Timber.tag(TAG).d("%s", event);
+                break;
+            case Log.INFO:
+                Timber.tag(TAG).i("%s", event);
+                break;
+            case Log.WARN:
+                Timber.tag(TAG).w("%s", event);
+                break;
+            default:
+                Timber.tag(TAG).e("%s", event);
+                break;
+        }
+    }
+}
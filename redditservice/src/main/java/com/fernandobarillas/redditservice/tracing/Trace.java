@@ -0,0 +1,157 @@
+package com.fernandobarillas.redditservice.tracing;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Structured, level-gated tracing for the library. Each event has a name, such as the method it
+ * was recorded in, and up to three named fields. Events are handed to every added {@link Sink},
+ * for instance a {@link TimberSink}.
+ * <p>
+ * While no sink is added, or the event's level is below {@link #setLevel(int)}, recording an event
+ * is a single volatile read: nothing is allocated and no field's {@link Object#toString()} is
+ * called. Primitive field values are boxed at the call site though, so guard events recording
+ * large numbers with {@link #isEnabled(int)} on hot paths.
+ */
+public final class Trace {
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG   = Log.DEBUG;
+    public static final int INFO    = Log.INFO;
+
+    /** Level events must be at or above when no sink is added, higher than every level */
+    private static final int DISABLED = Integer.MAX_VALUE;
+
+    private static final Object LOCK = new Object();
+
+    private static volatile Sink[] sSinks     = new Sink[0];
+    private static volatile int    sThreshold = DISABLED;
+
+    private static int sLevel = VERBOSE;
+
+    private Trace() {
+    }
+
+    /**
+     * Starts handing events to a sink
+     *
+     * @param sink The sink to add
+     */
+    public static void addSink(@NonNull Sink sink) {
+        synchronized (LOCK) {
+            Sink[] sinks = Arrays.copyOf(sSinks, sSinks.length + 1);
+            sinks[sinks.length - 1] = sink;
+            sSinks = sinks;
+            updateThreshold();
+        }
+    }
+
+    public static void d(String event) {
+        if (DEBUG >= sThreshold) {
+            dispatch(new TraceEvent(DEBUG, event, null, null, null, null, null, null));
+        }
+    }
+
+    public static void d(String event, String key, Object value) {
+        if (DEBUG >= sThreshold) {
+            dispatch(new TraceEvent(DEBUG, event, key, value, null, null, null, null));
+        }
+    }
+
+    public static void d(String event, String key1, Object value1, String key2, Object value2) {
+        if (DEBUG >= sThreshold) {
+            dispatch(new TraceEvent(DEBUG, event, key1, value1, key2, value2, null, null));
+        }
+    }
+
+    public static void i(String event, String key, Object value) {
+        if (INFO >= sThreshold) {
+            dispatch(new TraceEvent(INFO, event, key, value, null, null, null, null));
+        }
+    }
+
+    /**
+     * @param level The level to check, such as {@link #VERBOSE}
+     * @return True if events at the passed-in level are handed to the sinks
+     */
+    public static boolean isEnabled(int level) {
+        return level >= sThreshold;
+    }
+
+    /**
+     * Stops handing events to a sink
+     *
+     * @param sink The sink to remove
+     */
+    public static void removeSink(@NonNull Sink sink) {
+        synchronized (LOCK) {
+            Sink[] sinks = new Sink[sSinks.length];
+            int count = 0;
+            for (Sink current : sSinks) {
+                if (current != sink) sinks[count++] = current;
+            }
+            sSinks = Arrays.copyOf(sinks, count);
+            updateThreshold();
+        }
+    }
+
+    /**
+     * @param level The level below which events are dropped, {@link #VERBOSE} by default
+     */
+    public static void setLevel(int level) {
+        synchronized (LOCK) {
+            sLevel = level;
+            updateThreshold();
+        }
+    }
+
+    public static void v(String event) {
+        if (VERBOSE >= sThreshold) {
+            dispatch(new TraceEvent(VERBOSE, event, null, null, null, null, null, null));
+        }
+    }
+
+    public static void v(String event, String key, Object value) {
+        if (VERBOSE >= sThreshold) {
+            dispatch(new TraceEvent(VERBOSE, event, key, value, null, null, null, null));
+        }
+    }
+
+    public static void v(String event, String key1, Object value1, String key2, Object value2) {
+        if (VERBOSE >= sThreshold) {
+            dispatch(new TraceEvent(VERBOSE, event, key1, value1, key2, value2, null, null));
+        }
+    }
+
+    public static void v(String event,
+            String key1,
+            Object value1,
+            String key2,
+            Object value2,
+            String key3,
+            Object value3) {
+        if (VERBOSE >= sThreshold) {
+            dispatch(new TraceEvent(VERBOSE, event, key1, value1, key2, value2, key3, value3));
+        }
+    }
+
+    private static void dispatch(TraceEvent event) {
+        for (Sink sink : sSinks) {
+            sink.onEvent(event);
+        }
+    }
+
+    /** Must be called while holding the lock */
+    private static void updateThreshold() {
+        sThreshold = sSinks.length == 0 ? DISABLED : sLevel;
+    }
+
+    /**
+     * Receives every event at or above the tracing level. Called on the thread recording the
+     * event, so implementations must be thread-safe and quick
+     */
+    public interface Sink {
+        void onEvent(TraceEvent event);
+    }
+}
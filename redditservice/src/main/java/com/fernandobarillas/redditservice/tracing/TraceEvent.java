@@ -0,0 +1,100 @@
+package com.fernandobarillas.redditservice.tracing;
+
+import android.support.annotation.Nullable;
+
+/**
+ * A single traced event: its level, name, the thread and time it was recorded at, and up to three
+ * named fields. Field values are kept as-is and are only converted to strings by the sinks that
+ * need to
+ */
+public class TraceEvent {
+    private static final int MAX_FIELDS = 3;
+
+    private final int      mLevel;
+    private final String   mName;
+    private final String   mThreadName;
+    private final long     mTime;
+    private final String[] mKeys;
+    private final Object[] mValues;
+    private final int      mFieldCount;
+
+    TraceEvent(int level,
+            String name,
+            @Nullable String key1,
+            @Nullable Object value1,
+            @Nullable String key2,
+            @Nullable Object value2,
+            @Nullable String key3,
+            @Nullable Object value3) {
+        mLevel = level;
+        mName = name;
+        mThreadName = Thread.currentThread().getName();
+        mTime = System.currentTimeMillis();
+        mKeys = new String[]{key1, key2, key3};
+        mValues = new Object[]{value1, value2, value3};
+        int fieldCount = 0;
+        while (fieldCount < MAX_FIELDS && mKeys[fieldCount] != null) fieldCount++;
+        mFieldCount = fieldCount;
+    }
+
+    /**
+     * @return The event's name and fields, formatted as {@code name: key = [value], ...}
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(mName);
+        for (int i = 0; i < mFieldCount; i++) {
+            builder.append(i == 0 ? ": " : ", ")
+                    .append(mKeys[i])
+                    .append(" = [")
+                    .append(mValues[i])
+                    .append(']');
+        }
+        return builder.toString();
+    }
+
+    public int getFieldCount() {
+        return mFieldCount;
+    }
+
+    /**
+     * @param index The field's index, from 0 to {@link #getFieldCount()} - 1
+     * @return The field's name
+     */
+    public String getKey(int index) {
+        if (index >= mFieldCount) throw new IndexOutOfBoundsException("No field at " + index);
+        return mKeys[index];
+    }
+
+    /**
+     * @return The event's level, one of the {@link android.util.Log} priorities
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getThreadName() {
+        return mThreadName;
+    }
+
+    /**
+     * @return The time in milliseconds since the epoch the event was recorded at
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @param index The field's index, from 0 to {@link #getFieldCount()} - 1
+     * @return The field's value
+     */
+    @Nullable
+    public Object getValue(int index) {
+        if (index >= mFieldCount) throw new IndexOutOfBoundsException("No field at " + index);
+        return mValues[index];
+    }
+}
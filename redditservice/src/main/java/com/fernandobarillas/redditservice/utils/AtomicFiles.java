@@ -0,0 +1,61 @@
+package com.fernandobarillas.redditservice.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Replaces files in a single step, so that a reader never sees a partially written file and the
+ * process dying mid-write leaves the previous contents in place. The new contents are written and
+ * synced to a temporary file next to the target, then renamed over it. Every write gets a
+ * temporary file of its own, so concurrent writes of the same file don't clobber each other and
+ * the last rename wins.
+ */
+public class AtomicFiles {
+    /** Suffix of the temporary files, which directories holding them should leave alone */
+    public static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * @param file A file in a directory that may hold temporary files
+     * @return True if the file is a temporary file of a write that is in flight or was interrupted
+     */
+    public static boolean isTemporary(@NonNull File file) {
+        return file.getName().endsWith(TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Replaces the contents of a file, creating its parent directories if needed
+     *
+     * @param file  The file to replace
+     * @param bytes The new contents of the file
+     * @throws IOException When the contents can't be written or moved into place, in which case
+     *                     the file keeps its previous contents
+     */
+    public static void write(@NonNull File file, @NonNull byte[] bytes) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        File temporaryFile = File.createTempFile(file.getName() + ".", TEMPORARY_SUFFIX, directory);
+        boolean isMoved = false;
+        try {
+            FileOutputStream outputStream = new FileOutputStream(temporaryFile);
+            try {
+                outputStream.write(bytes);
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
+            }
+            isMoved = temporaryFile.renameTo(file);
+            if (!isMoved) throw new IOException("Unable to move " + temporaryFile + " to " + file);
+        } finally {
+            if (!isMoved && !temporaryFile.delete()) temporaryFile.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.fernandobarillas.redditservice.utils;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Thread-safe set of reddit fullnames, such as {@code t3_6nw7n4}, held as primitive longs in an
+ * open-addressing hash table. Base-36 IDs decode exactly into a long, so a fullname takes 32 bytes
+ * of table at most instead of the 100 or so of a String in a HashSet, and no fullname is ever
+ * mistaken for another. Only the ID is kept, so a set should only hold fullnames of a single kind.
+ */
+public class FullnameSet {
+    /** Slots allocated when the set is created, before any resize */
+    private static final int  INITIAL_CAPACITY = 256;
+    private static final int  RADIX            = 36;
+    /** Base-36 digits that always fit into a long without its sign bit: 36^12 < 2^63 */
+    private static final int  MAX_DIGITS       = 12;
+    /** Set on IDs that were hashed instead of decoded, so they never equal a decoded ID */
+    private static final long HASHED           = Long.MIN_VALUE;
+    /** Marks an empty slot. The ID 0 is tracked on its own */
+    private static final long EMPTY            = 0;
+
+    private long[]  mTable;
+    private int     mSize;
+    private boolean mHasZero;
+
+    public FullnameSet() {
+        mTable = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Spreads the bits of an ID, since consecutive IDs would otherwise hash to consecutive values.
+     * This is the finalizer of MurmurHash3
+     *
+     * @param id An ID as returned by {@link #toLong(String)}
+     * @return A hash of the ID using all 64 bits
+     */
+    public static long hash(long id) {
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        id *= 0xc4ceb9fe1a85ec53L;
+        id ^= id >>> 33;
+        return id;
+    }
+
+    /**
+     * @param fullname A fullname such as {@code t3_6nw7n4}, or a bare ID such as {@code 6nw7n4}
+     * @return The fullname's ID decoded from base 36. Malformed or over-long IDs, which reddit
+     * doesn't issue, are hashed instead and have their sign bit set
+     */
+    public static long toLong(@NonNull String fullname) {
+        int start = fullname.indexOf('_') + 1;
+        int length = fullname.length() - start;
+        if (length > 0 && length <= MAX_DIGITS) {
+            long id = 0;
+            int i = start;
+            for (; i < fullname.length(); i++) {
+                int digit = Character.digit(fullname.charAt(i), RADIX);
+                if (digit < 0) break;
+                id = id * RADIX + digit;
+            }
+            if (i == fullname.length()) return id;
+        }
+
+        // FNV-1a over the whole fullname
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < fullname.length(); i++) {
+            hash ^= fullname.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash | HASHED;
+    }
+
+    /**
+     * @param fullname The fullname to add
+     * @return True if the fullname wasn't in the set yet
+     */
+    public boolean add(@NonNull String fullname) {
+        return add(toLong(fullname));
+    }
+
+    /**
+     * @param id An ID as returned by {@link #toLong(String)}
+     * @return True if the ID wasn't in the set yet
+     */
+    public synchronized boolean add(long id) {
+        if (id == EMPTY) {
+            if (mHasZero) return false;
+            mHasZero = true;
+            mSize++;
+            return true;
+        }
+        int slot = find(mTable, id);
+        if (mTable[slot] == id) return false;
+        mTable[slot] = id;
+        mSize++;
+        // Keep the table at most half full so that probe sequences stay short
+        if (mSize * 2 > mTable.length) resize();
+        return true;
+    }
+
+    public synchronized void clear() {
+        mTable = new long[INITIAL_CAPACITY];
+        mSize = 0;
+        mHasZero = false;
+    }
+
+    /**
+     * @param fullname The fullname to look up
+     * @return True if the fullname has been added to the set
+     */
+    public boolean contains(@NonNull String fullname) {
+        return contains(toLong(fullname));
+    }
+
+    /**
+     * @param id An ID as returned by {@link #toLong(String)}
+     * @return True if the ID has been added to the set
+     */
+    public synchronized boolean contains(long id) {
+        if (id == EMPTY) return mHasZero;
+        return mTable[find(mTable, id)] == id;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The slot holding the ID, or the empty slot it would be added to
+     */
+    private static int find(long[] table, long id) {
+        int mask = table.length - 1;
+        int slot = (int) hash(id) & mask;
+        while (table[slot] != EMPTY && table[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] table = new long[mTable.length * 2];
+        for (long id : mTable) {
+            if (id != EMPTY) table[find(table, id)] = id;
+        }
+        mTable = table;
+    }
+}
@@ -0,0 +1,152 @@
+package com.fernandobarillas.redditservice.utils;
+
+import com.fernandobarillas.redditservice.requests.StartServiceRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each phase of starting the service takes, from binding to the service to
+ * showing the first page. Phases can be recorded from any thread and may overlap, since some of
+ * them run in parallel. Pass an instance to {@link StartServiceRequest#setStartupTimer(
+ * StartupTimer)} to have the service record its own phases.
+ */
+public class StartupTimer {
+    public static final String PHASE_AUTH_PREFERENCES    = "auth_preferences";
+    public static final String PHASE_AUTHENTICATION      = "authentication";
+    public static final String PHASE_CLIENT_POOL         = "client_pool";
+    public static final String PHASE_SERVICE_PREFERENCES = "service_preferences";
+    public static final String PHASE_SESSION             = "session";
+
+    private static final Comparator<Phase> BY_START_TIME = new Comparator<Phase>() {
+        @Override
+        public int compare(Phase first, Phase second) {
+            return first.mStartTime < second.mStartTime ? -1
+                    : first.mStartTime == second.mStartTime ? 0 : 1;
+        }
+    };
+
+    private final long        mOriginTime;
+    private final List<Phase> mPhases;
+
+    private long mLastMarkTime;
+
+    /**
+     * Starts the timer. Create it right before binding to the service
+     */
+    public StartupTimer() {
+        mOriginTime = System.nanoTime();
+        mLastMarkTime = mOriginTime;
+        mPhases = new ArrayList<>();
+    }
+
+    /**
+     * @return The time to pass to {@link #end(String, long)} once the phase is done
+     */
+    public long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that started at the passed-in time and ends now
+     *
+     * @param phase     The name of the phase
+     * @param beginTime The time returned by {@link #begin()} when the phase started
+     */
+    public synchronized void end(String phase, long beginTime) {
+        long endTime = System.nanoTime();
+        mPhases.add(new Phase(phase, beginTime - mOriginTime, endTime - beginTime));
+    }
+
+    /**
+     * @return The time in milliseconds since the timer started
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mOriginTime);
+    }
+
+    /**
+     * @return The phases recorded so far, in the order they started
+     */
+    public synchronized List<Phase> getPhases() {
+        List<Phase> phases = new ArrayList<>(mPhases);
+        Collections.sort(phases, BY_START_TIME);
+        return phases;
+    }
+
+    /**
+     * @return A line per phase with when it started and how long it took, then the total time
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Phase phase : getPhases()) {
+            report.append(String.format(Locale.US,
+                    "%-20s +%5d ms %5d ms%n",
+                    phase.getName(),
+                    phase.getStartMillis(),
+                    phase.getDurationMillis()));
+        }
+        report.append(String.format(Locale.US, "%-20s %13d ms", "total", getElapsedMillis()));
+        return report.toString();
+    }
+
+    /**
+     * Records a phase that started when the previous mark was recorded, or when the timer started
+     * for the first mark, and ends now. Use this for phases that run one after the other
+     *
+     * @param phase The name of the phase
+     */
+    public synchronized void mark(String phase) {
+        long markTime = System.nanoTime();
+        mPhases.add(new Phase(phase, mLastMarkTime - mOriginTime, markTime - mLastMarkTime));
+        mLastMarkTime = markTime;
+    }
+
+    @Override
+    public String toString() {
+        return "StartupTimer{" + "mPhases=" + getPhases() + '}';
+    }
+
+    public static class Phase {
+        private final String mName;
+        private final long   mStartTime;
+        private final long   mDuration;
+
+        Phase(String name, long startTime, long duration) {
+            mName = name;
+            mStartTime = startTime;
+            mDuration = duration;
+        }
+
+        @Override
+        public String toString() {
+            return "Phase{" +
+                    "mName='" + mName + '\'' +
+                    ", mStartTime=" + mStartTime +
+                    ", mDuration=" + mDuration +
+                    '}';
+        }
+
+        /**
+         * @return How long the phase took in milliseconds
+         */
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mDuration);
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return When the phase started in milliseconds since the timer started
+         */
+        public long getStartMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mStartTime);
+        }
+    }
+}
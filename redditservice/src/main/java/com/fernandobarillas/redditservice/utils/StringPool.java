@@ -0,0 +1,165 @@
+package com.fernandobarillas.redditservice.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import net.dean.jraw.models.Submission;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe interning pool for the string fields that repeat across the posts of a
+ * listing, such as subreddit names, authors, domains, flair texts and thumbnail sentinels. Pooled
+ * values are kept as Jackson {@link TextNode}s, which are immutable, so interning a field of a
+ * post's JSON replaces both the node and its String with a single shared instance.
+ * <p>
+ * Once the pool holds its maximum number of values it is emptied and starts over, which keeps it
+ * bounded while letting it adapt to the subreddits currently being browsed.
+ */
+public class StringPool {
+    /** Values held by the shared listing pool before it starts over */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /** Approximate heap taken by a String and its TextNode on top of the characters, in bytes */
+    private static final int NODE_OVERHEAD = 56;
+
+    /** Fields of a link that commonly hold the same value across many posts */
+    private static final String[] LISTING_FIELDS = {
+            "author",
+            "author_flair_css_class",
+            "author_flair_text",
+            "distinguished",
+            "domain",
+            "link_flair_css_class",
+            "link_flair_text",
+            "post_hint",
+            "subreddit",
+            "subreddit_id",
+            "subreddit_name_prefixed",
+            "subreddit_type",
+            "suggested_sort",
+            "thumbnail",
+            "whitelist_status"
+    };
+
+    private static final StringPool LISTING_POOL = new StringPool(DEFAULT_MAX_SIZE);
+
+    private final ConcurrentHashMap<String, TextNode> mValues;
+    private final int                                 mMaxSize;
+    private final AtomicLong                          mLookups    = new AtomicLong();
+    private final AtomicLong                          mHits       = new AtomicLong();
+    private final AtomicLong                          mBytesSaved = new AtomicLong();
+
+    /**
+     * @param maxSize The number of values to hold before the pool starts over
+     */
+    public StringPool(int maxSize) {
+        mMaxSize = Math.max(1, maxSize);
+        mValues = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return The pool shared by every listing the library deserializes
+     */
+    public static StringPool getListingPool() {
+        return LISTING_POOL;
+    }
+
+    /**
+     * @return The estimated heap in bytes no longer retained thanks to pooled values being reused
+     */
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    /**
+     * @return The fraction of lookups that returned a pooled value, 0 before any lookup
+     */
+    public double getHitRate() {
+        long lookups = mLookups.get();
+        return lookups == 0 ? 0 : (double) mHits.get() / lookups;
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getLookups() {
+        return mLookups.get();
+    }
+
+    /**
+     * @return The number of values currently pooled
+     */
+    public int size() {
+        return mValues.size();
+    }
+
+    /**
+     * @param value The value to intern
+     * @return The pooled instance equal to the value, null if the value is null
+     */
+    public String intern(String value) {
+        if (value == null) return null;
+        return internNode(TextNode.valueOf(value)).textValue();
+    }
+
+    /**
+     * Replaces the repeating string fields of a link's JSON data with pooled instances
+     *
+     * @param data The "data" object of a link
+     * @return The same data object, for chaining
+     */
+    public JsonNode internListingFields(JsonNode data) {
+        if (!(data instanceof ObjectNode)) return data;
+        ObjectNode objectNode = (ObjectNode) data;
+        for (String field : LISTING_FIELDS) {
+            JsonNode value = objectNode.get(field);
+            if (value instanceof TextNode) objectNode.set(field, internNode((TextNode) value));
+        }
+        return data;
+    }
+
+    /**
+     * Replaces the repeating string fields of every Submission with pooled instances, so that
+     * pages held in memory don't each retain their own copies
+     *
+     * @param submissions The Submissions to intern the fields of
+     */
+    public void internSubmissions(List<Submission> submissions) {
+        for (Submission submission : submissions) {
+            internListingFields(submission.getDataNode());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StringPool{" +
+                "size=" + mValues.size() +
+                ", mLookups=" + mLookups +
+                ", mHits=" + mHits +
+                ", mBytesSaved=" + mBytesSaved +
+                '}';
+    }
+
+    private TextNode internNode(TextNode node) {
+        mLookups.incrementAndGet();
+        String value = node.textValue();
+        TextNode pooled = mValues.get(value);
+        if (pooled != null) {
+            if (pooled != node) {
+                mHits.incrementAndGet();
+                mBytesSaved.addAndGet(NODE_OVERHEAD + 2 * value.length());
+            }
+            return pooled;
+        }
+
+        // Start over rather than tracking recency so that lookups never contend on a lock
+        if (mValues.size() >= mMaxSize) mValues.clear();
+        pooled = mValues.putIfAbsent(value, node);
+        return pooled != null ? pooled : node;
+    }
+}
@@ -0,0 +1,109 @@
+package com.fernandobarillas.redditservice.data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MutationLogTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mTemporaryFolder.getRoot(), "mutations.log");
+    }
+
+    @Test
+    public void load_replaysPendingRequests() throws IOException {
+        MutationLog mutationLog = new MutationLog(mFile);
+        mutationLog.append(MutationLog.TYPE_VOTE, "t3_a", 1);
+        mutationLog.append(MutationLog.TYPE_SAVE, "t3_a", 1);
+
+        List<MutationLog.Entry> entries = new MutationLog(mFile).getPendingEntries();
+        assertEquals(2, entries.size());
+        assertEquals(MutationLog.TYPE_VOTE, entries.get(0).getType());
+        assertEquals(MutationLog.TYPE_SAVE, entries.get(1).getType());
+    }
+
+    @Test
+    public void load_skipsAcknowledgedRequests() throws IOException {
+        MutationLog mutationLog = new MutationLog(mFile);
+        long sequence = mutationLog.append(MutationLog.TYPE_VOTE, "t3_a", 1);
+        mutationLog.append(MutationLog.TYPE_VOTE, "t3_b", 1);
+        mutationLog.acknowledge(Collections.singletonList(sequence));
+
+        List<MutationLog.Entry> entries = new MutationLog(mFile).getPendingEntries();
+        assertEquals(1, entries.size());
+        assertEquals("t3_b", entries.get(0).getFullName());
+    }
+
+    @Test
+    public void load_neverReplaysSupersededRequest() throws IOException {
+        MutationLog mutationLog = new MutationLog(mFile);
+        long upvote = mutationLog.append(MutationLog.TYPE_VOTE, "t3_x", 1);
+        long unvote = mutationLog.append(MutationLog.TYPE_VOTE, "t3_x", 0);
+        // Keeps the log from being compacted when the vote is acknowledged
+        mutationLog.append(MutationLog.TYPE_SAVE, "t3_y", 1);
+        mutationLog.acknowledge(Arrays.asList(upvote, unvote));
+
+        List<MutationLog.Entry> entries = new MutationLog(mFile).getPendingEntries();
+        assertEquals(1, entries.size());
+        assertEquals("t3_y", entries.get(0).getFullName());
+    }
+
+    @Test
+    public void load_ignoresOlderRequestOfAcknowledgedOne() throws IOException {
+        // A log written without acknowledging superseded requests
+        write("1 V t3_x 1\n2 V t3_x 0\n3 S t3_y 1\n2 A\n");
+
+        List<MutationLog.Entry> entries = new MutationLog(mFile).getPendingEntries();
+        assertEquals(1, entries.size());
+        assertEquals("t3_y", entries.get(0).getFullName());
+    }
+
+    @Test
+    public void load_skipsPartialLastRecord() throws IOException {
+        write("1 V t3_x 1\n2 V t3_y");
+
+        List<MutationLog.Entry> entries = new MutationLog(mFile).getPendingEntries();
+        assertEquals(1, entries.size());
+        assertEquals("t3_x", entries.get(0).getFullName());
+    }
+
+    @Test
+    public void append_continuesSequenceAfterLoad() throws IOException {
+        MutationLog mutationLog = new MutationLog(mFile);
+        long first = mutationLog.append(MutationLog.TYPE_VOTE, "t3_a", 1);
+
+        long second = new MutationLog(mFile).append(MutationLog.TYPE_VOTE, "t3_b", 1);
+        assertTrue(second > first);
+    }
+
+    @Test(expected = IOException.class)
+    public void append_throwsWhenNotWritten() throws IOException {
+        File directory = mTemporaryFolder.newFolder();
+        new MutationLog(directory).append(MutationLog.TYPE_VOTE, "t3_a", 1);
+    }
+
+    private void write(String records) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(mFile);
+        try {
+            outputStream.write(records.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+}
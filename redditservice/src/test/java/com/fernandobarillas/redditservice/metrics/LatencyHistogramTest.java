@@ -0,0 +1,106 @@
+package com.fernandobarillas.redditservice.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    /** The relative error of a reported percentile: a bucket is at most 1/32 of its values wide */
+    private static final double MAX_ERROR = 1.0 / 32;
+
+    @Test
+    public void getIndex_linearBelow64() {
+        for (int value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.getIndex(value));
+            assertEquals(value, LatencyHistogram.getHighestValue(value));
+        }
+    }
+
+    @Test
+    public void getIndex_63And64AreAdjacent() {
+        assertEquals(63, LatencyHistogram.getIndex(63));
+        assertEquals(64, LatencyHistogram.getIndex(64));
+        assertEquals(64, LatencyHistogram.getIndex(65));
+        assertEquals(65, LatencyHistogram.getIndex(66));
+        assertEquals(65, LatencyHistogram.getHighestValue(64));
+    }
+
+    @Test
+    public void getIndex_powersOfTwoStartABucket() {
+        for (int power = 6; (1L << power) <= LatencyHistogram.MAX_VALUE; power++) {
+            long value = 1L << power;
+            int index = LatencyHistogram.getIndex(value);
+            assertEquals("2^" + power, index - 1, LatencyHistogram.getIndex(value - 1));
+            assertEquals("2^" + power, value - 1, LatencyHistogram.getHighestValue(index - 1));
+            assertTrue("2^" + power, LatencyHistogram.getHighestValue(index) >= value);
+        }
+    }
+
+    @Test
+    public void getIndex_bucketsAreContiguous() {
+        int previousIndex = -1;
+        for (long value = 0; value <= 1 << 16; value++) {
+            int index = LatencyHistogram.getIndex(value);
+            assertTrue("value " + value, index == previousIndex || index == previousIndex + 1);
+            assertTrue("value " + value, LatencyHistogram.getHighestValue(index) >= value);
+            if (index > 0) {
+                assertTrue("value " + value, LatencyHistogram.getHighestValue(index - 1) < value);
+            }
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    public void getValueAtPercentile_emptyIsZero() {
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void getValueAtPercentile_exactBelow64() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 50; value++) {
+            histogram.recordMicros(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(25, snapshot.getValueAtPercentile(50));
+        assertEquals(50, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void getValueAtPercentile_withinErrorBound() {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // Spread the values over every power of two up to the maximum
+            values[i] = (long) Math.pow(LatencyHistogram.MAX_VALUE, random.nextDouble());
+            histogram.recordMicros(values[i]);
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        for (double percentile : new double[]{1, 10, 25, 50, 75, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = snapshot.getValueAtPercentile(percentile);
+            assertTrue("p" + percentile + ": " + actual + " < " + expected, actual >= expected);
+            assertTrue("p" + percentile + ": " + actual + " too far above " + expected,
+                    actual <= expected + expected * MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void recordMicros_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        histogram.recordMicros(LatencyHistogram.MAX_VALUE * 2);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,165 @@
+package com.fernandobarillas.redditservice.observables;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.paginators.Paginator;
+import net.dean.jraw.paginators.SubredditPaginator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+import static org.junit.Assert.assertEquals;
+
+public class DistinctPaginationTest {
+    private DistinctPagination    mDistinctPagination;
+    private Paginator<Submission> mPaginator;
+    private Pages                 mPages;
+
+    @Before
+    public void setUp() {
+        mDistinctPagination = new DistinctPagination();
+        // Pages are served by the test, the paginator is only used for its limit and as a key
+        mPaginator = new SubredditPaginator(null);
+        mPaginator.setLimit(4);
+        mPages = new Pages();
+    }
+
+    @Test
+    public void getSubmissions_passesDistinctPageThrough() {
+        mPages.add("a", "b", "c", "d");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames());
+        assertEquals(1, mPages.mRequests);
+    }
+
+    @Test
+    public void getSubmissions_dropsSeenAndTopsUp() {
+        mPages.add("a", "b", "c", "d");
+        mPages.add("c", "d", "e", "f");
+        mPages.add("g", "h", "i", "j");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames());
+        // Two repeats are dropped, the next page tops the page up and its extra two are held
+        assertEquals(Arrays.asList("e", "f", "g", "h"), getNames());
+        assertEquals(3, mPages.mRequests);
+        // The held two come first, then the empty page ends the listing
+        assertEquals(Arrays.asList("i", "j"), getNames());
+        assertEquals(4, mPages.mRequests);
+    }
+
+    @Test
+    public void getSubmissions_returnsHeldBeforeDownloading() {
+        mPages.add("a", "b", "c", "d");
+        mPages.add("a", "b", "c", "e");
+        mPages.add("f", "g", "h", "i");
+        mPages.add("j", "k", "l", "m");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames());
+        // e is short of the limit, so f, g and h top the page up and i is held
+        assertEquals(Arrays.asList("e", "f", "g", "h"), getNames());
+        assertEquals(3, mPages.mRequests);
+        // The held i comes first, then the next page fills in the rest and m is held
+        assertEquals(Arrays.asList("i", "j", "k", "l"), getNames());
+        assertEquals(4, mPages.mRequests);
+    }
+
+    @Test
+    public void getSubmissions_servesFullyHeldPageWithoutDownloading() {
+        mPaginator.setLimit(2);
+        mPages.add("a", "b");
+        mPages.add("a", "c", "d", "e", "f");
+        assertEquals(Arrays.asList("a", "b"), getNames());
+        assertEquals(Arrays.asList("c", "d"), getNames());
+        assertEquals(2, mPages.mRequests);
+        assertEquals(Arrays.asList("e", "f"), getNames());
+        assertEquals(2, mPages.mRequests);
+    }
+
+    @Test
+    public void getSubmissions_limitsTopUps() {
+        mPages.add("a", "b", "c", "d");
+        for (int i = 0; i <= DistinctPagination.MAX_TOP_UPS + 1; i++) {
+            mPages.add("a", "b", "c", "e" + i);
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames());
+        // Each page adds one new Submission, the page is returned short after the last top-up
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i <= DistinctPagination.MAX_TOP_UPS; i++) {
+            expected.add("e" + i);
+        }
+        assertEquals(expected, getNames());
+        assertEquals(2 + DistinctPagination.MAX_TOP_UPS, mPages.mRequests);
+    }
+
+    @Test
+    public void getSubmissions_stopsAtEndOfListing() {
+        mPages.add("a", "b", "c", "d");
+        mPages.add("a", "b");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames());
+        // The second page is all repeats, the empty page after it ends the listing
+        assertEquals(Collections.<String>emptyList(), getNames());
+        assertEquals(3, mPages.mRequests);
+        assertEquals(Collections.<String>emptyList(), getNames());
+    }
+
+    @Test
+    public void getSubmissions_tracksEachPaginatorOnItsOwn() {
+        Paginator<Submission> otherPaginator = new SubredditPaginator(null);
+        otherPaginator.setLimit(4);
+        mPages.add("a", "b", "c", "d");
+        mPages.add("a", "b", "c", "d");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), getNames(otherPaginator));
+    }
+
+    private List<String> getNames() {
+        return getNames(mPaginator);
+    }
+
+    private List<String> getNames(Paginator<Submission> paginator) {
+        List<String> names = new ArrayList<>();
+        for (Submission submission : mDistinctPagination.getSubmissions(paginator, mPages)
+                .toList()
+                .toBlocking()
+                .single()) {
+            names.add(submission.getFullName().substring("t3_".length()));
+        }
+        return names;
+    }
+
+    /**
+     * Serves the pages added to it in order, then empty pages
+     */
+    private static class Pages
+            implements Func1<Paginator<Submission>, Observable<List<Submission>>> {
+        final Deque<List<Submission>> mPages = new ArrayDeque<>();
+        int mRequests;
+
+        void add(String... ids) {
+            List<Submission> page = new ArrayList<>(ids.length);
+            for (String id : ids) {
+                ObjectNode data = JsonNodeFactory.instance.objectNode();
+                data.put("id", id);
+                data.put("name", "t3_" + id);
+                page.add(new Submission(data));
+            }
+            mPages.add(page);
+        }
+
+        @Override
+        public Observable<List<Submission>> call(Paginator<Submission> paginator) {
+            mRequests++;
+            List<Submission> page = mPages.poll();
+            return Observable.just(page != null ? page : Collections.<Submission>emptyList());
+        }
+    }
+}
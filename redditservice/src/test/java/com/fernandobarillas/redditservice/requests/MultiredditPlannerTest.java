@@ -0,0 +1,117 @@
+package com.fernandobarillas.redditservice.requests;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MultiredditPlannerTest {
+    @Test
+    public void plan_packsIntoOneRequest() {
+        MultiredditPlan plan = new MultiredditPlanner.Builder().build()
+                .plan(Arrays.asList("android", "androiddev", "java"));
+        assertEquals(1, plan.getRequestCount());
+        assertEquals("android+androiddev+java", plan.getRequests().get(0).getSubreddit());
+        assertEquals(2, plan.getSavedRequests());
+    }
+
+    @Test
+    public void plan_requestsDuplicatesOnce() {
+        MultiredditPlan plan = new MultiredditPlanner.Builder().build()
+                .plan(Arrays.asList("android", "Android", " android "));
+        assertEquals(1, plan.getSubredditCount());
+        assertEquals("android", plan.getRequests().get(0).getSubreddit());
+    }
+
+    @Test
+    public void plan_splitsAtMaxSubreddits() {
+        MultiredditPlan plan = new MultiredditPlanner.Builder().setMaxSubreddits(2)
+                .build()
+                .plan(Arrays.asList("a", "b", "c", "d", "e"));
+        assertEquals(3, plan.getRequestCount());
+        assertEquals(Arrays.asList("a", "b"), plan.getSubreddits(0));
+        assertEquals(Arrays.asList("c", "d"), plan.getSubreddits(1));
+        assertEquals(Collections.singletonList("e"), plan.getSubreddits(2));
+    }
+
+    @Test
+    public void plan_splitsAtMaxUrlLength() {
+        // 128 characters of overhead leave room for "aaaa+bbbb" but not "aaaa+bbbb+cccc"
+        MultiredditPlan plan = new MultiredditPlanner.Builder().setMaxUrlLength(128 + 9)
+                .build()
+                .plan(Arrays.asList("aaaa", "bbbb", "cccc"));
+        assertEquals(2, plan.getRequestCount());
+        assertEquals("aaaa+bbbb", plan.getRequests().get(0).getSubreddit());
+        assertEquals("cccc", plan.getRequests().get(1).getSubreddit());
+    }
+
+    @Test
+    public void plan_requestsOverLongNameOnItsOwn() {
+        MultiredditPlan plan = new MultiredditPlanner.Builder().setMaxUrlLength(1)
+                .build()
+                .plan(Arrays.asList("android", "java"));
+        assertEquals(2, plan.getRequestCount());
+    }
+
+    @Test
+    public void plan_splitsAtMaxSizeRatio() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("small", 1000L);
+        sizes.put("large", 20000L);
+        sizes.put("huge", 1000000L);
+        MultiredditPlan plan = new MultiredditPlanner.Builder().setMaxSizeRatio(20)
+                .build()
+                .plan(sizes);
+        // Largest first: huge is over 20 times large, large is exactly 20 times small
+        assertEquals(2, plan.getRequestCount());
+        assertEquals(Collections.singletonList("huge"), plan.getSubreddits(0));
+        assertEquals(Arrays.asList("large", "small"), plan.getSubreddits(1));
+    }
+
+    @Test
+    public void plan_splitsOnFractionalSizeRatio() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("large", 2099L);
+        sizes.put("small", 100L);
+        MultiredditPlan plan = new MultiredditPlanner.Builder().setMaxSizeRatio(20)
+                .build()
+                .plan(sizes);
+        // A ratio of 20.99 is over 20, even though integer division would truncate it to 20
+        assertEquals(2, plan.getRequestCount());
+    }
+
+    @Test
+    public void plan_keepsKnownAndUnknownSizesApart() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("unknown", 0L);
+        sizes.put("known", 1000L);
+        sizes.put("negative", -1L);
+        sizes.put("missing", null);
+        sizes.put("alsoKnown", 900L);
+        MultiredditPlan plan = new MultiredditPlanner.Builder().build().plan(sizes);
+        assertEquals(2, plan.getRequestCount());
+        assertEquals(Arrays.asList("known", "alsoKnown"), plan.getSubreddits(0));
+        List<String> unknown = plan.getSubreddits(1);
+        assertEquals(3, unknown.size());
+        assertTrue(unknown.containsAll(Arrays.asList("unknown", "negative", "missing")));
+    }
+
+    @Test
+    public void plan_rejectsEmptyAndJoinedNames() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("android", 0L);
+        sizes.put("java+kotlin", 0L);
+        sizes.put(" ", 0L);
+        sizes.put(null, 0L);
+        MultiredditPlan plan = new MultiredditPlanner.Builder().build().plan(sizes);
+        assertEquals(1, plan.getRequestCount());
+        assertEquals("android", plan.getRequests().get(0).getSubreddit());
+        assertEquals(Arrays.asList("java+kotlin", " ", null), plan.getRejected());
+    }
+}
@@ -0,0 +1,79 @@
+package com.fernandobarillas.redditservice.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FullnameSetTest {
+    @Test
+    public void toLong_decodesBase36() {
+        assertEquals(Long.parseLong("6nw7n4", 36), FullnameSet.toLong("t3_6nw7n4"));
+        assertEquals(Long.parseLong("6nw7n4", 36), FullnameSet.toLong("6nw7n4"));
+        assertEquals(35, FullnameSet.toLong("t1_z"));
+    }
+
+    @Test
+    public void toLong_decodesTwelveDigits() {
+        long id = FullnameSet.toLong("t3_zzzzzzzzzzzz");
+        assertEquals(Long.parseLong("zzzzzzzzzzzz", 36), id);
+        assertTrue(id > 0);
+    }
+
+    @Test
+    public void toLong_hashesThirteenDigits() {
+        assertTrue(FullnameSet.toLong("t3_1000000000000") < 0);
+    }
+
+    @Test
+    public void toLong_hashesMalformedIds() {
+        assertTrue(FullnameSet.toLong("t3_6nw-n4") < 0);
+        assertTrue(FullnameSet.toLong("t3_") < 0);
+        assertTrue(FullnameSet.toLong("") < 0);
+        assertTrue(FullnameSet.toLong("t3_6nw-n4") != FullnameSet.toLong("t3_6nw-n5"));
+    }
+
+    @Test
+    public void add_zeroId() {
+        FullnameSet set = new FullnameSet();
+        assertEquals(0, FullnameSet.toLong("t3_0"));
+        assertFalse(set.contains("t3_0"));
+        assertTrue(set.add("t3_0"));
+        assertFalse(set.add("t3_0"));
+        assertTrue(set.contains("t3_0"));
+        assertEquals(1, set.size());
+
+        set.clear();
+        assertFalse(set.contains("t3_0"));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    public void add_hashedAndDecodedIdsAreDistinct() {
+        FullnameSet set = new FullnameSet();
+        long hashed = FullnameSet.toLong("t3_not-an-id");
+        // The same bits without the sign bit are a valid decoded ID
+        long decoded = hashed & Long.MAX_VALUE;
+        assertTrue(set.add(hashed));
+        assertFalse(set.contains(decoded));
+        assertTrue(set.add(decoded));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void add_resizes() {
+        FullnameSet set = new FullnameSet();
+        // Consecutive IDs, as reddit issues them, well past the initial capacity
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.add("t3_" + Integer.toString(i, 36)));
+        }
+        assertEquals(10000, set.size());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.contains("t3_" + Integer.toString(i, 36)));
+            assertFalse(set.add("t3_" + Integer.toString(i, 36)));
+        }
+        assertFalse(set.contains("t3_" + Integer.toString(10000, 36)));
+        assertEquals(10000, set.size());
+    }
+}